@@ -0,0 +1,31 @@
+package cgs.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler so every result includes the allocation per
+ * operation. Accepts the usual JMH command line options, e.g. a regex of benchmarks to run.
+ */
+public class BenchmarkMain {
+
+    /**
+     * Main entry-point into the benchmarks.
+     * @param args the JMH command-line arguments.
+     * @throws RunnerException if a benchmark fails.
+     * @throws CommandLineOptionException if the arguments are invalid.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+
+}
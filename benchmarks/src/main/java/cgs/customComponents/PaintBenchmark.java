@@ -0,0 +1,72 @@
+package cgs.customComponents;
+
+import cgs.engine.TetrisEngine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures painting the display the way {@code TetrisBoard} does when the engine changes
+ * squares. Uploading to the screen needs a running javaFX toolkit and is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaintBenchmark {
+
+    private FrameBuffer display;
+    private int background;
+    private int fill;
+    private int outline;
+
+    /**
+     * Creates a display the size of the board.
+     */
+    @Setup
+    public void setUp () {
+        this.background = TetrisBoard.BACKGROUND_COLOR.getRGB();
+        this.fill = TetrisBoard.PIECE_COLORS[0].getRGB();
+        this.outline = TetrisBoard.OUTLINE_COLOR.getRGB();
+        this.display = new FrameBuffer(TetrisBoard.HORIZONTAL_SPACES,
+            TetrisBoard.VERTICAL_SPACES, TetrisBoard.DISPLAY_SCALE, this.background);
+    }
+
+    /**
+     * Paints the eight squares that change when a T piece moves one column right.
+     */
+    @Benchmark
+    public void paintMove () {
+        this.display.paintSquare(0, 1, this.background, this.background);
+        this.display.paintSquare(1, 0, this.background, this.background);
+        this.display.paintSquare(1, 1, this.background, this.background);
+        this.display.paintSquare(2, 1, this.background, this.background);
+        this.display.paintSquare(1, 1, this.fill, this.outline);
+        this.display.paintSquare(2, 0, this.fill, this.outline);
+        this.display.paintSquare(2, 1, this.fill, this.outline);
+        this.display.paintSquare(3, 1, this.fill, this.outline);
+    }
+
+    /**
+     * Paints every square of the board, as when the whole board changes.
+     */
+    @Benchmark
+    public void paintBoard () {
+        for (int y = 0; y < TetrisEngine.VERTICAL_SPACES; y++) {
+            for (int x = 0; x < TetrisEngine.HORIZONTAL_SPACES; x++) {
+                this.display.paintSquare(x, y, this.fill, this.outline);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package cgs.engine;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures finding and clearing full rows.
+ * Clearing changes the board, so every clearing benchmark first restores the board from a
+ * template; {@code restore} measures that cost on its own so it can be subtracted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({"HALF", "TALL"})
+    public BoardFill fill;
+
+    @Param({"1", "4"})
+    public int fullRows;
+
+    @Param({"AVALANCHE", "COMPACT"})
+    public LineClearMode mode;
+
+    private TetrisEngine engine;
+    private BitBoard board;
+    private BitBoard template;
+
+    /**
+     * Creates a filled board with full rows at the bottom.
+     */
+    @Setup
+    public void setUp () {
+        this.engine = new TetrisEngine(0, this.mode);
+        this.board = this.engine.getBoard();
+        this.template = new BitBoard(this.board.getWidth(), this.board.getHeight());
+        this.fill.apply(this.template);
+        for (int y = this.board.getHeight() - this.fullRows; y < this.board.getHeight(); y++) {
+            for (int x = 0; x < this.board.getWidth(); x++) {
+                this.template.set(x, y, Marker.STATIC);
+            }
+        }
+        this.board.copyFrom(this.template);
+    }
+
+    /**
+     * Restores the board from the template.
+     */
+    @Benchmark
+    public void restore () {
+        this.board.copyFrom(this.template);
+    }
+
+    /**
+     * Checks the status of every row from the bottom up to the first empty row.
+     * @return the number of full rows.
+     */
+    @Benchmark
+    public int checkRow () {
+        int full = 0;
+        RowStatus status = RowStatus.PARTIAL;
+        for (int row = this.board.getHeight() - 1; row >= 0 && status != RowStatus.EMPTY; row--) {
+            status = this.engine.checkRow(row);
+            if (status == RowStatus.FULL) {
+                full++;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Restores the board, then clears the full rows and either lifts the squares above them
+     * or compacts the rows, depending on the mode.
+     * @return true if squares are falling.
+     */
+    @Benchmark
+    public boolean manageBoard () {
+        this.board.copyFrom(this.template);
+        return this.engine.manageBoard();
+    }
+
+    /**
+     * Restores the board, then lifts the squares above the full rows.
+     * @return the number of falling squares.
+     */
+    @Benchmark
+    public int createAvalanche () {
+        this.board.copyFrom(this.template);
+        return this.engine.createAvalanche(this.board.getHeight() - this.fullRows);
+    }
+
+}
@@ -0,0 +1,49 @@
+package cgs.engine;
+
+import java.util.Random;
+
+/**
+ * Representative stacks of fallen pieces the benchmarks run against.
+ * Every filled row is left with one open square so no row starts out full.
+ */
+public enum BoardFill {
+    EMPTY (0), HALF (TetrisEngine.VERTICAL_SPACES / 2), TALL (TetrisEngine.VERTICAL_SPACES - 4);
+
+    /* The seed of the stacks, so every run measures the same boards */
+    private static final long SEED = 42;
+
+    /* The number of filled rows at the bottom of the board */
+    private final int rows;
+
+    /**
+     * Creates a fill with a number of filled rows.
+     * @param rows the number of filled rows.
+     */
+    private BoardFill (int rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Fills the bottom rows of a board with {@code Marker.STATIC} squares.
+     * @param board the board that is filled.
+     */
+    public void apply (BitBoard board) {
+        Random random = new Random(SEED);
+        for (int y = board.getHeight() - this.rows; y < board.getHeight(); y++) {
+            int hole = random.nextInt(board.getWidth());
+            for (int x = 0; x < board.getWidth(); x++) {
+                if (x != hole && random.nextInt(4) != 0) {
+                    board.set(x, y, Marker.STATIC);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of filled rows.
+     * @return the number of filled rows.
+     */
+    public int getRows () {
+        return this.rows;
+    }
+}
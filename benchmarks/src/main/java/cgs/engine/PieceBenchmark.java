@@ -0,0 +1,72 @@
+package cgs.engine;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures moving, rotating and collision testing the piece in play.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PieceBenchmark {
+
+    @Param({"EMPTY", "HALF", "TALL"})
+    public BoardFill fill;
+
+    @Param({"TPIECE", "IPIECE"})
+    public PieceType type;
+
+    private TetrisEngine.Piece piece;
+
+    /**
+     * Creates a game on a filled board with a piece of the benchmarked type in play.
+     */
+    @Setup
+    public void setUp () {
+        TetrisEngine engine = new TetrisEngine();
+        this.fill.apply(engine.getBoard());
+        this.piece = engine.new Piece(this.type);
+    }
+
+    /**
+     * Moves the piece one column right and back.
+     * @return whether both moves succeeded.
+     */
+    @Benchmark
+    public boolean move () {
+        return this.piece.move(1, 0) & this.piece.move(-1, 0);
+    }
+
+    /**
+     * Rotates the piece a quarter turn clockwise, cycling through its orientations.
+     * @return whether the rotation succeeded.
+     */
+    @Benchmark
+    public boolean rotate () {
+        return this.piece.rotate(1);
+    }
+
+    /**
+     * Tests the piece for collisions.
+     * @return whether the piece is in a valid location.
+     */
+    @Benchmark
+    public boolean isValidSpaces () {
+        return this.piece.isValidSpaces();
+    }
+
+}
@@ -0,0 +1,85 @@
+package cgs.engine;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures whole game ticks with a player pressing a key on about a third of them.
+ * A finished game is replaced by a new one on the same fill, which is part of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickBenchmark {
+
+    /* The length of the scripted input, a power of two */
+    private static final int SCRIPT_LENGTH = 1 << 12;
+
+    @Param({"EMPTY", "HALF"})
+    public BoardFill fill;
+
+    /* The action taken on each tick, null for none */
+    private Action[] script;
+    private int next;
+
+    private TetrisEngine engine;
+
+    /* The number of games started, used as the seed of the next game */
+    private long games;
+
+    /**
+     * Scripts the input and starts the first game.
+     */
+    @Setup
+    public void setUp () {
+        Random random = new Random(7);
+        Action[] moves = {Action.LEFT, Action.RIGHT, Action.DOWN,
+            Action.ROTATE_CW, Action.ROTATE_CCW};
+        this.script = new Action[SCRIPT_LENGTH];
+        for (int i = 0; i < SCRIPT_LENGTH; i++) {
+            this.script[i] = (random.nextInt(3) == 0) ? moves[random.nextInt(moves.length)] : null;
+        }
+        this.newGame();
+    }
+
+    /**
+     * Applies the scripted action, if any, and advances the game by one tick.
+     * @return whether the game is still on.
+     */
+    @Benchmark
+    public boolean tick () {
+        Action action = this.script[this.next++ & (SCRIPT_LENGTH - 1)];
+        if (action != null) {
+            this.engine.step(action);
+        }
+        if (!this.engine.tick()) {
+            this.newGame();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the game with a new one on the benchmarked fill.
+     * Games are seeded in order so every run plays the same sequence of pieces.
+     */
+    private void newGame () {
+        this.engine = new TetrisEngine(this.games++);
+        this.fill.apply(this.engine.getBoard());
+    }
+
+}
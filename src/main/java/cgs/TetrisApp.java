@@ -1,28 +1,44 @@
 package cgs;
 
 import cgs.customComponents.*;
+import cgs.engine.Action;
+import cgs.engine.InputRing;
+import cgs.event.ScoreKeeper;
 
+import java.lang.management.ManagementFactory;
+
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.event.EventHandler;
 import javafx.scene.input.KeyEvent;
-import javafx.scene.input.KeyCode;
-import java.util.LinkedList;
-import java.util.List;
 import javafx.scene.layout.Priority;
 
 /**
  * Creates an instance of the game tetris.
+ * Setting {@code tetris.exitAfterFirstFrame} to {@code true} prints the time from the start
+ * of the JVM to the first frame on screen and exits right after it, which is how the
+ * {@code appcds} build profile times startup and trains a class data sharing archive.
  */
 public class TetrisApp extends Application implements EventHandler<KeyEvent> {
 
-    private List<KeyCode> input;
+    /* The most actions that can wait to be applied */
+    private static final int INPUT_CAPACITY = 256;
+
+    /* If true the application exits once its first frame is on screen */
+    public static final boolean EXIT_AFTER_FIRST_FRAME =
+        Boolean.getBoolean("tetris.exitAfterFirstFrame");
+
+    private InputRing input;
 
     private VBox spine;
     private TetrisBoard gameBoard;
+    private ScoreKeeper score;
 
 
     /**
@@ -31,16 +47,22 @@ public class TetrisApp extends Application implements EventHandler<KeyEvent> {
      */
     @Override
     public void start(Stage stage) {
-        this.input = new LinkedList<>();
+        this.input = new InputRing(INPUT_CAPACITY);
 
         this.spine = new VBox();
 
         this.gameBoard = new TetrisBoard(this.input, stage);
-        this.gameBoard.fitWidthProperty().bind(this.spine.widthProperty());
+        ImageView preview = this.gameBoard.getPreviewView();
+        this.gameBoard.fitWidthProperty().bind(
+            this.spine.widthProperty().subtract(preview.getImage().getWidth()));
         this.gameBoard.fitHeightProperty().bind(this.spine.heightProperty());
         this.gameBoard.setPreserveRatio(true);
 
-        this.spine.getChildren().addAll(gameBoard);
+        HBox field = new HBox(this.gameBoard, preview);
+        this.spine.getChildren().addAll(field);
+
+        this.score = new ScoreKeeper(() -> Platform.runLater(() -> this.showScore(stage)));
+        this.gameBoard.getEvents().addConsumer("score", this.score);
 
 
 
@@ -52,17 +74,55 @@ public class TetrisApp extends Application implements EventHandler<KeyEvent> {
         stage.setScene(scene);
         stage.sizeToScene();
         stage.show();
+        if (EXIT_AFTER_FIRST_FRAME) {
+            this.reportFirstFrame();
+        }
 
 
     } //start
 
     /**
-     * Handles KeyEvents by logging them in a list.
+     * Shows the score in the title of the window.
+     * @param stage the stage of the application.
+     */
+    private void showScore (Stage stage) {
+        stage.setTitle("Tetris - Score " + this.score.getScore() + " Lines "
+            + this.score.getLines() + " Level " + this.score.getLevel());
+    }
+
+    /**
+     * Prints the time from the start of the JVM to the first frame, and exits then.
+     * The first pulse after the stage is shown renders the first frame, so the frame is on
+     * screen by the time the next pulse starts.
+     */
+    private void reportFirstFrame () {
+        new AnimationTimer() {
+            private int pulses;
+
+            @Override
+            public void handle (long now) {
+                if (++this.pulses < 2) {
+                    return;
+                }
+                this.stop();
+                long millis = System.currentTimeMillis()
+                    - ManagementFactory.getRuntimeMXBean().getStartTime();
+                System.out.println("First frame after " + millis + "ms");
+                System.exit(0);
+            }
+        }.start();
+    }
+
+    /**
+     * Handles KeyEvents by queueing the action of the key for the game.
      */
     @Override
     public void handle(KeyEvent e) {
         //System.out.println(e.getCode());
-        this.input.add(e.getCode());
+        Action action = TetrisBoard.toAction(e.getCode());
+        if (action != null) {
+            this.input.offer(action);
+        }
     }
 
 } //TetrisApp
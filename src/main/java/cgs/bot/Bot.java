@@ -0,0 +1,234 @@
+package cgs.bot;
+
+import cgs.engine.BitBoard;
+import cgs.engine.LineClearMode;
+import cgs.engine.PieceType;
+import cgs.engine.SplitMix64;
+import cgs.engine.TetrisEngine;
+import cgs.engine.Zobrist;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * An automated player that picks where to put each piece.
+ * Every reachable final placement of the current piece is scored by searching the placements
+ * of the pieces after it: the preview pieces, then every possible piece, down to a fixed depth.
+ * Every known piece spares a level of the search branching on all seven types.
+ * The subtrees below the placements are searched in parallel on a {@code ForkJoinPool}.
+ * Scores of searched boards and the chosen placements can be kept in a
+ * {@code TranspositionCache} shared by every search thread and every search, so work done
+ * for a position is reused when the position comes up again.
+ *
+ * A bot is thread safe, but each call to {@code choose} uses the whole pool.
+ */
+public class Bot {
+
+    /*
+     * The shallowest search given a cache by default. Boards only repeat within a search once
+     * two pieces past the preview are placed in either order, shallower searches spend more
+     * time on lookups than they save.
+     */
+    public static final int CACHE_DEPTH = 4;
+
+    /* Scores the boards at the bottom of the search */
+    private final Heuristic heuristic;
+
+    /* The number of pieces placed in each search, including the current piece */
+    private final int depth;
+
+    /* How the games the bot plays clear full rows */
+    private final LineClearMode mode;
+
+    /* The results of earlier searches, null to search without a cache */
+    private final TranspositionCache cache;
+
+    /* Runs the search, null to search on the calling thread */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a bot with the default heuristic that uses every core.
+     */
+    public Bot () {
+        this(new WeightedHeuristic(), defaultDepth(Runtime.getRuntime().availableProcessors()),
+            Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a bot for games that clear rows with {@code LineClearMode.AVALANCHE}.
+     * @param heuristic scores the boards at the bottom of the search.
+     * @param depth the number of pieces placed in each search, at least 1.
+     * @param parallelism the number of search threads, 1 to search on the calling thread.
+     */
+    public Bot (Heuristic heuristic, int depth, int parallelism) {
+        this(heuristic, depth, parallelism, LineClearMode.AVALANCHE);
+    }
+
+    /**
+     * Creates a bot, with its own {@code TranspositionCache} of the default size if the depth
+     * is at least {@code CACHE_DEPTH}.
+     * @param heuristic scores the boards at the bottom of the search.
+     * @param depth the number of pieces placed in each search, at least 1.
+     * @param parallelism the number of search threads, 1 to search on the calling thread.
+     * @param mode how the games the bot plays clear full rows.
+     */
+    public Bot (Heuristic heuristic, int depth, int parallelism, LineClearMode mode) {
+        this(heuristic, depth, parallelism, mode,
+            (depth >= CACHE_DEPTH) ? new TranspositionCache() : null);
+    }
+
+    /**
+     * Creates a bot.
+     * @param heuristic scores the boards at the bottom of the search.
+     * @param depth the number of pieces placed in each search, at least 1.
+     * @param parallelism the number of search threads, 1 to search on the calling thread.
+     * @param mode how the games the bot plays clear full rows.
+     * @param cache keeps the results of searches, null to search without a cache. It must
+     * not be shared with a bot that has a different heuristic or line clear mode.
+     */
+    public Bot (Heuristic heuristic, int depth, int parallelism, LineClearMode mode,
+        TranspositionCache cache) {
+        if (depth < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Invalid depth or parallelism");
+        }
+        this.heuristic = heuristic;
+        this.depth = depth;
+        this.mode = mode;
+        this.cache = cache;
+        this.pool = (parallelism == 1) ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Gets a search depth that keeps a search within a game tick on a number of cores.
+     * Each extra level multiplies the work by about 34 placements (and by 7 piece types past
+     * the preview), so the depth grows with the logarithm of the core count:
+     * 1 level on one core, 2 from 4 cores and 3 from 16 cores.
+     * @param cores the number of cores.
+     * @return the depth.
+     */
+    public static int defaultDepth (int cores) {
+        int log2 = 31 - Integer.numberOfLeadingZeros(Math.max(1, cores));
+        return 1 + log2 / 2;
+    }
+
+    /**
+     * Picks the placement of the current piece of a game, knowing the types of every piece
+     * in its preview queue.
+     * Must be called on the thread that runs the game.
+     * @param engine the game.
+     * @return the best placement, or null if there is no piece to place.
+     */
+    public Placement choose (TetrisEngine engine) {
+        TetrisEngine.Piece piece = engine.getPiece();
+        if (!engine.isGameOn() || engine.isClearing()) {
+            return null;
+        }
+        PieceType[] preview = new PieceType[engine.getPreviewDepth()];
+        for (int i = 0; i < preview.length; i++) {
+            preview[i] = engine.getPreview(i);
+        }
+        return this.choose(engine.getBoard(), piece.getType(), piece.getOrientation(),
+            piece.getOriginX(), piece.getOriginY(), preview);
+    }
+
+    /**
+     * Picks the placement of a piece.
+     * @param board the board, only its {@code Marker.STATIC} squares are used. It is not changed.
+     * @param type the type of the piece.
+     * @param orientation the orientation the piece is in.
+     * @param originX the column of the origin of the piece.
+     * @param originY the row of the origin of the piece.
+     * @param preview the types of the pieces that follow, in order.
+     * @return the best placement, or null if the piece has nowhere to go.
+     */
+    public Placement choose (BitBoard board, PieceType type, int orientation, int originX,
+        int originY, PieceType... preview) {
+        PieceType[] pieces = new PieceType[preview.length + 1];
+        pieces[0] = type;
+        System.arraycopy(preview, 0, pieces, 1, preview.length);
+        long key = 0;
+        if (this.cache != null) {
+            key = PlacementSearch.key(board, pieces, 0, this.depth, 0)
+                ^ Zobrist.piece(type, orientation)
+                ^ SplitMix64.mix64((long) originX * Integer.SIZE + originY);
+            Placement cached = this.cache.getPlacement(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        BitBoard root = new BitBoard(board.getWidth(), board.getHeight());
+        root.copyFrom(board);
+        root.clearDynamic();
+        List<Placement> placements =
+            Placements.enumerate(root, type, orientation, originX, originY);
+        List<ForkJoinTask<Double>> tasks = new ArrayList<>(placements.size());
+        List<BitBoard> children = new ArrayList<>(placements.size());
+        List<Integer> cleared = new ArrayList<>(placements.size());
+        for (Placement placement : placements) {
+            BitBoard child = new BitBoard(board.getWidth(), board.getHeight());
+            cleared.add(PlacementSearch.place(root, child, type, placement, this.mode));
+            children.add(child);
+            if (this.pool != null) {
+                tasks.add(this.pool.submit(new PlacementSearch(this, child, pieces, 1,
+                    cleared.get(cleared.size() - 1))));
+            }
+        }
+
+        Placement best = null;
+        for (int i = 0; i < placements.size(); i++) {
+            double score = (this.pool != null) ? tasks.get(i).join()
+                : PlacementSearch.search(this, children.get(i), pieces, 1, cleared.get(i));
+            if (best == null || score > best.getScore()) {
+                best = placements.get(i).withScore(score);
+            }
+        }
+        if (best != null && this.cache != null) {
+            this.cache.putPlacement(key, best);
+        }
+        return best;
+    }
+
+    /**
+     * Gets the number of pieces placed in each search.
+     * @return the depth of the search.
+     */
+    public int getDepth () {
+        return this.depth;
+    }
+
+    /**
+     * Gets the heuristic that scores the boards at the bottom of the search.
+     * @return the heuristic.
+     */
+    Heuristic getHeuristic () {
+        return this.heuristic;
+    }
+
+    /**
+     * Gets the cache of search results, whose counters show how much work it saved.
+     * @return the cache, or null if the bot searches without one.
+     */
+    public TranspositionCache getCache () {
+        return this.cache;
+    }
+
+    /**
+     * Gets how the games the bot plays clear full rows.
+     * @return the line clear mode.
+     */
+    public LineClearMode getLineClearMode () {
+        return this.mode;
+    }
+
+    /**
+     * Stops the search threads. The bot must not be used afterwards.
+     */
+    public void shutdown () {
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+    }
+
+}
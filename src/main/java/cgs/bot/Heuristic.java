@@ -0,0 +1,20 @@
+package cgs.bot;
+
+import cgs.engine.BitBoard;
+
+/**
+ * Scores a board after a piece has been placed on it, higher scores are better.
+ * Only the {@code Marker.STATIC} squares of the board are considered.
+ * Implementations are called from many search threads at once and must be thread safe.
+ */
+public interface Heuristic {
+
+    /**
+     * Scores a board.
+     * @param board the board after the placement.
+     * @param linesCleared the number of rows cleared by the placements leading to the board.
+     * @return the score of the board.
+     */
+    double evaluate (BitBoard board, int linesCleared);
+
+}
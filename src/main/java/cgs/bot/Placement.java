@@ -0,0 +1,131 @@
+package cgs.bot;
+
+import cgs.engine.Action;
+
+/**
+ * A final position of a piece and the actions that take the piece there from where it
+ * started: rotate first, then move sideways, then drop the piece.
+ */
+public final class Placement {
+
+    /* The number of clockwise quarter turns, negative for counter-clockwise */
+    private final int rotations;
+
+    /* The number of columns moved, negative for left */
+    private final int shift;
+
+    /* The final position of the piece */
+    private final int orientation;
+    private final int originX;
+    private final int originY;
+
+    /* The score of the placement, set by the search */
+    private final double score;
+
+    /**
+     * Creates a placement.
+     * @param rotations the number of clockwise quarter turns, negative for counter-clockwise.
+     * @param shift the number of columns moved, negative for left.
+     * @param orientation the final orientation of the piece.
+     * @param originX the final column of the origin of the piece.
+     * @param originY the final row of the origin of the piece.
+     * @param score the score of the placement.
+     */
+    public Placement (int rotations, int shift, int orientation, int originX, int originY,
+        double score) {
+        this.rotations = rotations;
+        this.shift = shift;
+        this.orientation = orientation;
+        this.originX = originX;
+        this.originY = originY;
+        this.score = score;
+    }
+
+    /**
+     * Creates a copy of this placement with a different score.
+     * @param score the score of the copy.
+     * @return the copy.
+     */
+    public Placement withScore (double score) {
+        return new Placement(this.rotations, this.shift, this.orientation, this.originX,
+            this.originY, score);
+    }
+
+    /**
+     * Lists the actions that take the piece from its start to this placement.
+     * @return the rotations followed by the moves sideways and a hard drop.
+     */
+    public Action[] toActions () {
+        int turns = Math.abs(this.rotations);
+        Action[] actions = new Action[turns + Math.abs(this.shift) + 1];
+        Action turn = (this.rotations < 0) ? Action.ROTATE_CCW : Action.ROTATE_CW;
+        Action move = (this.shift < 0) ? Action.LEFT : Action.RIGHT;
+        for (int i = 0; i < actions.length - 1; i++) {
+            actions[i] = (i < turns) ? turn : move;
+        }
+        actions[actions.length - 1] = Action.HARD_DROP;
+        return actions;
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of clockwise quarter turns, negative for counter-clockwise.
+     * @return the number of rotations.
+     */
+    public int getRotations () {
+        return this.rotations;
+    }
+
+    /**
+     * Gets the number of columns moved, negative for left.
+     * @return the number of columns.
+     */
+    public int getShift () {
+        return this.shift;
+    }
+
+    /**
+     * Gets the final orientation of the piece.
+     * @return the orientation (see {@code RotationTable}).
+     */
+    public int getOrientation () {
+        return this.orientation;
+    }
+
+    /**
+     * Gets the final column of the origin of the piece.
+     * @return the column of the origin.
+     */
+    public int getOriginX () {
+        return this.originX;
+    }
+
+    /**
+     * Gets the final row of the origin of the piece.
+     * @return the row of the origin.
+     */
+    public int getOriginY () {
+        return this.originY;
+    }
+
+    /**
+     * Gets the score of the placement.
+     * @return the score, higher is better.
+     */
+    public double getScore () {
+        return this.score;
+    }
+
+    /**
+     * Describes the placement for logging.
+     * @return the moves, final position and score.
+     */
+    @Override
+    public String toString () {
+        return "Placement[rotations=" + this.rotations + ", shift=" + this.shift
+            + ", orientation=" + this.orientation + ", x=" + this.originX
+            + ", y=" + this.originY + ", score=" + this.score + "]";
+    }
+
+}
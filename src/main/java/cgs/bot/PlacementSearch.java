@@ -0,0 +1,218 @@
+package cgs.bot;
+
+import cgs.engine.BitBoard;
+import cgs.engine.LineClearMode;
+import cgs.engine.PieceType;
+import cgs.engine.RotationTable;
+import cgs.engine.SplitMix64;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scores a board by searching the placements of the pieces still to come.
+ * Pieces that are known (the current piece and the preview) are placed in their best
+ * position; past the known pieces, every {@code PieceType} is equally likely and the score is
+ * the average of their best positions. The score of a board with nothing left to place is the
+ * {@code Heuristic}'s score.
+ *
+ * Levels far enough from the bottom of the search are forked into a subtask per placement,
+ * the last {@code SEQUENTIAL_LEVELS} levels are searched on the current thread.
+ * If the bot has a {@code TranspositionCache}, the score of every board with pieces left to
+ * place is stored in it, so the subtree below a board reached again through another order of
+ * placements is only searched once. Boards at the bottom are scored directly, the heuristic
+ * costs about as much as a lookup.
+ */
+class PlacementSearch extends RecursiveTask<Double> {
+
+    /* Tasks are never serialized, the version only keeps the compiler quiet */
+    private static final long serialVersionUID = 1L;
+
+    /* The score of a board the next piece does not fit on */
+    public static final double LOSS = -1e9;
+
+    /* The number of levels at the bottom of the search that are not forked */
+    public static final int SEQUENTIAL_LEVELS = 1;
+
+    /* The bot the search is for, with its heuristic, depth, line clear mode and cache */
+    private final Bot bot;
+
+    /* The board being scored, owned by this task */
+    private final BitBoard board;
+
+    /* The known pieces, in the order they are played */
+    private final PieceType[] pieces;
+
+    /* The index of the piece placed next */
+    private final int level;
+
+    /* The rows cleared on the way to the board */
+    private final int lines;
+
+    /**
+     * Creates a search of the levels below a board.
+     * @param bot the bot the search is for.
+     * @param board the board, owned by the search from now on.
+     * @param pieces the known pieces, in the order they are played.
+     * @param level the index of the piece placed next.
+     * @param lines the rows cleared on the way to the board.
+     */
+    PlacementSearch (Bot bot, BitBoard board, PieceType[] pieces, int level, int lines) {
+        this.bot = bot;
+        this.board = board;
+        this.pieces = pieces;
+        this.level = level;
+        this.lines = lines;
+    }
+
+    /**
+     * Scores the board, forking a subtask for each placement of the next piece unless the
+     * search is near the bottom.
+     * @return the score of the board.
+     */
+    @Override
+    protected Double compute () {
+        if (this.bot.getDepth() - this.level <= SEQUENTIAL_LEVELS) {
+            return search(this.bot, this.board, this.pieces, this.level, this.lines);
+        }
+        TranspositionCache cache = this.bot.getCache();
+        long key = 0;
+        if (cache != null) {
+            key = key(this.board, this.pieces, this.level, this.bot.getDepth(), this.lines);
+            double cached = cache.getScore(key);
+            if (!Double.isNaN(cached)) {
+                return cached;
+            }
+        }
+        double score;
+        if (this.level < this.pieces.length) {
+            score = this.forkBest(this.pieces[this.level]);
+        } else {
+            double total = 0;
+            for (PieceType type : PieceType.PIECES) {
+                total += this.forkBest(type);
+            }
+            score = total / PieceType.PIECES.size();
+        }
+        if (cache != null) {
+            cache.putScore(key, score);
+        }
+        return score;
+    }
+
+    /**
+     * Helper method for compute()
+     * Scores every placement of a piece in its own subtask.
+     * @param type the type of the piece.
+     * @return the best score of the placements.
+     */
+    private double forkBest (PieceType type) {
+        List<Placement> placements = Placements.enumerate(this.board, type, 0, 0, 0);
+        if (placements.isEmpty()) {
+            return LOSS;
+        }
+        List<PlacementSearch> tasks = new ArrayList<>(placements.size());
+        for (Placement placement : placements) {
+            BitBoard child = new BitBoard(this.board.getWidth(), this.board.getHeight());
+            int cleared = place(this.board, child, type, placement, this.bot.getLineClearMode());
+            tasks.add(new PlacementSearch(this.bot, child, this.pieces, this.level + 1,
+                this.lines + cleared));
+        }
+        double best = LOSS;
+        for (PlacementSearch task : invokeAll(tasks)) {
+            best = Math.max(best, task.join());
+        }
+        return best;
+    }
+
+    /**
+     * Scores a board by searching the levels below it on the current thread.
+     * @param bot the bot the search is for.
+     * @param board the board, it is not changed.
+     * @param pieces the known pieces, in the order they are played.
+     * @param level the index of the piece placed next.
+     * @param lines the rows cleared on the way to the board.
+     * @return the score of the board.
+     */
+    static double search (Bot bot, BitBoard board, PieceType[] pieces, int level, int lines) {
+        if (level == bot.getDepth()) {
+            return bot.getHeuristic().evaluate(board, lines);
+        }
+        TranspositionCache cache = bot.getCache();
+        long key = 0;
+        if (cache != null) {
+            key = key(board, pieces, level, bot.getDepth(), lines);
+            double cached = cache.getScore(key);
+            if (!Double.isNaN(cached)) {
+                return cached;
+            }
+        }
+        double score;
+        BitBoard child = new BitBoard(board.getWidth(), board.getHeight());
+        if (level < pieces.length) {
+            score = best(bot, board, child, pieces, pieces[level], level, lines);
+        } else {
+            double total = 0;
+            for (PieceType type : PieceType.PIECES) {
+                total += best(bot, board, child, pieces, type, level, lines);
+            }
+            score = total / PieceType.PIECES.size();
+        }
+        if (cache != null) {
+            cache.putScore(key, score);
+        }
+        return score;
+    }
+
+    /**
+     * Helper method for search()
+     * Scores every placement of a piece on the current thread.
+     * @return the best score of the placements.
+     */
+    private static double best (Bot bot, BitBoard board, BitBoard child, PieceType[] pieces,
+        PieceType type, int level, int lines) {
+        double best = LOSS;
+        for (Placement placement : Placements.enumerate(board, type, 0, 0, 0)) {
+            int cleared = place(board, child, type, placement, bot.getLineClearMode());
+            best = Math.max(best, search(bot, child, pieces, level + 1, lines + cleared));
+        }
+        return best;
+    }
+
+    /**
+     * Gets the key of a board in a {@code TranspositionCache}.
+     * The score of a board depends on its squares, the rows cleared on the way to it, the
+     * number of pieces left to place and the known types among them.
+     * @param board the board.
+     * @param pieces the known pieces, in the order they are played.
+     * @param level the index of the piece placed next.
+     * @param depth the number of pieces to place in total.
+     * @param lines the rows cleared on the way to the board.
+     * @return the key.
+     */
+    static long key (BitBoard board, PieceType[] pieces, int level, int depth, int lines) {
+        long features = (long) lines * Long.SIZE + (depth - level);
+        for (int i = level; i < Math.min(pieces.length, depth); i++) {
+            features = features * (PieceType.PIECES.size() + 1) + pieces[i].ordinal() + 1;
+        }
+        return board.getHash() ^ SplitMix64.mix64(features);
+    }
+
+    /**
+     * Copies a board and locks a piece onto the copy, clearing any rows it fills.
+     * @param board the board the piece is placed on, it is not changed.
+     * @param child the board that receives the copy.
+     * @param type the type of the piece.
+     * @param placement the position of the piece.
+     * @param mode how the rows are cleared.
+     * @return the number of rows cleared.
+     */
+    static int place (BitBoard board, BitBoard child, PieceType type, Placement placement,
+        LineClearMode mode) {
+        child.copyFrom(board);
+        child.place(RotationTable.getCells(type, placement.getOrientation()),
+            placement.getOriginX(), placement.getOriginY());
+        return mode.clear(child);
+    }
+
+}
@@ -0,0 +1,124 @@
+package cgs.bot;
+
+import cgs.engine.BitBoard;
+import cgs.engine.PieceType;
+import cgs.engine.RotationTable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds every final position a piece can reach by rotating in place, moving sideways and
+ * then falling, following the same rotation, wall kick and collision rules as the engine.
+ */
+final class Placements {
+
+    /* The rotations tried from the start: none, one each way and a half turn */
+    private static final int[] ROTATIONS = {0, 1, -1, 2};
+
+    /**
+     * Not instantiable.
+     */
+    private Placements () {
+    }
+
+    /**
+     * Lists the placements of a piece. Placements that cover the same squares are only
+     * listed once, with the fewest rotations.
+     * @param board the board, only its {@code Marker.STATIC} squares block the piece.
+     * @param type the type of the piece.
+     * @param orientation the orientation the piece starts in.
+     * @param originX the column the origin of the piece starts in.
+     * @param originY the row the origin of the piece starts in.
+     * @return the placements, unscored.
+     */
+    static List<Placement> enumerate (BitBoard board, PieceType type, int orientation,
+        int originX, int originY) {
+        List<Placement> placements = new ArrayList<>();
+        // each rotation lands in at most one placement per column
+        long[] keys = new long[ROTATIONS.length * board.getWidth()];
+        int found = 0;
+        if (!board.fits(RotationTable.getCells(type, orientation), originX, originY)) {
+            return placements;
+        }
+        for (int rotations : ROTATIONS) {
+            if (rotations != 0 && type.getPivotNum() == 0) {
+                continue;
+            }
+            int o = orientation;
+            int x = originX;
+            int y = originY;
+            int direction = Integer.signum(rotations);
+            boolean rotated = true;
+            for (int turn = 0; rotated && turn < Math.abs(rotations); turn++) {
+                int to = RotationTable.rotate(o, direction);
+                int[][] cells = RotationTable.getCells(type, to);
+                int[][] kicks = RotationTable.getKicks(type, o, direction);
+                rotated = false;
+                for (int i = 0; !rotated && i < kicks.length; i++) {
+                    if (board.fits(cells, x + kicks[i][0], y + kicks[i][1])) {
+                        x += kicks[i][0];
+                        y += kicks[i][1];
+                        o = to;
+                        rotated = true;
+                    }
+                }
+            }
+            if (!rotated) {
+                continue;
+            }
+            int[][] cells = RotationTable.getCells(type, o);
+            found = add(placements, keys, found, board, cells, rotations, 0, o, x, y);
+            for (int step = -1; step <= 1; step += 2) {
+                for (int shift = step; board.fits(cells, x + shift, y); shift += step) {
+                    found = add(placements, keys, found, board, cells, rotations, shift, o,
+                        x + shift, y);
+                }
+            }
+        }
+        return placements;
+    }
+
+    /**
+     * Helper method for enumerate()
+     * Drops a piece from a position and lists where it lands, unless a listed placement
+     * already covers the same squares.
+     * The landing row is read from the board's skyline, so the piece is not dropped through
+     * the board one row at a time.
+     * @return the number of keys in use.
+     */
+    private static int add (List<Placement> placements, long[] keys, int found, BitBoard board,
+        int[][] cells, int rotations, int shift, int orientation, int x, int y) {
+        y = board.dropRow(cells, x, y);
+        long key = cellKey(cells, x, y);
+        for (int i = 0; i < found; i++) {
+            if (keys[i] == key) {
+                return found;
+            }
+        }
+        keys[found] = key;
+        placements.add(new Placement(rotations, shift, orientation, x, y, 0));
+        return found + 1;
+    }
+
+    /**
+     * Helper method for add()
+     * Identifies the set of squares a piece covers, regardless of its orientation: the
+     * corner of the squares' bounding box and a bitmap of the squares inside the 4x4 box
+     * from that corner.
+     * @return a key that is equal for equal sets of squares that fit in a 4x4 box.
+     */
+    private static long cellKey (int[][] cells, int x, int y) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        for (int i = 0; i < cells.length; i++) {
+            minX = Math.min(minX, cells[i][0]);
+            minY = Math.min(minY, cells[i][1]);
+        }
+        long shape = 0;
+        for (int i = 0; i < cells.length; i++) {
+            shape |= 1L << ((cells[i][1] - minY) * 4 + (cells[i][0] - minX));
+        }
+        return ((long) (minY + y) << 32) | ((long) (minX + x + 4) << 16) | shape;
+    }
+
+}
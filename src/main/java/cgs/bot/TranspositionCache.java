@@ -0,0 +1,340 @@
+package cgs.bot;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded table of search results keyed by the {@code Zobrist} hash of a position, shared by
+ * every thread of a search. Each entry holds a score, a best placement, or both.
+ *
+ * The table is split into stripes, chosen by the high bits of a key, that are locked
+ * separately so threads working on different positions rarely wait for each other. Within a
+ * stripe a key may sit in any of {@code PROBES} slots from its home slot. Once those slots
+ * are all taken, one of them is evicted with the clock algorithm: every slot has a referenced
+ * bit that is set whenever the slot is used, and the hand passes over referenced slots,
+ * clearing their bits, until it finds one that has not been used since the hand last passed.
+ * Entries are never removed otherwise, so a lookup can stop at the first empty slot.
+ *
+ * Hits, misses and evictions are counted with striped counters that can be read at any time.
+ */
+public class TranspositionCache {
+
+    /* The default number of entries and of stripes */
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+    public static final int DEFAULT_STRIPES = 16;
+
+    /* The number of slots a key may sit in, starting at its home slot */
+    public static final int PROBES = 8;
+
+    /* The stripes, a power of two of them */
+    private final Stripe[] stripes;
+
+    /* The number of high bits of a key that pick its stripe */
+    private final int stripeShift;
+
+    /* Counts of the lookups that found and did not find their key, and the entries evicted */
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Creates a cache with {@code DEFAULT_CAPACITY} entries in {@code DEFAULT_STRIPES}
+     * stripes.
+     */
+    public TranspositionCache () {
+        this(DEFAULT_CAPACITY, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a cache.
+     * @param capacity the most entries, rounded up to a power of two.
+     * @param stripes the number of separately locked stripes, rounded up to a power of two.
+     * @throws IllegalArgumentException if a stripe would have fewer than {@code PROBES} slots.
+     */
+    public TranspositionCache (int capacity, int stripes) {
+        int stripeCount = ceilPowerOfTwo(stripes);
+        int slots = ceilPowerOfTwo(capacity) / stripeCount;
+        if (stripes < 1 || slots < PROBES) {
+            throw new IllegalArgumentException("Invalid capacity or stripes");
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(slots);
+        }
+        this.stripeShift = Long.SIZE - Integer.numberOfTrailingZeros(stripeCount);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Helper method for the constructor
+     * Rounds a number up to a power of two.
+     * @param n the number, at least 1.
+     * @return the smallest power of two that is not less than the number.
+     */
+    private static int ceilPowerOfTwo (int n) {
+        return (n <= 1) ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /* Lookups */
+
+    /**
+     * Gets the score stored for a position.
+     * @param key the hash of the position.
+     * @return the score, or {@code Double.NaN} if none is stored.
+     */
+    public double getScore (long key) {
+        Stripe stripe = this.stripeOf(key);
+        double score;
+        synchronized (stripe) {
+            int slot = stripe.find(key);
+            score = (slot < 0) ? Double.NaN : stripe.scores[slot];
+        }
+        this.count(!Double.isNaN(score));
+        return score;
+    }
+
+    /**
+     * Gets the best placement stored for a position.
+     * @param key the hash of the position.
+     * @return the placement, or null if none is stored.
+     */
+    public Placement getPlacement (long key) {
+        Stripe stripe = this.stripeOf(key);
+        Placement placement;
+        synchronized (stripe) {
+            int slot = stripe.find(key);
+            placement = (slot < 0) ? null : stripe.placements[slot];
+        }
+        this.count(placement != null);
+        return placement;
+    }
+
+    /**
+     * Stores the score of a position, keeping any placement stored for it.
+     * @param key the hash of the position.
+     * @param score the score.
+     */
+    public void putScore (long key, double score) {
+        Stripe stripe = this.stripeOf(key);
+        synchronized (stripe) {
+            stripe.scores[this.claim(stripe, key)] = score;
+        }
+    }
+
+    /**
+     * Stores the best placement of a position, keeping any score stored for it.
+     * @param key the hash of the position.
+     * @param placement the placement.
+     */
+    public void putPlacement (long key, Placement placement) {
+        Stripe stripe = this.stripeOf(key);
+        synchronized (stripe) {
+            stripe.placements[this.claim(stripe, key)] = placement;
+        }
+    }
+
+    /**
+     * Removes every entry. The counters are kept.
+     */
+    public void clear () {
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                Arrays.fill(stripe.used, false);
+                Arrays.fill(stripe.referenced, false);
+                Arrays.fill(stripe.placements, null);
+            }
+        }
+    }
+
+    /* Helper methods for the lookups */
+
+    /**
+     * Gets the stripe a key belongs to.
+     * @param key the key.
+     * @return the stripe.
+     */
+    private Stripe stripeOf (long key) {
+        return this.stripes[(this.stripes.length == 1) ? 0 : (int) (key >>> this.stripeShift)];
+    }
+
+    /**
+     * Counts a lookup.
+     * @param hit true if the lookup found what it was looking for.
+     */
+    private void count (boolean hit) {
+        if (hit) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+        }
+    }
+
+    /**
+     * Gets the slot of a key, taking an empty slot or evicting an entry if the key is not
+     * stored. Must be called while synchronized on the stripe.
+     * @param stripe the stripe of the key.
+     * @param key the key.
+     * @return the slot, emptied of any previous entry if the key is new.
+     */
+    private int claim (Stripe stripe, long key) {
+        int slot = stripe.find(key);
+        if (slot >= 0) {
+            return slot;
+        }
+        slot = stripe.findEmpty(key);
+        if (slot < 0) {
+            slot = stripe.evict(key);
+            this.evictions.increment();
+        }
+        stripe.used[slot] = true;
+        stripe.referenced[slot] = true;
+        stripe.keys[slot] = key;
+        stripe.scores[slot] = Double.NaN;
+        stripe.placements[slot] = null;
+        return slot;
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of lookups that found what they were looking for.
+     * @return the number of hits.
+     */
+    public long getHits () {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that did not find what they were looking for.
+     * @return the number of misses.
+     */
+    public long getMisses () {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the number of entries that were evicted to make room for new ones.
+     * @return the number of evictions.
+     */
+    public long getEvictions () {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Gets the most entries the cache holds.
+     * @return the capacity.
+     */
+    public int getCapacity () {
+        return this.stripes.length * this.stripes[0].keys.length;
+    }
+
+    /**
+     * Describes the counters of the cache for logging.
+     * @return the hit, miss and eviction counts and the hit rate.
+     */
+    @Override
+    public String toString () {
+        long hits = this.getHits();
+        long lookups = hits + this.getMisses();
+        return String.format("hits=%d misses=%d evictions=%d hitRate=%.1f%%", hits,
+            lookups - hits, this.getEvictions(), (lookups == 0) ? 0 : 100.0 * hits / lookups);
+    }
+
+    /* Inner Classes */
+
+    /**
+     * A separately locked part of the cache: parallel arrays of slots and a clock hand.
+     * Every method must be called while synchronized on the stripe.
+     */
+    private static class Stripe {
+
+        /* The slots */
+        private final long[] keys;
+        private final double[] scores;
+        private final Placement[] placements;
+        private final boolean[] used;
+        private final boolean[] referenced;
+
+        /* The slot the clock hand points at */
+        private int hand;
+
+        /**
+         * Creates an empty stripe.
+         * @param slots the number of slots, a power of two.
+         */
+        Stripe (int slots) {
+            this.keys = new long[slots];
+            this.scores = new double[slots];
+            this.placements = new Placement[slots];
+            this.used = new boolean[slots];
+            this.referenced = new boolean[slots];
+        }
+
+        /**
+         * Gets the home slot of a key.
+         * @param key the key.
+         * @return the first slot the key may sit in.
+         */
+        private int home (long key) {
+            return (int) key & (this.keys.length - 1);
+        }
+
+        /**
+         * Finds the slot of a key and marks it referenced.
+         * @param key the key.
+         * @return the slot, or -1 if the key is not stored.
+         */
+        int find (long key) {
+            int mask = this.keys.length - 1;
+            for (int i = 0, slot = this.home(key); i < PROBES; i++, slot = (slot + 1) & mask) {
+                if (!this.used[slot]) {
+                    return -1;
+                }
+                if (this.keys[slot] == key) {
+                    this.referenced[slot] = true;
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finds an empty slot a key may sit in.
+         * @param key the key.
+         * @return the slot, or -1 if every slot the key may sit in is taken.
+         */
+        int findEmpty (long key) {
+            int mask = this.keys.length - 1;
+            for (int i = 0, slot = this.home(key); i < PROBES; i++, slot = (slot + 1) & mask) {
+                if (!this.used[slot]) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Picks a slot a key may sit in to evict with the clock algorithm.
+         * The hand sweeps the slots the key may sit in, starting where it last stopped, and
+         * gives every referenced slot a second chance by clearing its bit.
+         * @param key the key.
+         * @return the slot to reuse.
+         */
+        int evict (long key) {
+            int mask = this.keys.length - 1;
+            int home = this.home(key);
+            while (true) {
+                this.hand = (this.hand + 1) % PROBES;
+                int slot = (home + this.hand) & mask;
+                if (!this.referenced[slot]) {
+                    return slot;
+                }
+                this.referenced[slot] = false;
+            } //while
+        }
+
+    }
+
+}
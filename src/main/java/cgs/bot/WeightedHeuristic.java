@@ -0,0 +1,194 @@
+package cgs.bot;
+
+import cgs.engine.BitBoard;
+
+/**
+ * A {@code Heuristic} that scores a board as a weighted sum of features of its stack:
+ * the aggregate height of the columns, the number of holes (empty squares with a taken square
+ * above them), the bumpiness (the sum of the height differences of neighbouring columns), the
+ * number of lines cleared, the row and column transitions (the number of times neighbouring
+ * squares of a row or column, counting the walls and floor as taken, change between empty and
+ * taken) and the well depth (the number of empty squares open to the top with taken squares or
+ * walls on both sides). Features that make a board worse should have negative weights.
+ *
+ * Every feature is counted a whole row at a time from the row masks of the board, and features
+ * with a weight of 0 are not counted at all, so the default weights score boards as fast as
+ * the original four feature heuristic and to the same values.
+ */
+public class WeightedHeuristic implements Heuristic {
+
+    /* The index of each feature's weight in an array of weights */
+    public static final int HEIGHT = 0;
+    public static final int LINES = 1;
+    public static final int HOLES = 2;
+    public static final int BUMPINESS = 3;
+    public static final int ROW_TRANSITIONS = 4;
+    public static final int COLUMN_TRANSITIONS = 5;
+    public static final int WELLS = 6;
+
+    /* The number of features */
+    public static final int FEATURES = 7;
+
+    /* Default weights, tuned by hand on the standard board */
+    public static final double DEFAULT_HEIGHT_WEIGHT = -0.51;
+    public static final double DEFAULT_LINES_WEIGHT = 0.76;
+    public static final double DEFAULT_HOLES_WEIGHT = -0.36;
+    public static final double DEFAULT_BUMPINESS_WEIGHT = -0.18;
+
+    /* The weight of each feature */
+    private final double heightWeight;
+    private final double linesWeight;
+    private final double holesWeight;
+    private final double bumpinessWeight;
+    private final double rowTransitionsWeight;
+    private final double columnTransitionsWeight;
+    private final double wellsWeight;
+
+    /**
+     * Creates a heuristic with the default weights.
+     */
+    public WeightedHeuristic () {
+        this(DEFAULT_HEIGHT_WEIGHT, DEFAULT_LINES_WEIGHT, DEFAULT_HOLES_WEIGHT,
+            DEFAULT_BUMPINESS_WEIGHT);
+    }
+
+    /**
+     * Creates a heuristic with custom weights for the original four features, the
+     * transitions and wells are not counted.
+     * @param heightWeight the weight of the aggregate height.
+     * @param linesWeight the weight of the lines cleared.
+     * @param holesWeight the weight of the holes.
+     * @param bumpinessWeight the weight of the bumpiness.
+     */
+    public WeightedHeuristic (double heightWeight, double linesWeight, double holesWeight,
+        double bumpinessWeight) {
+        this(new double[] {heightWeight, linesWeight, holesWeight, bumpinessWeight, 0, 0, 0});
+    }
+
+    /**
+     * Creates a heuristic with a custom weight for every feature.
+     * @param weights the weights, {@code FEATURES} of them indexed by feature.
+     */
+    public WeightedHeuristic (double[] weights) {
+        if (weights.length != FEATURES) {
+            throw new IllegalArgumentException("Expected " + FEATURES + " weights");
+        }
+        this.heightWeight = weights[HEIGHT];
+        this.linesWeight = weights[LINES];
+        this.holesWeight = weights[HOLES];
+        this.bumpinessWeight = weights[BUMPINESS];
+        this.rowTransitionsWeight = weights[ROW_TRANSITIONS];
+        this.columnTransitionsWeight = weights[COLUMN_TRANSITIONS];
+        this.wellsWeight = weights[WELLS];
+    }
+
+    /**
+     * Scores a board as the weighted sum of its features.
+     * @param board the board after the placement.
+     * @param linesCleared the number of rows cleared by the placements leading to the board.
+     * @return the score of the board.
+     */
+    @Override
+    public double evaluate (BitBoard board, int linesCleared) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        int top = board.getTop();
+        int aggregateHeight = 0;
+        int holes = 0;
+        int bumpiness = 0;
+        int previous = -1;
+        long above = 0;
+        for (int y = top; y < height; y++) {
+            long row = board.getStaticRow(y);
+            holes += Long.bitCount(above & ~row);
+            /* Columns whose highest square is on this row */
+            long tops = row & ~above;
+            aggregateHeight += Long.bitCount(tops) * (height - y);
+            above |= row;
+        }
+        for (int x = 0; x < width; x++) {
+            int columnHeight = board.getColumnHeight(x);
+            if (previous >= 0) {
+                bumpiness += Math.abs(columnHeight - previous);
+            }
+            previous = columnHeight;
+        }
+        double score = this.heightWeight * aggregateHeight + this.linesWeight * linesCleared
+            + this.holesWeight * holes + this.bumpinessWeight * bumpiness;
+        if (this.rowTransitionsWeight != 0) {
+            score += this.rowTransitionsWeight * rowTransitions(board);
+        }
+        if (this.columnTransitionsWeight != 0) {
+            score += this.columnTransitionsWeight * columnTransitions(board);
+        }
+        if (this.wellsWeight != 0) {
+            score += this.wellsWeight * wells(board);
+        }
+        return score;
+    }
+
+    /* Feature Helper Methods */
+
+    /**
+     * Helper method for evaluate()
+     * Counts the changes between empty and taken squares along every row, with a taken wall
+     * on both sides. Empty rows only change at the walls.
+     * @param board the board.
+     * @return the number of row transitions.
+     */
+    private static int rowTransitions (BitBoard board) {
+        int width = board.getWidth();
+        long full = board.getFullRow();
+        long last = 1L << (width - 1);
+        int top = board.getTop();
+        int transitions = 2 * top;
+        for (int y = top; y < board.getHeight(); y++) {
+            long row = board.getStaticRow(y);
+            transitions += Long.bitCount((row ^ (row >>> 1)) & (full >>> 1));
+            transitions += (int) (~row & 1) + (((row & last) == 0) ? 1 : 0);
+        }
+        return transitions;
+    }
+
+    /**
+     * Helper method for evaluate()
+     * Counts the changes between empty and taken squares down every column, with a taken
+     * floor below the board.
+     * @param board the board.
+     * @return the number of column transitions.
+     */
+    private static int columnTransitions (BitBoard board) {
+        long full = board.getFullRow();
+        int transitions = 0;
+        long previous = 0;
+        for (int y = board.getTop(); y < board.getHeight(); y++) {
+            long row = board.getStaticRow(y);
+            transitions += Long.bitCount(previous ^ row);
+            previous = row;
+        }
+        return transitions + Long.bitCount(~previous & full);
+    }
+
+    /**
+     * Helper method for evaluate()
+     * Counts the empty squares open to the top whose neighbours on both sides are taken
+     * or a wall.
+     * @param board the board.
+     * @return the well depth.
+     */
+    private static int wells (BitBoard board) {
+        long full = board.getFullRow();
+        long last = 1L << (board.getWidth() - 1);
+        int wells = 0;
+        long above = 0;
+        for (int y = board.getTop(); y < board.getHeight(); y++) {
+            long row = board.getStaticRow(y);
+            long left = (row << 1) | 1;
+            long right = (row >>> 1) | last;
+            wells += Long.bitCount(~row & ~above & left & right & full);
+            above |= row;
+        }
+        return wells;
+    }
+
+}
@@ -0,0 +1,185 @@
+package cgs.customComponents;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The pixels of the image shown by a {@code TetrisBoard}.
+ * Squares are painted into a reused array of ARGB pixels from whichever thread changes the
+ * board. The area painted since the last upload is tracked so that {@code upload()} can copy
+ * only that area into the displayed {@code WritableImage} with one call per frame.
+ * The rows above a pixel row can be shown shifted up over the background, which is how the
+ * rows above cleared rows slide down into place, without changing the painted pixels.
+ * Every upload is reported to Flight Recorder as an {@code UploadEvent} when it is enabled.
+ */
+class FrameBuffer {
+
+    /* The format of the pixels, every painted color is opaque so no premultiplying is needed */
+    private static final PixelFormat<IntBuffer> FORMAT = PixelFormat.getIntArgbPreInstance();
+
+    /* The size of the image in pixels and the size of a square */
+    private final int width;
+    private final int height;
+    private final int scale;
+
+    /* The pixels that are painted, row by row */
+    private final int[] pixels;
+
+    /* The image that is shown, created and written to on the javaFX thread */
+    private WritableImage image;
+
+    /* The bounds of the pixels painted since the last upload (max values are exclusive) */
+    private int dirtyMinX;
+    private int dirtyMinY;
+    private int dirtyMaxX;
+    private int dirtyMaxY;
+
+    /* The number of squares painted since the last upload */
+    private int paintedSquares;
+
+    /* The pixel row above which the image is shown shifted up, and by how many pixels */
+    private int shiftBottom;
+    private int shiftOffset;
+
+    /* Rows of the background color, shown below the shifted rows */
+    private final int background;
+    private int[] blank;
+
+    /**
+     * Creates a new frame buffer filled with a single color.
+     * @param columns the number of squares across.
+     * @param rows the number of squares down.
+     * @param scale the width of a square in pixels.
+     * @param background the ARGB color the image starts as.
+     */
+    FrameBuffer (int columns, int rows, int scale, int background) {
+        this.width = columns * scale;
+        this.height = rows * scale;
+        this.scale = scale;
+        this.pixels = new int[this.width * this.height];
+        Arrays.fill(this.pixels, background);
+        this.background = background;
+        this.blank = new int[0];
+        this.dirtyMinX = 0;
+        this.dirtyMinY = 0;
+        this.dirtyMaxX = this.width;
+        this.dirtyMaxY = this.height;
+    }
+
+    /**
+     * Paints a square with a fill color and a one pixel outline.
+     * Like {@code Graphics2D.drawRect}, the outline covers one pixel past the right and bottom
+     * of the square so outlines of neighbouring squares overlap.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @param fill the ARGB color of the square.
+     * @param border the ARGB color of the outline of the square.
+     */
+    synchronized void paintSquare (int x, int y, int fill, int border) {
+        int left = x * this.scale;
+        int top = y * this.scale;
+        int right = Math.min(left + this.scale, this.width - 1);
+        int bottom = Math.min(top + this.scale, this.height - 1);
+        for (int py = top; py <= bottom; py++) {
+            int start = py * this.width;
+            if (py == top || py == top + this.scale) {
+                Arrays.fill(this.pixels, start + left, start + right + 1, border);
+            } else {
+                Arrays.fill(this.pixels, start + left, start + right + 1, fill);
+                this.pixels[start + left] = border;
+                if (right == left + this.scale) {
+                    this.pixels[start + right] = border;
+                }
+            }
+        }
+        this.dirtyMinX = Math.min(this.dirtyMinX, left);
+        this.dirtyMinY = Math.min(this.dirtyMinY, top);
+        this.dirtyMaxX = Math.max(this.dirtyMaxX, right + 1);
+        this.dirtyMaxY = Math.max(this.dirtyMaxY, bottom + 1);
+        this.paintedSquares++;
+    }
+
+    /**
+     * Shows the rows above a pixel row shifted up by a number of pixels, with the background
+     * below them, until the shift is set back to 0. The painted pixels are not changed, the
+     * shift only applies to what is uploaded.
+     * @param bottom the pixel row above which the image is shifted.
+     * @param offset the number of pixels the rows are shifted up, 0 to show them in place.
+     */
+    synchronized void setShift (int bottom, int offset) {
+        int rows = Math.min(Math.max(this.shiftBottom, bottom), this.height);
+        this.shiftBottom = Math.min(bottom, this.height);
+        this.shiftOffset = Math.min(Math.max(offset, 0), this.shiftBottom);
+        if (this.blank.length < this.shiftOffset * this.width) {
+            this.blank = new int[this.shiftOffset * this.width];
+            Arrays.fill(this.blank, this.background);
+        }
+        this.dirtyMinX = 0;
+        this.dirtyMinY = 0;
+        this.dirtyMaxX = this.width;
+        this.dirtyMaxY = Math.max(this.dirtyMaxY, rows);
+    }
+
+    /**
+     * Copies the pixels painted since the last upload into the image.
+     * While the image is shifted, every row above the shift is copied.
+     * Must be called on the javaFX application thread.
+     * @return true if anything was copied; false if nothing was painted.
+     */
+    synchronized boolean upload () {
+        if (this.dirtyMaxX <= this.dirtyMinX || this.dirtyMaxY <= this.dirtyMinY) {
+            return false;
+        }
+        UploadEvent event = new UploadEvent();
+        event.begin();
+        PixelWriter writer = this.getImage().getPixelWriter();
+        long pixels = 0;
+        if (this.shiftOffset > 0) {
+            int shown = this.shiftBottom - this.shiftOffset;
+            if (shown > 0) {
+                writer.setPixels(0, 0, this.width, shown, FORMAT, this.pixels,
+                    this.shiftOffset * this.width, this.width);
+            }
+            writer.setPixels(0, shown, this.width, this.shiftOffset, FORMAT, this.blank, 0,
+                this.width);
+            pixels += (long) this.width * this.shiftBottom;
+            this.dirtyMinY = Math.max(this.dirtyMinY, this.shiftBottom);
+        }
+        int columns = this.dirtyMaxX - this.dirtyMinX;
+        int rows = this.dirtyMaxY - this.dirtyMinY;
+        if (rows > 0) {
+            writer.setPixels(this.dirtyMinX, this.dirtyMinY, columns, rows, FORMAT, this.pixels,
+                this.dirtyMinY * this.width + this.dirtyMinX, this.width);
+            pixels += (long) columns * rows;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.squares = this.paintedSquares;
+            event.bytes = pixels * Integer.BYTES;
+            event.commit();
+        }
+        this.paintedSquares = 0;
+        this.dirtyMinX = this.width;
+        this.dirtyMinY = this.height;
+        this.dirtyMaxX = 0;
+        this.dirtyMaxY = 0;
+        return true;
+    }
+
+    /**
+     * Gets the image the pixels are uploaded into.
+     * The image is created on the first call, which must be on the javaFX application thread,
+     * so a frame buffer can be painted without a running javaFX toolkit.
+     * @return the image.
+     */
+    synchronized WritableImage getImage () {
+        if (this.image == null) {
+            this.image = new WritableImage(this.width, this.height);
+        }
+        return this.image;
+    }
+
+}
@@ -0,0 +1,98 @@
+package cgs.customComponents;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs one game tick at a time on a fixed schedule from a single thread.
+ * Tick {@code n} is due {@code n} tick lengths after the loop starts, measured with
+ * {@code System.nanoTime}, so time spent running ticks or oversleeping never pushes later
+ * ticks back. A loop that falls behind runs the ticks it missed back to back to catch up,
+ * unless it is more than {@code maxCatchUp} ticks behind, in which case the missed ticks
+ * are skipped and the schedule restarts from the current time.
+ *
+ * Every tick is reported to Flight Recorder as a {@code TickEvent} when it is enabled, with
+ * its lateness (how long after its deadline it started) and the number of ticks skipped just
+ * before it.
+ */
+class GameLoop {
+
+    /* The default number of late ticks that are caught up before the schedule restarts */
+    public static final int MAX_CATCH_UP = 5;
+
+    /* The length of a tick */
+    private final long tickNanos;
+
+    /* The most ticks the loop runs back to back to catch up */
+    private final int maxCatchUp;
+
+    /* Runs one tick, returns false to stop the loop */
+    private final BooleanSupplier tick;
+
+    /* Cleared to stop the loop after the current tick */
+    private volatile boolean running;
+
+    /**
+     * Creates a new loop.
+     * @param tickNanos the length of a tick in nanoseconds.
+     * @param maxCatchUp the most ticks that are run back to back after the loop falls behind.
+     * @param tick runs one tick and returns false once the loop should stop.
+     */
+    GameLoop (long tickNanos, int maxCatchUp, BooleanSupplier tick) {
+        this.tickNanos = tickNanos;
+        this.maxCatchUp = maxCatchUp;
+        this.tick = tick;
+        this.running = true;
+    }
+
+    /**
+     * Runs ticks on the current thread until a tick returns false or {@code stop()} is called.
+     */
+    void run () {
+        long deadline = System.nanoTime() + this.tickNanos;
+        while (this.running) {
+            this.parkUntil(deadline);
+            long late = System.nanoTime() - deadline;
+            long skipped = 0;
+            if (late > this.maxCatchUp * this.tickNanos) {
+                skipped = late / this.tickNanos;
+                deadline += skipped * this.tickNanos;
+            }
+            TickEvent event = new TickEvent();
+            event.begin();
+            boolean gameOn = this.tick.getAsBoolean();
+            event.end();
+            if (event.shouldCommit()) {
+                event.lateness = late;
+                event.skipped = skipped;
+                event.gameOn = gameOn;
+                event.commit();
+            }
+            if (!gameOn) {
+                this.running = false;
+            }
+            deadline += this.tickNanos;
+        }
+    }
+
+    /**
+     * Stops the loop once the current tick is finished.
+     */
+    void stop () {
+        this.running = false;
+    }
+
+    /**
+     * Helper method for run()
+     * Parks the current thread until a deadline has passed.
+     * @param deadline the {@code System.nanoTime} value to wait for.
+     */
+    private void parkUntil (long deadline) {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package cgs.customComponents;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for a batch of actions applied by {@code TetrisBoard.GamePlay}.
+ * The duration of the event is the time taken to apply the batch.
+ */
+@Name("cgs.Input")
+@Label("Input Batch")
+@Category({"Tetris", "Game Loop"})
+@Description("The actions waiting in the input queues were applied to the game")
+@StackTrace(false)
+class InputEvent extends Event {
+
+    @Label("Actions")
+    int actions;
+
+    @Label("Max Latency")
+    @Description("The longest time from capturing an action of the batch to applying it")
+    @Timespan(Timespan.NANOSECONDS)
+    long maxLatency;
+
+    @Label("Dropped")
+    @Description("The actions of the player rejected because the queue was full since the "
+        + "last batch was reported")
+    long dropped;
+
+}
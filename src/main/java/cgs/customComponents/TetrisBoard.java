@@ -1,72 +1,167 @@
 package cgs.customComponents;
 
+import cgs.bot.Bot;
+import cgs.bot.Placement;
+import cgs.bot.WeightedHeuristic;
+import cgs.engine.Action;
+import cgs.engine.BitBoard;
+import cgs.engine.EngineListener;
+import cgs.engine.InputRing;
+import cgs.engine.LineClearMode;
+import cgs.engine.PieceGenerator;
+import cgs.engine.PieceType;
+import cgs.engine.TetrisEngine;
+import cgs.event.EventBus;
+import cgs.event.EventPublisher;
+import cgs.render.Palette;
+import cgs.replay.ReplayWriter;
+
+import javafx.animation.Transition;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import java.awt.image.BufferedImage;
-import java.util.List;
 import javafx.scene.input.KeyCode;
-import java.util.LinkedList;
-import java.awt.Graphics2D;
-import java.awt.Rectangle;
-import javafx.embed.swing.SwingFXUtils;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.awt.Color;
-import java.util.Arrays;
-import org.ejml.simple.SimpleMatrix;
-import java.util.Collections;
 import java.lang.Runnable;
 import javafx.stage.Stage;
 import javafx.stage.Modality;
-import javafx.scene.image.Image;
 import javafx.scene.layout.VBox;
 import javafx.scene.layout.HBox;
 import javafx.scene.Scene;
 import javafx.application.Platform;
 import javafx.scene.control.Button;
 import javafx.scene.text.Text;
+import javafx.util.Duration;
 
 /**
  * A custom component built from an ImageView that runs the game Tetris.
  * Contains all the necessary code to run the game Tetris enabling easy plug in play capabilities
  * in a javaFX application.
- * The {@code TetrisBoard} outer class contains all the methods for managing the displayed image
- * and the grid that represents the game internally.
+ * The rules of the game are kept in a {@code TetrisEngine}, the {@code TetrisBoard} outer class
+ * only paints the changes the engine makes to its board onto the displayed image.
  *
  * Methods for managing gameplay are contained within the inner class {@code GamePlay} which
  * and launches the actual gameplay threads by calling the {@code GamePlay} constructor.
+ * By default a single {@code GameLoop} thread runs the game, setting the system property
+ * {@code tetris.scheduler} to {@code threads} uses separate clock, control and gameplay threads.
+ * Setting the system property {@code tetris.bot} to {@code true} lets a {@code Bot} play the
+ * game alongside the player. Setting {@code tetris.replay} to a file path records the game into
+ * a replay log that {@code cgs.replay.ReplayPlayer} can play again.
+ * Setting {@code tetris.lineclear} to {@code compact} clears full rows in a single step instead
+ * of letting the squares above them fall as an avalanche, and setting
+ * {@code tetris.clearAnimation} to {@code true} then slides the image down over the cleared
+ * rows without holding up the game.
+ * The size of the board and of its squares on screen can be set with {@code tetris.width},
+ * {@code tetris.height} and {@code tetris.scale}. The squares the piece would land on are
+ * outlined unless {@code tetris.ghost} is set to {@code false}.
+ * Pieces spawning, moving, rotating and locking, cleared rows, pauses and the end of the game
+ * are published on an {@code EventBus}, see {@code getEvents()}, so scoring, sounds and
+ * statistics can follow the game without running on its threads.
+ * Setting {@code tetris.fastStart} to {@code true} starts the game as soon as it is shown,
+ * without waiting on the welcome popup.
+ * The next pieces are shown in a separate image, see {@code getPreviewView()}: how many with
+ * {@code tetris.preview}, and setting {@code tetris.generator} to {@code bag} deals the pieces
+ * from shuffled bags of all seven instead of picking each one at random.
  *
- * The methods managing the falling pieces are contained in the inner class {@code Piece}
- * which handles the operations such as moving/rotating the piece.
+ * Ticks, input batches, image uploads, line clears and pieces are reported as Flight Recorder
+ * events, which cost next to nothing unless a recording enables them, for example with
+ * {@code -XX:StartFlightRecording=settings=resources/tetris.jfc,filename=tetris.jfr}.
  *
  * Creating an instance of {@code TetrisBoard} automatically begins the game.
  */
-public class TetrisBoard extends ImageView {
+public class TetrisBoard extends ImageView implements EngineListener {
+
+    /* The size of the internal game grid (board), set with tetris.width and tetris.height */
+    public static final int HORIZONTAL_SPACES =
+        Integer.getInteger("tetris.width", TetrisEngine.HORIZONTAL_SPACES);
+    public static final int VERTICAL_SPACES =
+        Integer.getInteger("tetris.height", TetrisEngine.VERTICAL_SPACES);
+
+    /* The scale that used to convert the grid (board) into an image, set with tetris.scale */
+    public static final int DISPLAY_SCALE =
+        Integer.getInteger("tetris.scale", Palette.DEFAULT_SCALE);
+
+    /* If true the game runs on the clock, control and gameplay threads instead of a GameLoop */
+    public static final boolean THREADED_SCHEDULER =
+        "threads".equals(System.getProperty("tetris.scheduler"));
+
+    /* If true a bot plays the game */
+    public static final boolean BOT_PLAYER = Boolean.getBoolean("tetris.bot");
+
+    /* The file the game is recorded into, null to not record it */
+    public static final String REPLAY_PATH = System.getProperty("tetris.replay");
+
+    /* How full rows are cleared */
+    public static final LineClearMode LINE_CLEAR_MODE =
+        "compact".equals(System.getProperty("tetris.lineclear"))
+            ? LineClearMode.COMPACT : LineClearMode.AVALANCHE;
+
+    /* If true the rows above rows cleared in a single step slide down into place */
+    public static final boolean CLEAR_ANIMATION = Boolean.getBoolean("tetris.clearAnimation");
+
+    /* If true the squares the piece would land on are outlined, set with tetris.ghost */
+    public static final boolean GHOST_PIECE =
+        Boolean.parseBoolean(System.getProperty("tetris.ghost", "true"));
+
+    /* If true the game starts without the welcome popup */
+    public static final boolean FAST_START = Boolean.getBoolean("tetris.fastStart");
+
+    /* The number of next pieces shown, set with tetris.preview */
+    public static final int PREVIEW_DEPTH = Math.max(1,
+        Math.min(TetrisEngine.MAX_PREVIEW, Integer.getInteger("tetris.preview", 1)));
+
+    /* How the pieces are dealt, set tetris.generator to bag for shuffled bags of seven */
+    public static final int GENERATOR = "bag".equals(System.getProperty("tetris.generator"))
+        ? PieceGenerator.BAG : PieceGenerator.UNIFORM;
+
+    /* The size of the preview in squares, each piece gets two rows and a row between pieces */
+    public static final int PREVIEW_COLUMNS = 4;
+    public static final int PREVIEW_SLOT_ROWS = 3;
 
-    /* The size of the internal game grid (board) */
-    public static final int HORIZONTAL_SPACES = 10;
-    public static final int VERTICAL_SPACES = 20;
+    /* The picture shown when the game is over, next to this class on the classpath */
+    public static final String GAME_OVER_IMAGE = "GameOver.png";
 
-    /* The scale that used to convert the grid (board) into an image */
-    public static final int DISPLAY_SCALE = 25;
+    /* The time the rows above cleared rows take to slide down */
+    public static final Duration CLEAR_ANIMATION_TIME = Duration.millis(120);
 
-    /* The default colors */
-    public static final Color BACKGROUND_COLOR = Color.DARK_GRAY;
-    public static final Color OUTLINE_COLOR = Color.BLACK;
-    public static final Color PILE_COLOR = Color.YELLOW; //After a row is cleared
+    /* The default colors, see {@code Palette} */
+    public static final Color BACKGROUND_COLOR = Palette.BACKGROUND_COLOR;
+    public static final Color OUTLINE_COLOR = Palette.OUTLINE_COLOR;
+    public static final Color PILE_COLOR = Palette.PILE_COLOR; //After a row is cleared
+    public static final Color GHOST_COLOR = Palette.GHOST_COLOR; //Outline of where the piece lands
 
-    /* The image stored in memory that can be edited*/
-    private BufferedImage display;
+    /* The colors of the pieces, in the order of the engine's piece colors */
+    public static final Color[] PIECE_COLORS = Palette.PIECE_COLORS;
 
-    /* Object that can paint onto the display image*/
-    private Graphics2D painter;
+    /* The pixels of the displayed image, painted as the board changes */
+    private FrameBuffer display;
 
-    /* The grid that stores the internal state of the game */
-    private Marker[][] board;
+    /* The pixels of the next pieces and the view that shows them */
+    private FrameBuffer previewDisplay;
+    private ImageView previewView;
 
-    /* The list of all the KeyCodes entered by the player */
-    private List<KeyCode> controls;
+    /* Set while an upload of the display to the screen is waiting on the javaFX thread */
+    private AtomicBoolean uploadPending;
 
-    /* The manages possible colors for the pieces */
-    private List<Color> colorBank;
-    private List<Color> usedColors;
+    /* The slide of the last rows cleared, only used on the javaFX thread */
+    private ClearSlide clearSlide;
+
+    /* The rules and state of the game */
+    private TetrisEngine engine;
+
+    /* The stream of the game's events, for anything that reacts to the game off its thread */
+    private EventBus events;
+
+    /* The actions entered by the player, waiting to be applied */
+    private InputRing controls;
 
     /* The gameplay and the threads that control the game */
     private GamePlay game;
@@ -78,29 +173,32 @@ public class TetrisBoard extends ImageView {
     /**
      * Creates a new TetrisBoard componet instance with a grey rectangle
      * representing an empty board.
-     * @param controls the list of player input.
+     * @param controls the queue of player input, this board is its only consumer.
+     * @param stage the stage that contains this TetrisBoard.
      */
-    public TetrisBoard (List<KeyCode> controls, Stage stage) {
+    public TetrisBoard (InputRing controls, Stage stage) {
         this.controls = controls;
         this.stage = stage;
 
-        this.board = new Marker[HORIZONTAL_SPACES][VERTICAL_SPACES];
-        for (int x = 0; x < this.board.length; x++) {
-            for (int y = 0; y < this.board[x].length; y++) {
-                this.board[x][y] = Marker.EMPTY;
-            }
-        }
+        this.display = new FrameBuffer(HORIZONTAL_SPACES, VERTICAL_SPACES, DISPLAY_SCALE,
+            BACKGROUND_COLOR.getRGB());
+        this.display.upload();
+        this.uploadPending = new AtomicBoolean(false);
 
-        this.display = new BufferedImage(
-            HORIZONTAL_SPACES * DISPLAY_SCALE, VERTICAL_SPACES * DISPLAY_SCALE,
-            BufferedImage.TYPE_BYTE_INDEXED);
-        this.painter = this.display.createGraphics();
-        this.painter.setColor(BACKGROUND_COLOR);
-        this.painter.fillRect(0, 0, this.display.getWidth(), this.display.getHeight());
+        this.setImage(this.display.getImage());
 
-        this.setImage(SwingFXUtils.toFXImage(display, null));
+        this.previewDisplay = new FrameBuffer(PREVIEW_COLUMNS,
+            PREVIEW_SLOT_ROWS * PREVIEW_DEPTH - 1, DISPLAY_SCALE, BACKGROUND_COLOR.getRGB());
+        this.previewView = new ImageView(this.previewDisplay.getImage());
 
-        this.initPieceColors();
+        this.engine = new TetrisEngine(ThreadLocalRandom.current().nextLong(),
+            LINE_CLEAR_MODE, HORIZONTAL_SPACES, VERTICAL_SPACES,
+            PieceGenerator.forCode(GENERATOR), PREVIEW_DEPTH);
+        this.events = new EventBus();
+        this.engine.setListener(new EventPublisher(this.events, this));
+        this.engine.setGhost(GHOST_PIECE);
+        this.previewChanged();
+        this.previewDisplay.upload();
 
         this.game = new GamePlay();
 
@@ -109,298 +207,187 @@ public class TetrisBoard extends ImageView {
     /* Constructor Helper Methods*/
 
     /**
-     * Helper Method for constuctor.
-     * Initalizes colorBank and usedColor lists to keep track of which colors are
-     * aready present on the board.
+     * Converts a key into the action it stands for.
+     * A - moves the piece left
+     * S - moves the piece down (bypasses the {@code FALL_SPEED} once)
+     * D - moves the piece right
+     * Q - rotates the piece Counter-Clockwise
+     * E - rotates the piece Clockwise
+     * P - pauses or resumes the game
+     * SPACE - drops the piece to where it lands and locks it
+     * @param key the key that was pressed.
+     * @return the action of the key, or null if the key has no action.
      */
-    private void initPieceColors () {
-        this.colorBank = new LinkedList<Color>(Arrays.asList(new Color[] {
-            Color.BLUE, Color.CYAN, Color.GREEN,
-            Color.MAGENTA, Color.ORANGE, Color.PINK, Color.RED, Color.WHITE
-        }));
-        this.usedColors = new LinkedList<Color>();
-    }
-
-    /* Board and Display Mutators */
-
-    /**
-     * Clears any row that is full and converts and filled in squares above it into a piece
-     * to enable the squares above the row to fall.
-     * @return the custom piece that is only suppose to fall (no rotate or to move left or right)
-     */
-    private Piece manageBoard() {
-
-        List<Integer> fullRows = new LinkedList<>();
-        RowStatus status = RowStatus.PARTIAL;
-        for (int row = VERTICAL_SPACES - 1; row >= 0 && status != RowStatus.EMPTY; row--) {
-            status = this.checkRow(row);
-            if (status == RowStatus.FULL) {
-                fullRows.add(row);
-            }
-        }
-        if (fullRows.size() > 0) {
-            int topRow = fullRows.get(fullRows.size() - 1);
-            for (Integer row : fullRows) {
-                this.clearRow(row);
-            }
-            Piece piece = this.createAvalanche(topRow);
-            this.markAndPaint(piece.getSpaces(), Marker.DYNAMIC,
-                BACKGROUND_COLOR, BACKGROUND_COLOR);
-            return piece;
-        } else {
+    public static Action toAction (KeyCode key) {
+        switch (key) {
+        case A:
+            return Action.LEFT;
+        case S:
+            return Action.DOWN;
+        case D:
+            return Action.RIGHT;
+        case E:
+            return Action.ROTATE_CW;
+        case Q:
+            return Action.ROTATE_CCW;
+        case P:
+            return Action.PAUSE;
+        case SPACE:
+            return Action.HARD_DROP;
+        default:
             return null;
-        }
-    }
-
-    /**
-     * Marks the board with a specified marker and fills in the corresponging pixels on the
-     * image display to the specified colors then updates the image in the being shown.
-     * @param squares the coordinates that will be marked in the {@code board}
-     * @param marker the {@code Marker} that will be places at the coordinates on {@code board}
-     * @param fillColor the color of the square on {@code display}
-     * @param borderColor the color of the outline of the square on {@code display}
-     */
-    private void markAndPaint
-    (int[][] squares, Marker marker, Color fillColor, Color borderColor) {
-        int x, y, displayX, displayY;
-        for (int row = 0; row < squares.length; row++) {
-
-            x = squares[row][0];
-            y = squares[row][1];
-            if (y >= 0) {
-                this.board[x][y] = marker;
-
-                displayX = x * DISPLAY_SCALE;
-                displayY = y * DISPLAY_SCALE;
-                this.painter.setColor(fillColor);
-                this.painter.fillRect(displayX, displayY, DISPLAY_SCALE, DISPLAY_SCALE);
-                this.painter.setColor(borderColor);
-                this.painter.drawRect(displayX, displayY, DISPLAY_SCALE, DISPLAY_SCALE);
-                this.setImage(SwingFXUtils.toFXImage(display, null));
-            }
-        }
+        } //switch
     }
 
-    /**
-     * Marks the {@code board} with the designted {@code Marker}.
-     * @param squares the array of coordinates for the squares
-     * @param marker the {@code Marker} that will be added at the location
-     */
-    private void mark (int[][] squares, Marker marker) {
-        int x, y;
-        for (int row = 0; row < squares.length; row++) {
-            x = squares[row][0];
-            y = squares[row][1];
-            if (x < HORIZONTAL_SPACES && x >= 0 && y < VERTICAL_SPACES && y >= 0) {
-                this.board[x][y] = marker;
-            } //if
-        } //for
-    } //mark
-
-    /* ManageBoard() helper methods */
+    /* Display Mutators */
 
     /**
-     * Helper method for ManageBoard()
-     * Clears the {@code board} and {@code display} at a specified row.
-     * Marks {@code board} with {@code Marker.EMPTY} on this row.
-     * Paints {@code display} with squares the color of the Background.
-     * @param row the row that is to be cleared.
+     * Fills in the pixels on the image display for a square the engine changed.
+     * Empty squares are painted the background color, any other square is outlined.
+     * The pixels are only shown once {@code requestUpload()} is called.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @param color the engine's color of the square.
      */
-    private void clearRow (int row){
-        int[][] coordinates = new int[HORIZONTAL_SPACES][2];
-        for (int i = 0; i < HORIZONTAL_SPACES; i++) {
-            coordinates[i][0] = i;
-            coordinates[i][1] = row;
-        }
-        this.markAndPaint(coordinates, Marker.EMPTY, BACKGROUND_COLOR, BACKGROUND_COLOR);
+    @Override
+    public void squareChanged (int x, int y, int color) {
+        this.display.paintSquare(x, y, Palette.fill(color), Palette.border(color));
     }
 
     /**
-     * Helper method for ManageBoard()
-     * Checks if a row is full.
-     * Specifically, checks if a row stored in {@code board} contains only {@code Marker.STATIC}.
-     * @param row the row that is to be checked.
-     * @return the status of the row (FULL, EMPTY, PARTIAL).
+     * Slides the rows above rows the engine cleared in a single step down into place, if
+     * {@code CLEAR_ANIMATION} is set. The rows below the cleared rows stay where they are.
+     * The slide shifts the rows within the {@code display}, so it is scaled with the rest
+     * of the image, and runs on the javaFX thread while the game goes on.
+     * @param lowestRow the lowest row that was cleared.
+     * @param count the number of rows that were cleared.
      */
-    private RowStatus checkRow (int row) {
-        int numEmpty = 0;
-        for (int x = 0; x < HORIZONTAL_SPACES; x++) {
-            if (this.board[x][row] == Marker.EMPTY) {
-                ++numEmpty;
+    @Override
+    public void rowsCleared (int lowestRow, int count) {
+        if (!CLEAR_ANIMATION) {
+            return;
+        }
+        Platform.runLater(() -> {
+            if (this.clearSlide != null) {
+                this.clearSlide.end();
             }
-        }
-        if (numEmpty == 0) {
-            return RowStatus.FULL;
-        } else if (numEmpty == HORIZONTAL_SPACES) {
-            return RowStatus.EMPTY;
-        } else {
-            return RowStatus.PARTIAL;
-        }
+            this.clearSlide = new ClearSlide((lowestRow + 1) * DISPLAY_SCALE,
+                count * DISPLAY_SCALE);
+            this.clearSlide.play();
+        });
     }
 
     /**
-     * Helper method for ManageBoard()
-     * Creates the custom piece object that represents all of
-     * the spaces marked {@code Marker.STATIC} above the specified row.
-     * Changes the {@code Marker.STATIC} to {@code Marker.EMPTY}.
-     * Sets color of the custom piece as the {@code PILE_COLOR}.
-     * @param row the row that marks the bottom of the custom piece.
-     * @return a custom piece that takes up all of the spaces of fallen pieces
-     * above the specified row.
+     * Paints the pieces in the engine's preview, the next one at the top.
+     * The pieces are outlined like the ghost piece, they only get a color once they are in play.
+     * The pixels are only shown once {@code requestUpload()} is called.
      */
-    private Piece createAvalanche (int row) {
-        List<int[]> avalancheSpaces = new LinkedList<int[]>();
-        for (int x = 0; x < HORIZONTAL_SPACES; x++) {
-            for (int y = 0; y < row && y < VERTICAL_SPACES; y++) {
-                if (this.board[x][y] == Marker.STATIC) {
-                    int[] coor = new int[] {x, y};
-                    avalancheSpaces.add(coor);
-                    this.board[x][y] = Marker.EMPTY;
-                } //if
-            } //for
-        } //for
-        int[][] spaces = new int[avalancheSpaces.size()][2];
-        for (int i = 0; i < spaces.length; i++) {
-            spaces[i] = avalancheSpaces.get(i);
+    @Override
+    public void previewChanged () {
+        int fill = Palette.fill(TetrisEngine.GHOST_COLOR);
+        int border = Palette.border(TetrisEngine.GHOST_COLOR);
+        int empty = Palette.fill(TetrisEngine.EMPTY_COLOR);
+        for (int i = 0; i < this.engine.getPreviewDepth(); i++) {
+            int top = i * PREVIEW_SLOT_ROWS;
+            for (int y = top; y < top + PREVIEW_SLOT_ROWS - 1; y++) {
+                for (int x = 0; x < PREVIEW_COLUMNS; x++) {
+                    this.previewDisplay.paintSquare(x, y, empty, empty);
+                }
+            }
+            for (int[] space : this.engine.getPreview(i).getSpaces()) {
+                this.previewDisplay.paintSquare(space[0], top + space[1], fill, border);
+            }
         }
-        return new Piece(spaces, PILE_COLOR);
     }
 
-    /* Utility methods */
-
     /**
-     * Copies a 2D int array
-     * @param arr the 2D int array to be copied
-     * @return the copied 2D int array.
+     * Shows everything painted onto the {@code display} since the last upload.
+     * Can be called from any thread, the upload itself runs once on the javaFX thread
+     * no matter how many times it is requested before it runs.
      */
-    public static int[][] copy2D (int[][] arr) {
-        int[][] clone = new int[arr.length][0];
-        for (int row = 0; row < arr.length; row++) {
-            clone[row] = Arrays.copyOf(arr[row], arr[row].length);
+    private void requestUpload () {
+        if (this.uploadPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                this.uploadPending.set(false);
+                this.display.upload();
+                this.previewDisplay.upload();
+            });
         }
-        return clone;
     }
 
-    /**
-     * Prints a 2D array for testing/developing purposes.
-     * @param arr the array to be printed.
-     */
-    private void print2D (int[][] arr) {
-        for (int i = 0; i < arr.length; i++) {
-            System.out.println(Arrays.toString(arr[i]));
-        }
-    }
+    /* Getter methods */
 
     /**
-     * Prints the {@code board} to console for testing/development purposes.
+     * Gets the stream of the game's events. Consumers added to it see the events published
+     * from then on, on threads of their own, and never hold up the game.
+     * @return the event bus of the game.
      */
-    private void printBoard() {
-        for (int y = 0; y < board[0].length; y++) {
-            for (int x = 0; x < board.length; x++) {
-                String square = "0";
-                switch (board[x][y]) {
-                case EMPTY:
-                    square = "E";
-                    break;
-                case DYNAMIC:
-                    square = "D";
-                    break;
-                case STATIC:
-                    square = "S";
-                }
-                System.out.print(square + " ");
-            }
-            System.out.println();
-        }
+    public EventBus getEvents () {
+        return this.events;
     }
 
-    /* Enum Types */
-
     /**
-     * Used to represent the status of the row and describe if the row is ready to be cleared.
+     * Gets the view of the next pieces, to be placed next to the board.
+     * @return the view of the preview image.
      */
-    public enum RowStatus {
-        FULL, EMPTY, PARTIAL;
+    public ImageView getPreviewView () {
+        return this.previewView;
     }
 
-    /**
-     * Used to mark the {@code board}.
-     * STATIC dennotes a piece at that space that has fallen and no longer moves.
-     * DYNAMIC dennotes a piece at that space that can move and is falling.
-     * EMPTY dennotes that there is no piece at that space.
-     */
-    public enum Marker {
-        STATIC, DYNAMIC, EMPTY;
-    };
+    /* Innner Classes */
 
     /**
-     * The options predescribed pieces and contains their inital spaces
-     * and the number of pivots (for rotation).
+     * Slides the rows above cleared rows down from where they were to where they are now.
      */
-    public enum PieceType {
-        OPIECE (new int[][] {{0,0}, {0,1}, {1,0}, {1,1}}, 0),
-        SPIECE (new int[][] {{1,0}, {1,1}, {0,1}, {2,0}}, 1),
-        ZPIECE (new int[][] {{1,0}, {0,0}, {1,1}, {2,1}}, 1),
-        TPIECE (new int[][] {{1,1}, {0,1}, {1,0}, {2,1}}, 1),
-        JPIECE (new int[][] {{1,1}, {0,0}, {0,1}, {2,1}}, 1),
-        LPIECE (new int[][] {{1,1}, {0,1}, {2,0}, {2,1}}, 1),
-        IPIECE (new int[][] {{2,0}, {1,0}, {0,0}, {3,0}}, 2);
-
-        /* A list of all the options in order */
-        public static final List<PieceType> PIECES =
-            Collections.unmodifiableList(Arrays.asList(values()));
-
-        /* The starting spaces of the falling piece */
-        private int[][] spaces;
-
-        /* The number of pivots */
-        private int pivotNum;
+    private class ClearSlide extends Transition {
 
-        /**
-         * Creates a new instance of enum type with spaces and number of pivots.
-         * @param spaces the inital spaces of the piece
-         * @param pivotNum the number of pivots
-         */
-        private PieceType(int[][] spaces, int pivotNum) {
-            this.spaces = spaces;
-            this.pivotNum = pivotNum;
-        }
+        /* The pixel row above which the rows slide, and how far they slide */
+        private final int bottom;
+        private final int distance;
 
         /**
-         * Gets a copy of the array containing the spaces.
-         * @return a copy of the array containg the spaces
+         * Creates a slide that starts with the rows where they were before the clear.
+         * @param bottom the pixel row below the lowest cleared row.
+         * @param distance the height of the cleared rows in pixels.
          */
-        public int[][] getSpaces() {
-            return copy2D(this.spaces);
+        ClearSlide (int bottom, int distance) {
+            this.bottom = bottom;
+            this.distance = distance;
+            this.setCycleDuration(CLEAR_ANIMATION_TIME);
+            display.setShift(bottom, distance);
         }
 
         /**
-         * Gets the number of pivots
-         * @return the number of pivots
+         * Shows the rows as far above their place as they have left to slide.
+         * @param fraction how much of the slide is done, from 0 to 1.
          */
-        public int getPivotNum() {
-            return this.pivotNum;
+        @Override
+        protected void interpolate (double fraction) {
+            display.setShift(this.bottom, (int) Math.round((1 - fraction) * this.distance));
+            display.upload();
         }
 
         /**
-         * selects a random {@code PieceType}
-         * @return a random {@code PieceType}.
+         * Stops the slide for a newer one, showing the rows in place.
          */
-        public static PieceType randomPieceType() {
-            return PIECES.get((int)(Math.random() * PIECES.size() - 1));
+        void end () {
+            this.stop();
+            display.setShift(this.bottom, 0);
         }
 
-    };
-
-    /* Innner Classes */
+    }
 
     /**
      * Handles the execution of the game.
      * Executes and contains the threads this {@code TetrisBoard} object needs to play the its game
      * properly. Contains only methods that manage threads or methods that contains the actions of
-     * the threads. All of the actual action taken uses the outer {@code TetrisBoard} class.
+     * the threads. All of the actual action taken uses the {@code TetrisEngine}, which is
+     * synchronized on so that only one thread changes the game at a time.
+     *
+     * With the single loop scheduler one thread processes the controls, advances the engine and
+     * uploads the display each tick on a drift-free schedule kept by a {@code GameLoop}.
      */
-    class GamePlay {
+    class GamePlay implements InputRing.Handler {
 
         /*
          * Timing:
@@ -412,58 +399,133 @@ public class TetrisBoard extends ImageView {
         public static final int TICK = 50;
         private Object sync;
 
-        /* Controls the the number of ticks required for the piece to fall. */
-        public static final int FALL_SPEED = 10;
+        /* The most actions taken from {@code controls} at once */
+        public static final int INPUT_BATCH = 32;
 
-        /* If true then bypasses FALL_SPEED and moves piece down immediatly. */
-        private boolean drop;
+        /* The actions applied by the current call to {@code processControls} */
+        private int batchInputs;
+        private long batchMaxInputNanos;
 
-        /* lets a thread know to pause. */
-        private boolean pause;
+        /* The player's actions dropped by {@code controls} as of the last {@code InputEvent} */
+        private long reportedDropped;
 
-        /* Waits until the pause ends. */
-        private Object pauseWaiter;
+        /* Released once the player starts the game, or right away if {@code FAST_START} */
+        private CountDownLatch start;
 
-        /* The piece that is currently in play */
-        private Piece piece;
+        /* Runs the game when the single loop scheduler is used, null otherwise */
+        private GameLoop loop;
 
-        /* The state of the game */
-        private boolean gameOn;
+        /* The bot and the thread it plans on, null unless {@code BOT_PLAYER} is set */
+        private Bot bot;
+        private ExecutorService planner;
+
+        /* The actions planned by the bot, waiting to be applied */
+        private InputRing botControls;
+
+        /* The count of the piece the bot last planned for, only the newest plan is applied */
+        private volatile long botPiece;
+
+        /* Records the game, null unless {@code REPLAY_PATH} is set, guarded by the engine */
+        private ReplayWriter recorder;
 
-        /* Enable or disbale player controls */
-        private boolean enableControls;
+        /* Shown when the game is over, loaded in the background while the game runs */
+        private Image gameOverImage;
+
+        /* The state of the game */
+        private volatile boolean gameOn;
 
         /**
          * Sets up and begins the game.
-         * Starts threads for the game clock, player controls, and gameplay.
+         * Starts the game loop thread, or threads for the game clock, player controls,
+         * and gameplay, which wait for the player to start the game from the welcome popup
+         * unless {@code FAST_START} is set.
          */
         public GamePlay () {
-            this.piece = this.selectPiece();
             this.gameOn = true;
-            this.drop = false;
-            this.pause = false;
-            this.enableControls = false;
             this.sync = new Object();
-            this.pauseWaiter = new Object();
+            this.start = new CountDownLatch(1);
+            if (REPLAY_PATH != null) {
+                try {
+                    this.recorder = new ReplayWriter(Paths.get(REPLAY_PATH), engine,
+                        ReplayWriter.DEFAULT_KEYFRAME_INTERVAL);
+                } catch (IOException e) {
+                    System.err.println("Cannot record the game: " + e);
+                }
+            }
+            if (BOT_PLAYER) {
+                int cores = Runtime.getRuntime().availableProcessors();
+                this.bot = new Bot(new WeightedHeuristic(), Bot.defaultDepth(cores), cores,
+                    engine.getLineClearMode());
+                this.botControls = new InputRing(INPUT_BATCH);
+                this.planner = Executors.newSingleThreadExecutor(run -> {
+                    Thread thread = new Thread(run, "bot-planner");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
 
-            this.runDaemon(this::clockLoop);
-            this.runDaemon(this::controlLoop);
-            this.runDaemon(this::gameplayLoop);
-            this.welcomeScreen();
+            if (THREADED_SCHEDULER) {
+                this.runDaemon(this::clockLoop);
+                this.runDaemon(this::controlLoop);
+                this.runDaemon(this::gameplayLoop);
+            } else {
+                this.loop = new GameLoop(TimeUnit.MILLISECONDS.toNanos(TICK),
+                    GameLoop.MAX_CATCH_UP, this::playTick);
+                this.runDaemon(this::singleLoop);
+            }
+            URL image = TetrisBoard.class.getResource(GAME_OVER_IMAGE);
+            this.gameOverImage = (image == null) ? null : new Image(image.toExternalForm(), true);
+            if (FAST_START) {
+                this.start.countDown();
+            } else {
+                this.welcomeScreen();
+            }
         }
 
         /* Thread methods */
 
+        /**
+         * To be run in its own thread.
+         * Waits for the game to start, then runs every tick of the game with the {@code loop}.
+         */
+        private void singleLoop () {
+            this.awaitStart();
+            this.loop.run();
+            this.stopBot();
+            this.stopRecording();
+            requestUpload();
+            Platform.runLater(this::gameOver);
+        }
+
+        /**
+         * Helper method to {@code singleLoop}
+         * Runs one tick of the game: applies the player's input, advances the engine
+         * and shows the result.
+         * @return true if the game is still on; false if the game is over.
+         */
+        private boolean playTick () {
+            this.processControls();
+            synchronized (engine) {
+                this.gameOn = engine.tick();
+                this.recordTick();
+                this.planBot();
+            }
+            requestUpload();
+            return this.gameOn;
+        }
+
         /**
          * To be run in its own thread.
          * Controls the clock enabling all the threads to follow one game beat.
          */
         private void clockLoop () {
-            this.wait(this.sync);
+            this.awaitStart();
             while (gameOn) {
                 this.sleep(TICK);
+                requestUpload();
                 this.notifyAll(this.sync);
             }
+            requestUpload();
         }
 
         /**
@@ -471,8 +533,7 @@ public class TetrisBoard extends ImageView {
          * Takes player intput and moves the piece appropriately.
          */
         private void controlLoop () {
-            this.wait(this.sync);
-            this.enableControls = true;
+            this.awaitStart();
             while (gameOn) {
                 this.wait(this.sync);
                 this.processControls();
@@ -481,41 +542,27 @@ public class TetrisBoard extends ImageView {
 
         /**
          * To be run in its own thread.
-         * The main gameplay thread that handles the core elements of the game.
-         * Moves the piece downwards, clears full rows, manages whether the game is in play.
+         * The main gameplay thread that advances the engine by one tick every game beat.
          */
         private void gameplayLoop () {
-            boolean isFalling;
-            this.wait(this.sync);
+            this.awaitStart();
             while (gameOn) {
-                isFalling = true;
-                while (isFalling) {
-                    if (this.pause) {
-                        this.wait(this.pauseWaiter);
-                    }
-                    for (int i = 0; !this.drop && i < FALL_SPEED; i++) {
-                        this.wait(this.sync);
-                    } //for
-                    this.drop = false;
-                    isFalling = (this.piece.move(0, 1)) ? true : false;
-                    if (!isFalling) {
-                        mark(this.piece.getSpaces(), Marker.STATIC);
-                        this.enableControls = false;
-                        this.piece = manageBoard();
-                        if (this.piece != null) {
-                            while (this.piece.move(0,1)) {
-                                this.wait(this.sync);
-                            }
-                            mark(this.piece.getSpaces(), Marker.STATIC);
-                        }
-                        this.piece = this.selectPiece();
-                        this.enableControls = true;
-                        this.gameOn =
-                            (this.piece.isValidSpaces()) ? true : false;
-                    }
-
-                } //while
+                this.wait(this.sync);
+                TickEvent event = new TickEvent();
+                event.begin();
+                synchronized (engine) {
+                    this.gameOn = engine.tick();
+                    this.recordTick();
+                    this.planBot();
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.gameOn = this.gameOn;
+                    event.commit();
+                }
             } //while
+            this.stopBot();
+            this.stopRecording();
             Platform.runLater(this::gameOver);
         }
 
@@ -523,52 +570,131 @@ public class TetrisBoard extends ImageView {
 
         /**
          * Helper method to {@code controlLoop}
-         * Handles the player's input by checking a list of all keypresses,
-         * removing the last unprocessed keypress, and performing the appriopriate action.
-         * A - moves the piece left
-         * S - moves the piece down (bypasses the {@code FALL_SPEED} once)
-         * D - moves the piece right
-         * Q - rotates the piece Counter-Clockwise
-         * E - rotates the piece Clockwise
+         * Handles the player's input by draining the queue of actions in batches
+         * and applying each one to the engine in the order they were entered.
+         * Reports the actions applied to Flight Recorder as an {@code InputEvent}.
          */
         private void processControls () {
-            while (!controls.isEmpty()) {
-                if (controls.get(0) == KeyCode.P) {
-                    this.pause = (this.pause) ? false : true;
-                    controls.remove(0);
-                    if (this.pause == false) {
-                        this.notifyAll(this.pauseWaiter);
+            InputEvent event = new InputEvent();
+            event.begin();
+            this.batchInputs = 0;
+            this.batchMaxInputNanos = 0;
+            while (controls.drain(this, INPUT_BATCH) == INPUT_BATCH) {
+                continue;
+            }
+            if (this.botControls != null) {
+                this.botControls.drain(this, INPUT_BATCH);
+            }
+            event.end();
+            if (this.batchInputs > 0 && event.shouldCommit()) {
+                long dropped = controls.getDropped();
+                event.actions = this.batchInputs;
+                event.maxLatency = this.batchMaxInputNanos;
+                event.dropped = dropped - this.reportedDropped;
+                event.commit();
+                this.reportedDropped = dropped;
+            }
+        } //processControls
+
+        /**
+         * Helper method to {@code playTick} and {@code gameplayLoop}
+         * Once a new piece is in play, copies the game and its preview queue and asks the bot
+         * to plan the piece's placement on the {@code planner} thread so the search never delays
+         * a tick.
+         * The planned actions are queued in {@code botControls} unless another piece is in play
+         * by the time the plan is ready. Must be called while synchronized on the engine.
+         */
+        private void planBot () {
+            if (this.bot == null || !this.gameOn || engine.isClearing()
+                || engine.getPieceCount() == this.botPiece) {
+                return;
+            }
+            long piece = engine.getPieceCount();
+            this.botPiece = piece;
+            BitBoard board = new BitBoard(HORIZONTAL_SPACES, VERTICAL_SPACES);
+            board.copyFrom(engine.getBoard());
+            TetrisEngine.Piece current = engine.getPiece();
+            PieceType type = current.getType();
+            int orientation = current.getOrientation();
+            int originX = current.getOriginX();
+            int originY = current.getOriginY();
+            PieceType[] preview = new PieceType[engine.getPreviewDepth()];
+            for (int i = 0; i < preview.length; i++) {
+                preview[i] = engine.getPreview(i);
+            }
+            this.planner.execute(() -> {
+                Placement placement = this.bot.choose(board, type, orientation, originX, originY,
+                    preview);
+                if (placement != null && this.botPiece == piece) {
+                    for (Action action : placement.toActions()) {
+                        this.botControls.offer(action);
                     }
-                } else if (!this.pause && this.enableControls) {
-                    switch (controls.remove(0)) {
-                    case A:
-                        this.piece.move(-1, 0);
-                        break;
-                    case S:
-                        this.drop = true;
-                        break;
-                    case D:
-                        this.piece.move(1, 0);
-                        break;
-                    case E:
-                        this.piece.rotate(1);
-                        break;
-                    case Q:
-                        this.piece.rotate(-1);
-                        break;
-                    } //switch
-
-                } else {
-                    controls.remove(0);
                 }
-            } //while
-        } //processControls
+            });
+        }
 
         /**
-         * Creates a new Piece object with a random pieceType.
+         * Helper method to {@code processControls}
+         * Applies one action and records how long ago it was captured.
+         * @param action the code of the action.
+         * @param capturedNanos the {@code System.nanoTime} at which the action was captured.
          */
-        private Piece selectPiece() {
-            return new Piece(PieceType.randomPieceType());
+        @Override
+        public void onInput (int action, long capturedNanos) {
+            synchronized (engine) {
+                if (engine.step(Action.fromCode(action)) && this.recorder != null) {
+                    this.recorder.action(Action.fromCode(action));
+                }
+            }
+            long latency = System.nanoTime() - capturedNanos;
+            this.batchInputs++;
+            if (latency > this.batchMaxInputNanos) {
+                this.batchMaxInputNanos = latency;
+            }
+        }
+
+        /**
+         * Helper method to {@code playTick} and {@code gameplayLoop}
+         * Ends the tick in the replay log. Recording stops if the log cannot be written.
+         * Must be called while synchronized on the engine.
+         */
+        private void recordTick () {
+            if (this.recorder == null) {
+                return;
+            }
+            try {
+                this.recorder.endTick(engine);
+            } catch (IOException e) {
+                System.err.println("Recording stopped: " + e);
+                this.recorder = null;
+            }
+        }
+
+        /**
+         * Writes the end of the replay log once the game is over.
+         */
+        private void stopRecording () {
+            synchronized (engine) {
+                if (this.recorder == null) {
+                    return;
+                }
+                try {
+                    this.recorder.finish(engine);
+                } catch (IOException e) {
+                    System.err.println("Recording stopped: " + e);
+                }
+                this.recorder = null;
+            }
+        }
+
+        /**
+         * Stops the bot's threads once the game is over.
+         */
+        private void stopBot () {
+            if (this.bot != null) {
+                this.planner.shutdownNow();
+                this.bot.shutdown();
+            }
         }
 
         /* Thread utility methods */
@@ -583,6 +709,19 @@ public class TetrisBoard extends ImageView {
             thread.start();
         }
 
+        /**
+         * Makes the current thread wait until the game is started.
+         * Handles InterruptedException by exiting the program with exit code 3.
+         */
+        private void awaitStart () {
+            try {
+                this.start.await();
+            } catch (InterruptedException ie) {
+                System.err.println(ie);
+                System.exit(3);
+            }
+        }
+
         /**
          * Makes the current thread wait via the wait method desceribed in the {@code Object} class.
          * Handles synchronization
@@ -634,7 +773,7 @@ public class TetrisBoard extends ImageView {
                 + "Good Luck!");
             Button startGame = new Button("Start Game!");
             startGame.setOnAction(ae -> {
-                notifyAll(sync);
+                start.countDown();
                 popup.close();
             });
 
@@ -651,7 +790,7 @@ public class TetrisBoard extends ImageView {
 
             Stage popup = this.createPopup("Game Over!");
 
-            ImageView imv = new ImageView("file:resources/GameOver.png");
+            ImageView imv = new ImageView(this.gameOverImage);
             imv.setPreserveRatio(true);
 
             Button exit = new Button("Exit Game");
@@ -683,207 +822,4 @@ public class TetrisBoard extends ImageView {
 
     } //GamePlay
 
-    /**
-     * An object that represents the chunck of squares
-     * falling on the {@code TetrisBoard}. Stores the spaces and color and enables the
-     * perform the actual operations that enable the chucnk of squares to rotate and move.
-     */
-    class Piece {
-
-        /* An array of the coordinates of the squares in the piece */
-        private int[][] spaces;
-
-        /* The color of the piece */
-        private Color color;
-
-        /* A list of the index (in spaces) which can be used as center of rotation */
-        private List<Integer> pivot;
-
-        /**
-         * Creates a new Piece of a certain type.
-         * @param type the type of piece that is created.
-         */
-        public Piece (PieceType type) {
-            this.spaces = type.getSpaces();
-            this.color = this.selectColor();
-            this.pivot = new LinkedList<Integer>();
-            for (int i = 0; i < type.getPivotNum(); i++) {
-                this.pivot.add(i);
-            }
-        }
-
-        /**
-         * Creates a custom piece that cannot be rotated.
-         * @param spaces an array of the coordinates of the squares in the piece
-         * @param color the color of the Piece.
-         */
-        public Piece (int[][] spaces, Color color) {
-            this.spaces = spaces;
-            this.color = color;
-            this.pivot = null;
-        }
-
-        /* Helper for constructors */
-
-        /**
-         * Selects a random color from the colorBank without repeating
-         * until all colors have been used.
-         */
-        private Color selectColor () {
-            if (colorBank.isEmpty()) {
-                colorBank = usedColors;
-                usedColors = new LinkedList<Color>();
-            }
-            Color select = colorBank.remove((int)(Math.random() * colorBank.size()));
-            usedColors.add(select);
-            return select;
-        }
-
-        /* Controling the piece */
-
-        /**
-         * Rotates the piece 90 degrees clockwise.
-         * @param the number of rotations. Negative values rotate counter-clockwise.
-         * @return true if the rotation is valid (successful); false otherwise.
-         */
-        public boolean rotate(int rotations) {
-            int[][] oldSpaces = copy2D(this.spaces);
-            this.rotatePiece(rotations);
-            if (this.isValidSpaces()) {
-                markAndPaint(oldSpaces, Marker.EMPTY, BACKGROUND_COLOR, BACKGROUND_COLOR);
-                markAndPaint(this.spaces, Marker.DYNAMIC, this.color, OUTLINE_COLOR);
-                return true;
-            } else {
-                this.spaces = oldSpaces;
-                return false;
-            }
-        }
-        /**
-         * Moves the piece linearly (i.e. left, right, down, up, diagonaly)
-         * @param x the amount the piece should move in the x direction.
-         * @param y the amount the piece should move in the y direction.
-         * @return true if the move is valid (successful); false otherwise.
-         */
-        public boolean move (int x, int y) {
-            int[][] oldSpaces = copy2D(this.spaces);
-            this.movePiece(x, y);
-            if (this.isValidSpaces()) {
-                markAndPaint(oldSpaces, Marker.EMPTY, BACKGROUND_COLOR, BACKGROUND_COLOR);
-                markAndPaint(this.spaces, Marker.DYNAMIC, this.color, OUTLINE_COLOR);
-                return true;
-            } else {
-                this.spaces = oldSpaces;
-                return false;
-            }
-        }
-
-        /* Helper methods for controling the pieces */
-
-        /**
-         * Checks if the spaces of the current piece is a valid location.
-         * If the piece is out of bounds, on a taken space then the location is invalid.
-         * @return true if location is valid; false otherwise.
-         */
-        public boolean isValidSpaces() {
-            for (int row = 0; row < this.spaces.length; row++) {
-                if (this.spaces[row][1] >= VERTICAL_SPACES
-                || this.spaces[row][0] < 0 || this.spaces[row][0] >= HORIZONTAL_SPACES
-                || (this.spaces[row][1] >= 0
-                && board[this.spaces[row][0]][this.spaces[row][1]] == Marker.STATIC)) {
-                    return false;
-                }
-            }
-            return true;
-        }
-
-        /**
-         * Helper method for rotate().
-         * Performs actual rotation, but does not check if the spaces are valid.
-         * @param the number of rotations. Negative values rotate counter-clockwise.
-         * @return true if the rotation is successful; false if piece has no pivot.
-         */
-        private boolean rotatePiece(int rotations) {
-            if (this.pivot.size() == 0 && this.pivot != null) {
-                return false;
-            }
-
-            double[] center = new double[] {this.spaces[this.pivot.get(0)][0],
-                                      this.spaces[this.pivot.get(0)][1]};
-            this.pivot.add(this.pivot.remove(0));
-
-            double radians = (rotations * Math.PI / 2);
-            SimpleMatrix rotation = new SimpleMatrix(new double[][] {
-                {Math.cos(radians), Math.sin(radians)},
-                {-Math.sin(radians), Math.cos(radians)}});
-
-            double[][] temp = new double[this.spaces.length][this.spaces[0].length];
-            for (int row = 0; row < temp.length; row++) {
-                for (int col = 0; col < temp[row].length; col++) {
-                    temp[row][col] = this.spaces[row][col] - center[col];
-                }
-            }
-
-
-            SimpleMatrix spacesMatrix = new SimpleMatrix(temp);
-
-            spacesMatrix = spacesMatrix.mult(rotation);
-
-            for (int row = 0; row < this.spaces.length; row++) {
-                for (int col = 0; col < this.spaces[row].length; col++) {
-                    this.spaces[row][col] = (int) Math.round(spacesMatrix.get(row, col)
-                    + center[col]);
-                }
-            }
-
-            return true;
-
-        }
-
-        /**
-         * Helper method for move().
-         * Performs actual move, but does not check if the move is valid.
-         * @param x the amount the piece should move in the x direction.
-         * @param y the amount the piece should move in the y direction.
-         * @return true if the move is successful; false if no move occurs.
-         */
-        private boolean movePiece (int x, int y) {
-            if (x == 0 && y == 0) {
-                return false;
-            }
-            for (int row = 0; row < this.spaces.length; row++) {
-                for (int col = 0; col < this.spaces[row].length; col++) {
-                    switch (col) {
-                    case 0:
-                        this.spaces[row][col] += x;
-                        break;
-                    case 1:
-                        this.spaces[row][col] += y;
-                        break;
-                    } //switch
-                } //for
-            } //for
-            return true;
-        }
-
-        /* Getter methods */
-
-        /**
-         * Gets a copy of the array of spaces for this piece.
-         * @return a copy of the array of spaces for this piece.
-         */
-        public int[][] getSpaces () {
-            return copy2D(this.spaces);
-        }
-
-        /**
-         * Gets the color of the piece.
-         * @return the color of the piece
-         */
-        public Color getColor () {
-            return this.color;
-        }
-
-    }
-
-
 }
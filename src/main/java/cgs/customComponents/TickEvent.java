@@ -0,0 +1,37 @@
+package cgs.customComponents;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for one tick of a game run by {@code TetrisBoard.GamePlay}.
+ * The duration of the event is the time the tick took to run.
+ */
+@Name("cgs.Tick")
+@Label("Game Tick")
+@Category({"Tetris", "Game Loop"})
+@Description("One tick of the game")
+@StackTrace(false)
+class TickEvent extends Event {
+
+    @Label("Lateness")
+    @Description("The time between the tick's deadline and its start, 0 with the threaded "
+        + "scheduler")
+    @Timespan(Timespan.NANOSECONDS)
+    long lateness;
+
+    @Label("Skipped")
+    @Description("The ticks skipped because the loop fell too far behind before this tick, "
+        + "0 with the threaded scheduler")
+    long skipped;
+
+    @Label("Game On")
+    @Description("False once the tick ended the game")
+    boolean gameOn;
+
+}
@@ -0,0 +1,31 @@
+package cgs.customComponents;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for the pixels painted into a {@code FrameBuffer} being copied into
+ * the displayed image on the javaFX thread. The duration of the event is the copy.
+ */
+@Name("cgs.Upload")
+@Label("Image Upload")
+@Category({"Tetris", "Rendering"})
+@Description("The pixels painted since the last upload were copied into the displayed image")
+@StackTrace(false)
+class UploadEvent extends Event {
+
+    @Label("Squares Painted")
+    @Description("The squares painted since the last upload")
+    int squares;
+
+    @Label("Bytes Copied")
+    @Description("The size of the area copied into the image")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+
+}
@@ -0,0 +1,164 @@
+package cgs.dataset;
+
+import cgs.bot.Bot;
+import cgs.bot.WeightedHeuristic;
+import cgs.engine.LineClearMode;
+import cgs.engine.TetrisEngine;
+import cgs.sim.BatchRunner;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays batches of headless games with a {@code Bot} and exports every placement it makes as
+ * a training sample: the board before the piece, the piece, the chosen placement and the rows
+ * cleared by the placement and by the rest of the game.
+ * Games are seeded and played like a {@code BatchRunner} batch, so a sample's game can be played
+ * again from the batch seed and the game index stored with it.
+ *
+ * Every worker thread writes a shard of its own with a {@code ShardWriter}, so the threads
+ * share nothing but the counter they take games from, and the shards can be read in any
+ * order or in parallel.
+ */
+public class DatasetExporter {
+
+    /* The name of each worker's shard, numbered by worker */
+    private static final String NAME = "shard-%03d.tds";
+
+    /* The directory the shards are written to */
+    private final Path directory;
+
+    /* The size of the batch and the seed the games' seeds are made from */
+    private final long games;
+    private final long seed;
+
+    /* The number of threads that play games, each writing a shard */
+    private final int threads;
+
+    /* The most pieces put in play in one game */
+    private final int maxPieces;
+
+    /* The number of samples in a block of a shard */
+    private final int blockSamples;
+
+    /* Picks where the pieces go, shared by every thread */
+    private final Bot bot;
+
+    /* The index of the next game to play */
+    private final AtomicLong nextGame;
+
+    /**
+     * Creates an export.
+     * @param directory the directory the shards are written to, created if it is missing.
+     * @param games the number of games to play.
+     * @param seed the seed the seed of every game is made from.
+     * @param threads the number of threads that play games, and of shards.
+     * @param maxPieces the most pieces put in play in one game.
+     * @param blockSamples the number of samples in a block of a shard.
+     * @throws IOException if the directory cannot be created.
+     */
+    public DatasetExporter (Path directory, long games, long seed, int threads, int maxPieces,
+        int blockSamples) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.games = games;
+        this.seed = seed;
+        this.threads = threads;
+        this.maxPieces = maxPieces;
+        this.blockSamples = blockSamples;
+        this.bot = new Bot(new WeightedHeuristic(), 1, 1, LineClearMode.AVALANCHE);
+        this.nextGame = new AtomicLong();
+    }
+
+    /**
+     * Main entry-point into the exporter.
+     * Arguments: directory games [seed [threads [maxPieces]]], by default a random seed, a
+     * thread per core and {@code BatchRunner.DEFAULT_MAX_PIECES}.
+     * @param args the comand-line arguments.
+     * @throws Exception if the shards cannot be written.
+     */
+    public static void main (String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: DatasetExporter directory games [seed [threads "
+                + "[maxPieces]]]");
+            System.exit(1);
+        }
+        long games = Long.parseLong(args[1]);
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+        int threads = (args.length > 3) ? Integer.parseInt(args[3])
+            : Runtime.getRuntime().availableProcessors();
+        int maxPieces = (args.length > 4) ? Integer.parseInt(args[4])
+            : BatchRunner.DEFAULT_MAX_PIECES;
+
+        System.out.println("Export seed=" + seed + " threads=" + threads);
+        DatasetExporter exporter = new DatasetExporter(Paths.get(args[0]), games, seed,
+            threads, maxPieces, ShardWriter.DEFAULT_BLOCK_SAMPLES);
+        long start = System.nanoTime();
+        long samples = exporter.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("samples=%d seconds=%.2f samples/hour=%.0f",
+            samples, seconds, samples * 3600 / seconds));
+    }
+
+    /**
+     * Plays every game of the batch and waits for the shards to be written.
+     * @return the number of samples written.
+     * @throws IOException if a shard cannot be written.
+     * @throws InterruptedException if the thread is interrupted while games are played.
+     */
+    public long run () throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        try {
+            List<Future<Long>> futures = new ArrayList<>(this.threads);
+            for (int i = 0; i < this.threads; i++) {
+                Path shard = this.directory.resolve(String.format(NAME, i));
+                futures.add(workers.submit(() -> this.work(shard)));
+            }
+            long samples = 0;
+            for (Future<Long> future : futures) {
+                samples += future.get();
+            }
+            return samples;
+        } catch (ExecutionException e) {
+            throw new IOException("Export failed", e.getCause());
+        } finally {
+            workers.shutdown();
+        } //try
+    }
+
+    /**
+     * To be run in its own thread.
+     * Plays games until every game of the batch has been taken, writing their samples into a
+     * shard.
+     * @param shard the file of the thread's shard.
+     * @return the number of samples written.
+     * @throws IOException if the shard cannot be written.
+     */
+    private long work (Path shard) throws IOException {
+        ShardWriter writer = new ShardWriter(shard, TetrisEngine.HORIZONTAL_SPACES,
+            TetrisEngine.VERTICAL_SPACES, this.blockSamples);
+        try {
+            for (long game = this.nextGame.getAndIncrement(); game < this.games;
+                game = this.nextGame.getAndIncrement()) {
+                TetrisEngine engine = new TetrisEngine(BatchRunner.gameSeed(this.seed, game),
+                    LineClearMode.AVALANCHE);
+                writer.beginGame(game);
+                BatchRunner.play(engine, this.bot, this.maxPieces,
+                    (played, placement) -> writer.add(played.getBoard(),
+                        played.getPiece().getType(), placement, played.getLineCount()));
+                writer.endGame(engine.getLineCount());
+            }
+        } finally {
+            writer.close();
+        } //try
+        return writer.getWritten();
+    }
+
+}
@@ -0,0 +1,53 @@
+package cgs.dataset;
+
+/**
+ * The layout of a dataset shard, a file of (board, piece, placement, outcome) samples.
+ *
+ * A shard starts with a header: {@code MAGIC}, {@code VERSION}, and the width and height of
+ * the boards as ints. It is followed by blocks until the end of the file. A block starts with
+ * its number of samples as an int, followed by one column after the other, each holding a
+ * value for every sample of the block in order:
+ * <ul>
+ * <li>the index of the sample's game in its batch, as a long.</li>
+ * <li>the board before the piece is placed, {@code boardBytes(width, height)} bytes of packed
+ * bits: bit {@code y * width + x} is set if the square is taken, bit {@code k} being bit
+ * {@code k % 8} of byte {@code k / 8}.</li>
+ * <li>the ordinal of the {@code PieceType} to place, as a byte.</li>
+ * <li>the orientation of the chosen placement, as a byte.</li>
+ * <li>the column and row of the placement's origin, as shorts.</li>
+ * <li>the number of rows the placement cleared, as a byte.</li>
+ * <li>the number of rows the game cleared from the placement to its end, as an int.</li>
+ * </ul>
+ * Numbers are big-endian like the rest of the game's files. A shard cut short by a crash can
+ * be read up to its last complete block.
+ */
+final class DatasetFormat {
+
+    /* Identifies a dataset shard and its layout */
+    static final int MAGIC = 0x54445354; //"TDST"
+    static final byte VERSION = 1;
+
+    /* The size of the header and of the count at the start of a block */
+    static final int HEADER_BYTES = Integer.BYTES + 1 + 2 * Integer.BYTES;
+    static final int COUNT_BYTES = Integer.BYTES;
+
+    /* The bytes of a sample in every column but the board */
+    static final int FIXED_BYTES = Long.BYTES + 1 + 1 + 2 * Short.BYTES + 1 + Integer.BYTES;
+
+    /**
+     * Not instantiable.
+     */
+    private DatasetFormat () {
+    }
+
+    /**
+     * Gets the size of a packed board.
+     * @param width the number of columns.
+     * @param height the number of rows.
+     * @return the number of bytes of one board.
+     */
+    static int boardBytes (int width, int height) {
+        return (width * height + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+}
@@ -0,0 +1,245 @@
+package cgs.dataset;
+
+import cgs.engine.PieceType;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the samples of a dataset shard (see {@code DatasetFormat}) a block at a time.
+ * A block is read into one buffer and its samples are read from their columns in place, so
+ * reading a shard costs little more than copying it from the file.
+ * A reader is not thread safe.
+ */
+public class ShardReader implements Closeable {
+
+    /* The shard file */
+    private final FileChannel channel;
+
+    /* The size of the boards */
+    private final int width;
+    private final int height;
+    private final int boardBytes;
+
+    /* The block being read and the number of samples in it */
+    private ByteBuffer block;
+    private int samples;
+
+    /* The offset of every column but the games, which start the block */
+    private int boards;
+    private int types;
+    private int orientations;
+    private int columns;
+    private int rows;
+    private int lines;
+    private int linesToGo;
+
+    /**
+     * Opens a shard and reads its header.
+     * @param path the file of the shard.
+     * @throws IOException if the file cannot be read or is not a shard.
+     */
+    public ShardReader (Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(DatasetFormat.HEADER_BYTES);
+        if (!this.read(header)) {
+            this.channel.close();
+            throw new EOFException("Missing shard header");
+        }
+        if (header.getInt() != DatasetFormat.MAGIC || header.get() != DatasetFormat.VERSION) {
+            this.channel.close();
+            throw new IOException("Not a dataset shard of version " + DatasetFormat.VERSION);
+        }
+        this.width = header.getInt();
+        this.height = header.getInt();
+        this.boardBytes = DatasetFormat.boardBytes(this.width, this.height);
+        this.block = ByteBuffer.allocateDirect(ShardWriter.DEFAULT_BLOCK_SAMPLES
+            * (DatasetFormat.FIXED_BYTES + this.boardBytes));
+    }
+
+    /**
+     * Reads the next block.
+     * @return true if a block was read, false at the end of the shard or at a block cut short.
+     * @throws IOException if the file cannot be read.
+     */
+    public boolean nextBlock () throws IOException {
+        ByteBuffer count = ByteBuffer.allocate(DatasetFormat.COUNT_BYTES);
+        if (!this.read(count)) {
+            this.samples = 0;
+            return false;
+        }
+        int next = count.getInt();
+        int bytes = next * (DatasetFormat.FIXED_BYTES + this.boardBytes);
+        if (bytes > this.block.capacity()) {
+            this.block = ByteBuffer.allocateDirect(bytes);
+        }
+        this.block.clear().limit(bytes);
+        if (!this.read(this.block)) {
+            this.samples = 0;
+            return false;
+        }
+        this.samples = next;
+        this.boards = next * Long.BYTES;
+        this.types = this.boards + next * this.boardBytes;
+        this.orientations = this.types + next;
+        this.columns = this.orientations + next;
+        this.rows = this.columns + next * Short.BYTES;
+        this.lines = this.rows + next * Short.BYTES;
+        this.linesToGo = this.lines + next;
+        return true;
+    }
+
+    /**
+     * Helper method for the constructor and nextBlock()
+     * Fills a buffer from the file and flips it.
+     * @param buffer the buffer, filled up to its limit.
+     * @return true if the buffer was filled, false if the file ended first.
+     * @throws IOException if the file cannot be read.
+     */
+    private boolean read (ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Closes the shard.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close () throws IOException {
+        this.channel.close();
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of samples in the block.
+     * @return the number of samples, 0 before the first block and after the last.
+     */
+    public int getSamples () {
+        return this.samples;
+    }
+
+    /**
+     * Gets the index of a sample's game in its batch.
+     * @param sample the index of the sample in the block.
+     * @return the index of the game.
+     */
+    public long getGame (int sample) {
+        return this.block.getLong(sample * Long.BYTES);
+    }
+
+    /**
+     * Gets whether a square of a sample's board is taken.
+     * @param sample the index of the sample in the block.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @return true if the square is taken.
+     */
+    public boolean isTaken (int sample, int x, int y) {
+        int bit = y * this.width + x;
+        byte b = this.block.get(this.boards + sample * this.boardBytes + bit / Byte.SIZE);
+        return ((b >>> (bit % Byte.SIZE)) & 1) != 0;
+    }
+
+    /**
+     * Copies the packed board of a sample.
+     * @param sample the index of the sample in the block.
+     * @param target the array, {@code getBoardBytes()} bytes are written starting at the
+     * offset.
+     * @param offset the index of the first byte.
+     */
+    public void copyBoard (int sample, byte[] target, int offset) {
+        ByteBuffer view = this.block.duplicate();
+        view.position(this.boards + sample * this.boardBytes);
+        view.get(target, offset, this.boardBytes);
+    }
+
+    /**
+     * Gets the type of the piece a sample places.
+     * @param sample the index of the sample in the block.
+     * @return the type.
+     */
+    public PieceType getType (int sample) {
+        return PieceType.values()[this.block.get(this.types + sample)];
+    }
+
+    /**
+     * Gets the orientation of a sample's placement.
+     * @param sample the index of the sample in the block.
+     * @return the orientation.
+     */
+    public int getOrientation (int sample) {
+        return this.block.get(this.orientations + sample);
+    }
+
+    /**
+     * Gets the column of the origin of a sample's placement.
+     * @param sample the index of the sample in the block.
+     * @return the column.
+     */
+    public int getOriginX (int sample) {
+        return this.block.getShort(this.columns + sample * Short.BYTES);
+    }
+
+    /**
+     * Gets the row of the origin of a sample's placement.
+     * @param sample the index of the sample in the block.
+     * @return the row.
+     */
+    public int getOriginY (int sample) {
+        return this.block.getShort(this.rows + sample * Short.BYTES);
+    }
+
+    /**
+     * Gets the number of rows a sample's placement cleared.
+     * @param sample the index of the sample in the block.
+     * @return the number of rows.
+     */
+    public int getLines (int sample) {
+        return this.block.get(this.lines + sample);
+    }
+
+    /**
+     * Gets the number of rows the game cleared from a sample's placement to its end.
+     * @param sample the index of the sample in the block.
+     * @return the number of rows.
+     */
+    public int getLinesToGo (int sample) {
+        return this.block.getInt(this.linesToGo + sample * Integer.BYTES);
+    }
+
+    /**
+     * Gets the number of columns of the boards.
+     * @return the width.
+     */
+    public int getWidth () {
+        return this.width;
+    }
+
+    /**
+     * Gets the number of rows of the boards.
+     * @return the height.
+     */
+    public int getHeight () {
+        return this.height;
+    }
+
+    /**
+     * Gets the size of a packed board.
+     * @return the number of bytes of one board.
+     */
+    public int getBoardBytes () {
+        return this.boardBytes;
+    }
+
+}
@@ -0,0 +1,284 @@
+package cgs.dataset;
+
+import cgs.bot.Placement;
+import cgs.engine.BitBoard;
+import cgs.engine.PieceType;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the samples of the games played by one thread into a dataset shard
+ * (see {@code DatasetFormat}).
+ * Every column of a block is gathered in a direct buffer of its own, and a whole block is
+ * written to the file channel with a single gathering write, so the cost of a sample is a few
+ * puts and the packing of its board.
+ *
+ * The outcome of a sample is only known once its game is over, so the samples of a game are
+ * added between {@code beginGame} and {@code endGame}, and a block is only written once a
+ * game ends. The buffers grow if a single game has more samples than a block.
+ * A writer is not thread safe, every thread writes a shard of its own.
+ */
+public class ShardWriter implements Closeable {
+
+    /* The default number of samples in a block */
+    public static final int DEFAULT_BLOCK_SAMPLES = 1 << 16;
+
+    /* The shard file */
+    private final FileChannel channel;
+
+    /* The size of the boards */
+    private final int width;
+    private final int height;
+    private final int boardBytes;
+
+    /* The number of samples after which a block is written */
+    private final int blockSamples;
+
+    /* The count and columns of the block being gathered, in the order they are written */
+    private final ByteBuffer count;
+    private ByteBuffer games;
+    private ByteBuffer boards;
+    private ByteBuffer types;
+    private ByteBuffer orientations;
+    private ByteBuffer columns;
+    private ByteBuffer rows;
+    private ByteBuffer lines;
+    private ByteBuffer linesToGo;
+
+    /* The number of samples in the block and the index of the first of the current game */
+    private int samples;
+    private int gameStart;
+
+    /* The index of the current game */
+    private long game;
+
+    /* The number of samples written to the file */
+    private long written;
+
+    /**
+     * Creates a shard, replacing any file at the path, and writes its header.
+     * @param path the file of the shard.
+     * @param width the number of columns of the boards.
+     * @param height the number of rows of the boards.
+     * @param blockSamples the number of samples after which a block is written.
+     * @throws IOException if the file cannot be written.
+     */
+    public ShardWriter (Path path, int width, int height, int blockSamples) throws IOException {
+        if (blockSamples < 1) {
+            throw new IllegalArgumentException("Invalid block size");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.width = width;
+        this.height = height;
+        this.boardBytes = DatasetFormat.boardBytes(width, height);
+        this.blockSamples = blockSamples;
+        this.count = ByteBuffer.allocateDirect(DatasetFormat.COUNT_BYTES);
+        this.allocate(blockSamples);
+        this.game = -1;
+
+        ByteBuffer header = ByteBuffer.allocate(DatasetFormat.HEADER_BYTES);
+        header.putInt(DatasetFormat.MAGIC);
+        header.put(DatasetFormat.VERSION);
+        header.putInt(width);
+        header.putInt(height);
+        header.flip();
+        while (header.hasRemaining()) {
+            this.channel.write(header);
+        }
+    }
+
+    /**
+     * Starts the samples of a game.
+     * @param game the index of the game, stored with each of its samples.
+     */
+    public void beginGame (long game) {
+        this.game = game;
+        this.gameStart = this.samples;
+    }
+
+    /**
+     * Adds a sample of the current game.
+     * @param board the board before the piece is placed, only its {@code Marker.STATIC}
+     * squares are stored.
+     * @param type the type of the piece to place.
+     * @param placement where the piece is placed.
+     * @param linesBefore the number of rows the game cleared before the piece was placed.
+     */
+    public void add (BitBoard board, PieceType type, Placement placement, long linesBefore) {
+        if (this.samples == this.games.capacity() / Long.BYTES) {
+            this.grow();
+        }
+        this.games.putLong(this.game);
+        this.packBoard(board);
+        this.types.put((byte) type.ordinal());
+        this.orientations.put((byte) placement.getOrientation());
+        this.columns.putShort((short) placement.getOriginX());
+        this.rows.putShort((short) placement.getOriginY());
+        this.lines.put((byte) 0);
+        /* Holds the lines before the sample until the game is over */
+        this.linesToGo.putInt((int) linesBefore);
+        this.samples++;
+    }
+
+    /**
+     * Ends the current game, fills in the outcome of its samples and writes the block if it
+     * is full.
+     * @param totalLines the number of rows the game cleared.
+     * @throws IOException if the file cannot be written.
+     */
+    public void endGame (long totalLines) throws IOException {
+        int after = (int) totalLines;
+        for (int i = this.samples - 1; i >= this.gameStart; i--) {
+            int before = this.linesToGo.getInt(i * Integer.BYTES);
+            this.lines.put(i, (byte) (after - before));
+            this.linesToGo.putInt(i * Integer.BYTES, (int) totalLines - before);
+            after = before;
+        }
+        this.gameStart = this.samples;
+        if (this.samples >= this.blockSamples) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Writes the samples of the games that ended and closes the shard. Samples of a game that
+     * was not ended are dropped.
+     * @throws IOException if the file cannot be written.
+     */
+    @Override
+    public void close () throws IOException {
+        if (this.channel.isOpen()) {
+            this.samples = this.gameStart;
+            for (ByteBuffer column : this.columns()) {
+                column.position(this.samples * (column.capacity() / this.capacity()));
+            }
+            this.flush();
+            this.channel.close();
+        }
+    }
+
+    /* Helper methods for writing blocks */
+
+    /**
+     * Helper method for add()
+     * Packs the taken squares of a board into the board column a row at a time.
+     * @param board the board.
+     */
+    private void packBoard (BitBoard board) {
+        long bits = 0;
+        int used = 0;
+        for (int y = 0; y < this.height; y++) {
+            long row = board.getStaticRow(y);
+            int left = this.width;
+            while (left > 0) {
+                int take = Math.min(left, Long.SIZE - used);
+                long mask = (take == Long.SIZE) ? -1L : (1L << take) - 1;
+                bits |= (row & mask) << used;
+                used += take;
+                row = (take == Long.SIZE) ? 0 : row >>> take;
+                left -= take;
+                if (used == Long.SIZE) {
+                    this.boards.putLong(Long.reverseBytes(bits));
+                    bits = 0;
+                    used = 0;
+                }
+            }
+        }
+        for (; used > 0; used -= Byte.SIZE) {
+            this.boards.put((byte) bits);
+            bits >>>= Byte.SIZE;
+        }
+    }
+
+    /**
+     * Writes the samples gathered so far as a block with a single gathering write, and
+     * empties the columns. Nothing is written if there are no samples.
+     * @throws IOException if the file cannot be written.
+     */
+    private void flush () throws IOException {
+        if (this.samples > 0) {
+            ByteBuffer[] block = new ByteBuffer[] {this.count, this.games, this.boards,
+                this.types, this.orientations, this.columns, this.rows, this.lines,
+                this.linesToGo};
+            this.count.clear();
+            this.count.putInt(this.samples);
+            long bytes = 0;
+            for (ByteBuffer column : block) {
+                column.flip();
+                bytes += column.remaining();
+            }
+            for (long done = 0; done < bytes; ) {
+                done += this.channel.write(block);
+            }
+            this.written += this.samples;
+        }
+        for (ByteBuffer column : this.columns()) {
+            column.clear();
+        }
+        this.samples = 0;
+        this.gameStart = 0;
+    }
+
+    /**
+     * Helper method for add()
+     * Doubles the size of every column, keeping the samples gathered so far.
+     */
+    private void grow () {
+        ByteBuffer[] old = this.columns();
+        this.allocate(2 * this.capacity());
+        ByteBuffer[] grown = this.columns();
+        for (int i = 0; i < old.length; i++) {
+            old[i].flip();
+            grown[i].put(old[i]);
+        }
+    }
+
+    /**
+     * Helper method for the constructor and grow()
+     * Allocates empty columns.
+     * @param capacity the number of samples the columns hold.
+     */
+    private void allocate (int capacity) {
+        this.games = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+        this.boards = ByteBuffer.allocateDirect(capacity * this.boardBytes);
+        this.types = ByteBuffer.allocateDirect(capacity);
+        this.orientations = ByteBuffer.allocateDirect(capacity);
+        this.columns = ByteBuffer.allocateDirect(capacity * Short.BYTES);
+        this.rows = ByteBuffer.allocateDirect(capacity * Short.BYTES);
+        this.lines = ByteBuffer.allocateDirect(capacity);
+        this.linesToGo = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+    }
+
+    /**
+     * Lists the columns.
+     * @return the column buffers, in the order they are written.
+     */
+    private ByteBuffer[] columns () {
+        return new ByteBuffer[] {this.games, this.boards, this.types, this.orientations,
+            this.columns, this.rows, this.lines, this.linesToGo};
+    }
+
+    /**
+     * Gets the number of samples the columns hold.
+     * @return the capacity of the columns.
+     */
+    private int capacity () {
+        return this.types.capacity();
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of samples written to the file so far.
+     * @return the number of samples.
+     */
+    public long getWritten () {
+        return this.written;
+    }
+
+}
@@ -0,0 +1,44 @@
+package cgs.engine;
+
+/**
+ * The actions a player can take, applied to a game with {@code TetrisEngine.step}.
+ * LEFT and RIGHT move the piece one column.
+ * DOWN moves the piece down immediately (bypasses the {@code FALL_SPEED} once).
+ * ROTATE_CW and ROTATE_CCW rotate the piece clockwise and counter-clockwise.
+ * PAUSE pauses the game, or resumes it if it is already paused.
+ * HARD_DROP drops the piece straight to where it lands and locks it at once.
+ *
+ * Every action has a small primitive code so it can be queued and recorded without objects.
+ * The codes are stored in replay logs, so new actions are only ever added at the end.
+ */
+public enum Action {
+    LEFT, RIGHT, DOWN, ROTATE_CW, ROTATE_CCW, PAUSE, HARD_DROP;
+
+    /* The actions indexed by their code */
+    private static final Action[] CODES = values();
+
+    /**
+     * Gets the primitive code of the action.
+     * @return the code, from 0 to {@code count() - 1}.
+     */
+    public int code () {
+        return this.ordinal();
+    }
+
+    /**
+     * Gets the action with a code.
+     * @param code the code of the action.
+     * @return the action.
+     */
+    public static Action fromCode (int code) {
+        return CODES[code];
+    }
+
+    /**
+     * Gets the number of actions.
+     * @return the number of action codes.
+     */
+    public static int count () {
+        return CODES.length;
+    }
+}
@@ -0,0 +1,80 @@
+package cgs.engine;
+
+/**
+ * Deals the types from a bag holding one of each type, refilling the bag once it is empty,
+ * so every type comes up once in every run of {@code PieceType.PIECES.size()} pieces and the
+ * same type is never more than twice in a row.
+ *
+ * The bag is packed into an int the same way as the engine's color bank: every type is a
+ * nibble holding its ordinal, the lowest {@code size} nibbles are the types left in the bag
+ * and the nibbles above them are the types dealt since the bag was filled, in the order they
+ * were dealt. Refilling the bag only resets its size.
+ */
+public class BagGenerator implements PieceGenerator {
+
+    /* The number of types in a full bag */
+    private static final int TYPES = PieceType.PIECES.size();
+
+    /* The types in the bag followed by the types dealt from it, and the number in the bag */
+    private int order;
+    private int size;
+
+    /**
+     * Creates a generator with a full bag.
+     */
+    public BagGenerator () {
+        for (int i = 0; i < TYPES; i++) {
+            this.order |= i << (4 * i);
+        }
+        this.size = TYPES;
+    }
+
+    /**
+     * Deals a random type from the bag, refilling it first if it is empty.
+     * @param random the game's random generator.
+     * @return the type.
+     */
+    @Override
+    public PieceType next (SplitMix64 random) {
+        if (this.size == 0) {
+            this.size = TYPES;
+        }
+        int shift = 4 * random.nextInt(this.size);
+        int select = (this.order >>> shift) & 0xF;
+        // move the type from the bag to the end of the dealt types
+        int above = this.order >>> (shift + 4);
+        this.order = (this.order & ((1 << shift) - 1)) | (above << shift)
+            | select << (4 * (TYPES - 1));
+        this.size--;
+        return PieceType.PIECES.get(select);
+    }
+
+    /**
+     * Gets the order of the types and the size of the bag.
+     * @return the size in the high half and the order in the low half.
+     */
+    @Override
+    public long getState () {
+        return (long) this.size << Integer.SIZE | (this.order & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Replaces the order of the types and the size of the bag.
+     * @param state the state from {@code getState}.
+     */
+    @Override
+    public void setState (long state) {
+        this.order = (int) state;
+        this.size = (int) (state >>> Integer.SIZE);
+    }
+
+    /**
+     * Gets the code of the generator.
+     * @return {@code BAG}.
+     */
+    @Override
+    public int getCode () {
+        return BAG;
+    }
+
+}
@@ -0,0 +1,516 @@
+package cgs.engine;
+
+import java.util.Arrays;
+
+/**
+ * The grid that stores the internal state of a {@code TetrisEngine}.
+ * Every row of the grid is stored as a primitive bitmask in which bit {@code x} is set
+ * when column {@code x} of the row is taken. Squares marked {@code Marker.STATIC} and
+ * {@code Marker.DYNAMIC} are kept on separate planes, so testing a piece for collisions
+ * only needs to look at the static plane and checking whether a row is full is a single
+ * compare against {@code fullRow}.
+ *
+ * Rows are stored in a {@code long}, so a board can be at most 64 squares wide.
+ *
+ * The board keeps a {@code Zobrist} hash of its static plane, updated with the squares that
+ * change whenever a static row is written, so positions can be looked up in a
+ * transposition table without hashing the whole grid.
+ *
+ * Boards can be thousands of rows tall, so the board also keeps a watermark: the highest row
+ * with any square taken, updated as rows are written. Everything above it is empty, so scans
+ * of the board start at {@code getTop()} and only cover the part in use. The occupancy of a
+ * row is its mask, so counting its squares or checking if it is full is a single operation.
+ *
+ * The board also keeps a skyline: the highest {@code Marker.STATIC} square of every column.
+ * Squares added to a column lower its entry at once, removing the highest square of a column
+ * only marks the skyline stale, and it is rebuilt from the watermark down the next time it is
+ * read. A piece above the skyline lands where its lowest square in some column meets that
+ * column's entry, so {@code dropRow} finds the landing row without stepping down the board.
+ * Reading the skyline may rebuild it, so a board shared between threads must not be read
+ * concurrently either.
+ */
+public class BitBoard {
+
+    /* The largest width that fits in a single row mask */
+    public static final int MAX_WIDTH = Long.SIZE;
+
+    /* The size of the grid */
+    private final int width;
+    private final int height;
+
+    /* A row mask with every column taken */
+    private final long fullRow;
+
+    /* One mask per row for each of the non-empty markers */
+    private final long[] staticRows;
+    private final long[] dynamicRows;
+
+    /* The Zobrist hash of the Marker.STATIC squares */
+    private long hash;
+
+    /* The highest row with a square taken, {@code height} if the board is empty */
+    private int top;
+
+    /*
+     * The highest Marker.STATIC square of each column, {@code height} for an empty column,
+     * and whether a removed square may have left an entry too high.
+     */
+    private final int[] columnTops;
+    private boolean skylineStale;
+
+    /**
+     * Creates a new empty board.
+     * @param width the number of columns, at most {@code MAX_WIDTH}.
+     * @param height the number of rows.
+     * @throws IllegalArgumentException if either dimension is out of range.
+     */
+    public BitBoard (int width, int height) {
+        if (width <= 0 || width > MAX_WIDTH || height <= 0) {
+            throw new IllegalArgumentException("Invalid board size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.fullRow = (width == MAX_WIDTH) ? -1L : (1L << width) - 1;
+        this.staticRows = new long[height];
+        this.dynamicRows = new long[height];
+        this.top = height;
+        this.columnTops = new int[width];
+        Arrays.fill(this.columnTops, height);
+        this.skylineStale = false;
+    }
+
+    /* Accessors */
+
+    /**
+     * Gets the {@code Marker} at a square.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @return the {@code Marker} at the square.
+     */
+    public Marker get (int x, int y) {
+        long bit = 1L << x;
+        if ((this.staticRows[y] & bit) != 0) {
+            return Marker.STATIC;
+        } else if ((this.dynamicRows[y] & bit) != 0) {
+            return Marker.DYNAMIC;
+        } else {
+            return Marker.EMPTY;
+        }
+    }
+
+    /**
+     * Checks if a square holds a piece that has already fallen.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @return true if the square is marked {@code Marker.STATIC}; false otherwise.
+     */
+    public boolean isStatic (int x, int y) {
+        return (this.staticRows[y] & (1L << x)) != 0;
+    }
+
+    /**
+     * Checks if a piece fits at a position, where its squares can be taken by a falling piece.
+     * Squares above the top of the board are allowed, squares outside the
+     * sides or below the bottom, or on a {@code Marker.STATIC} square are not.
+     * @param cells the coordinates of the squares relative to the origin of the piece.
+     * @param originX the column of the origin.
+     * @param originY the row of the origin.
+     * @return true if every square is open; false otherwise.
+     */
+    public boolean fits (int[][] cells, int originX, int originY) {
+        int x, y;
+        for (int i = 0; i < cells.length; i++) {
+            x = cells[i][0] + originX;
+            y = cells[i][1] + originY;
+            if (y >= this.height || x < 0 || x >= this.width
+                || (y >= 0 && (this.staticRows[y] & (1L << x)) != 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the status of a row.
+     * A row is full when no square in it is {@code Marker.EMPTY}.
+     * @param row the row that is to be checked.
+     * @return the status of the row (FULL, EMPTY, PARTIAL).
+     */
+    public RowStatus rowStatus (int row) {
+        long taken = this.staticRows[row] | this.dynamicRows[row];
+        if (taken == this.fullRow) {
+            return RowStatus.FULL;
+        } else if (taken == 0) {
+            return RowStatus.EMPTY;
+        } else {
+            return RowStatus.PARTIAL;
+        }
+    }
+
+    /**
+     * Gets the mask of the {@code Marker.STATIC} squares in a row.
+     * @param row the row.
+     * @return the mask of the row, bit {@code x} is set if column {@code x} is taken.
+     */
+    public long getStaticRow (int row) {
+        return this.staticRows[row];
+    }
+
+    /**
+     * Gets the number of squares taken in a row.
+     * @param row the row.
+     * @return the number of {@code Marker.STATIC} and {@code Marker.DYNAMIC} squares.
+     */
+    public int getFillCount (int row) {
+        return Long.bitCount(this.staticRows[row] | this.dynamicRows[row]);
+    }
+
+    /**
+     * Gets the highest row with a square taken. Every row above it is empty.
+     * @return the row, or the height of the board if the board is empty.
+     */
+    public int getTop () {
+        return this.top;
+    }
+
+    /**
+     * Gets the highest {@code Marker.STATIC} square of a column.
+     * @param x the column.
+     * @return the row of the square, or the height of the board if the column is empty.
+     */
+    public int getColumnTop (int x) {
+        if (this.skylineStale) {
+            this.rebuildSkyline();
+        }
+        return this.columnTops[x];
+    }
+
+    /**
+     * Gets the height of a column, the number of rows from the bottom of the board to the
+     * highest {@code Marker.STATIC} square of the column.
+     * @param x the column.
+     * @return the height of the column, 0 if it is empty.
+     */
+    public int getColumnHeight (int x) {
+        return this.height - this.getColumnTop(x);
+    }
+
+    /**
+     * Gets the row the origin of a piece lands on when the piece falls straight down from a
+     * position it fits in. If every square of the piece is above the skyline the landing row
+     * is read from the skyline, otherwise (a piece tucked under an overhang) the piece is
+     * moved down one row at a time.
+     * @param cells the coordinates of the squares relative to the origin of the piece.
+     * @param originX the column of the origin.
+     * @param originY the row of the origin, where the piece fits.
+     * @return the lowest row the origin reaches.
+     */
+    public int dropRow (int[][] cells, int originX, int originY) {
+        if (this.skylineStale) {
+            this.rebuildSkyline();
+        }
+        int landing = Integer.MAX_VALUE;
+        for (int i = 0; i < cells.length; i++) {
+            int columnTop = this.columnTops[cells[i][0] + originX];
+            if (cells[i][1] + originY >= columnTop) {
+                landing = -1;
+                break;
+            }
+            landing = Math.min(landing, columnTop - 1 - cells[i][1]);
+        }
+        if (landing >= 0) {
+            return landing;
+        }
+        int y = originY;
+        while (this.fits(cells, originX, y + 1)) {
+            y++;
+        }
+        return y;
+    }
+
+    /**
+     * Gets the mask of a row with every column taken.
+     * @return the mask of a full row.
+     */
+    public long getFullRow () {
+        return this.fullRow;
+    }
+
+    /**
+     * Gets the mask of the {@code Marker.DYNAMIC} squares in a row.
+     * @param row the row.
+     * @return the mask of the row, bit {@code x} is set if column {@code x} is dynamic.
+     */
+    public long getDynamicRow (int row) {
+        return this.dynamicRows[row];
+    }
+
+    /**
+     * Replaces the squares of a row.
+     * @param row the row.
+     * @param staticMask the mask of the {@code Marker.STATIC} squares of the row.
+     * @param dynamicMask the mask of the {@code Marker.DYNAMIC} squares of the row.
+     */
+    public void setRow (int row, long staticMask, long dynamicMask) {
+        this.write(row, staticMask & this.fullRow, dynamicMask & this.fullRow & ~staticMask);
+    }
+
+    /**
+     * Gets the Zobrist hash of the {@code Marker.STATIC} squares.
+     * Boards with the same static squares have the same hash, whatever their dynamic squares.
+     * @return the hash.
+     */
+    public long getHash () {
+        return this.hash;
+    }
+
+    /**
+     * Gets the number of columns.
+     * @return the number of columns.
+     */
+    public int getWidth () {
+        return this.width;
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return the number of rows.
+     */
+    public int getHeight () {
+        return this.height;
+    }
+
+    /* Mutators */
+
+    /**
+     * Makes this board a copy of another board of the same size.
+     * @param other the board that is copied.
+     * @throws IllegalArgumentException if the boards are different sizes.
+     */
+    public void copyFrom (BitBoard other) {
+        if (other.width != this.width || other.height != this.height) {
+            throw new IllegalArgumentException("Boards are different sizes");
+        }
+        System.arraycopy(other.staticRows, 0, this.staticRows, 0, this.height);
+        System.arraycopy(other.dynamicRows, 0, this.dynamicRows, 0, this.height);
+        this.hash = other.hash;
+        this.top = other.top;
+        System.arraycopy(other.columnTops, 0, this.columnTops, 0, this.width);
+        this.skylineStale = other.skylineStale;
+    }
+
+    /**
+     * Marks a square with a {@code Marker}.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @param marker the {@code Marker} that will be placed at the square.
+     */
+    public void set (int x, int y, Marker marker) {
+        this.markRow(y, 1L << x, marker);
+    }
+
+    /**
+     * Marks every {@code Marker.DYNAMIC} square with {@code Marker.EMPTY}, leaving only the
+     * squares that have already fallen.
+     */
+    public void clearDynamic () {
+        for (int y = this.height - 1; y >= this.top; y--) {
+            if (this.dynamicRows[y] != 0) {
+                this.write(y, this.staticRows[y], 0);
+            }
+        }
+    }
+
+    /**
+     * Marks several squares of a row with a {@code Marker} at once.
+     * @param row the row of the squares.
+     * @param mask the squares, bit {@code x} for column {@code x}.
+     * @param marker the {@code Marker} that is placed on the squares.
+     */
+    public void markRow (int row, long mask, Marker marker) {
+        switch (marker) {
+        case STATIC:
+            this.write(row, this.staticRows[row] | mask, this.dynamicRows[row] & ~mask);
+            break;
+        case DYNAMIC:
+            this.write(row, this.staticRows[row] & ~mask, this.dynamicRows[row] | mask);
+            break;
+        case EMPTY:
+            this.write(row, this.staticRows[row] & ~mask, this.dynamicRows[row] & ~mask);
+            break;
+        } //switch
+    }
+
+    /**
+     * Marks the squares of a piece at a position with {@code Marker.STATIC}.
+     * Squares above the top of the board are left out.
+     * @param cells the coordinates of the squares relative to the origin of the piece.
+     * @param originX the column of the origin.
+     * @param originY the row of the origin.
+     */
+    public void place (int[][] cells, int originX, int originY) {
+        int y;
+        for (int i = 0; i < cells.length; i++) {
+            y = cells[i][1] + originY;
+            if (y >= 0) {
+                this.write(y, this.staticRows[y] | 1L << (cells[i][0] + originX),
+                    this.dynamicRows[y]);
+            }
+        }
+    }
+
+    /**
+     * Removes every row that is full of {@code Marker.STATIC} squares and moves the rows
+     * above them down, leaving empty rows at the top.
+     * @return the number of rows removed.
+     */
+    public int compactFullRows () {
+        int highest = this.top;
+        int to = this.height - 1;
+        for (int from = this.height - 1; from >= highest; from--) {
+            if (this.staticRows[from] != this.fullRow) {
+                this.write(to, this.staticRows[from], this.dynamicRows[from]);
+                to--;
+            }
+        }
+        int removed = to + 1 - highest;
+        for (; to >= highest; to--) {
+            this.write(to, 0, 0);
+        }
+        return removed;
+    }
+
+    /**
+     * Clears every row that is full of {@code Marker.STATIC} squares the way a game in
+     * {@code LineClearMode.AVALANCHE} does:
+     * the squares above the highest full row fall together as one block until any of them
+     * lands, and the squares between full rows stay where they are.
+     * Only the {@code Marker.STATIC} squares are used and changed.
+     * @return the number of rows cleared.
+     */
+    public int clearFullRows () {
+        int cleared = 0;
+        int highest = this.top;
+        int top = this.height;
+        for (int y = this.height - 1; y >= highest; y--) {
+            if (this.staticRows[y] == this.fullRow) {
+                this.write(y, 0, this.dynamicRows[y]);
+                cleared++;
+                top = y;
+            }
+        }
+        if (cleared == 0) {
+            return 0;
+        }
+        long[] block = new long[top];
+        System.arraycopy(this.staticRows, 0, block, 0, top);
+        for (int y = highest; y < top; y++) {
+            this.write(y, 0, this.dynamicRows[y]);
+        }
+        int fall = 0;
+        while (this.canFall(block, highest, fall + 1)) {
+            fall++;
+        }
+        for (int y = highest; y < top; y++) {
+            this.write(y + fall, this.staticRows[y + fall] | block[y], this.dynamicRows[y + fall]);
+        }
+        return cleared;
+    }
+
+    /**
+     * Helper method for clearFullRows()
+     * Checks if a block of rows fits on the {@code Marker.STATIC} squares when moved down.
+     * @param block the rows of the block, starting at the top of the board.
+     * @param highest the highest row of the block that may have squares.
+     * @param distance the number of rows the block is moved down.
+     * @return true if the block has squares and none of them is taken or below the board
+     * after the move.
+     */
+    private boolean canFall (long[] block, int highest, int distance) {
+        boolean empty = true;
+        for (int y = highest; y < block.length; y++) {
+            if (block[y] != 0) {
+                if (y + distance >= this.height
+                    || (block[y] & this.staticRows[y + distance]) != 0) {
+                    return false;
+                }
+                empty = false;
+            }
+        }
+        return !empty;
+    }
+
+    /**
+     * Marks every square of a row with {@code Marker.EMPTY}.
+     * @param row the row that is to be cleared.
+     */
+    public void clearRow (int row) {
+        this.write(row, 0, 0);
+    }
+
+    /**
+     * Replaces the squares of a row, updating the hash with the {@code Marker.STATIC} squares
+     * that changed, moving the watermark if the row is above it or was its last row, and
+     * raising the skyline over added squares or marking it stale if a column lost its
+     * highest square. Every change to the board goes through this method.
+     * @param row the row.
+     * @param staticMask the new {@code Marker.STATIC} squares of the row.
+     * @param dynamicMask the new {@code Marker.DYNAMIC} squares of the row.
+     */
+    private void write (int row, long staticMask, long dynamicMask) {
+        long changed = this.staticRows[row] ^ staticMask;
+        if (changed != 0) {
+            this.hash ^= Zobrist.row(row, changed);
+            this.updateSkyline(row, changed & staticMask, changed & ~staticMask);
+        }
+        this.staticRows[row] = staticMask;
+        this.dynamicRows[row] = dynamicMask;
+        if ((staticMask | dynamicMask) != 0) {
+            this.top = Math.min(this.top, row);
+        } else if (row == this.top) {
+            while (this.top < this.height
+                && (this.staticRows[this.top] | this.dynamicRows[this.top]) == 0) {
+                this.top++;
+            }
+        }
+    }
+
+    /**
+     * Helper method for write()
+     * Updates the skyline with the {@code Marker.STATIC} squares added to and removed from
+     * a row.
+     * @param row the row.
+     * @param added the squares added.
+     * @param removed the squares removed.
+     */
+    private void updateSkyline (int row, long added, long removed) {
+        for (long bits = added; bits != 0; bits &= bits - 1) {
+            int x = Long.numberOfTrailingZeros(bits);
+            if (row < this.columnTops[x]) {
+                this.columnTops[x] = row;
+            }
+        }
+        for (long bits = removed; bits != 0 && !this.skylineStale; bits &= bits - 1) {
+            if (this.columnTops[Long.numberOfTrailingZeros(bits)] == row) {
+                this.skylineStale = true;
+            }
+        }
+    }
+
+    /**
+     * Finds the highest {@code Marker.STATIC} square of every column again, scanning down
+     * from the watermark until every column is found or the bottom is reached.
+     */
+    private void rebuildSkyline () {
+        Arrays.fill(this.columnTops, this.height);
+        long remaining = this.fullRow;
+        for (int y = this.top; y < this.height && remaining != 0; y++) {
+            for (long bits = this.staticRows[y] & remaining; bits != 0; bits &= bits - 1) {
+                this.columnTops[Long.numberOfTrailingZeros(bits)] = y;
+            }
+            remaining &= ~this.staticRows[y];
+        }
+        this.skylineStale = false;
+    }
+
+}
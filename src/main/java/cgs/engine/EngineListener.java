@@ -0,0 +1,89 @@
+package cgs.engine;
+
+/**
+ * Receives the changes a {@code TetrisEngine} makes to its game.
+ * Every method is called on the thread that called {@code step} or {@code tick}.
+ */
+public interface EngineListener {
+
+    /**
+     * Called when a square of the board changes.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @param color the color of the square, {@code TetrisEngine.EMPTY_COLOR} if it is empty.
+     */
+    default void squareChanged (int x, int y, int color) {
+    }
+
+    /**
+     * Called when full rows are removed in {@code LineClearMode.COMPACT}, after the squares
+     * that moved have been reported.
+     * @param lowestRow the lowest row that was removed.
+     * @param count the number of rows that were removed.
+     */
+    default void rowsCleared (int lowestRow, int count) {
+    }
+
+    /**
+     * Called when a piece is put in play and the preview queue moves up.
+     */
+    default void previewChanged () {
+    }
+
+    /**
+     * Called when a piece is put in play, before its squares are reported.
+     * @param type the type of the piece.
+     * @param count the number of pieces put in play so far, this one included.
+     */
+    default void pieceSpawned (PieceType type, long count) {
+    }
+
+    /**
+     * Called when the piece in play moves, by the player or by falling. A hard drop is a
+     * single move.
+     * @param dx the number of columns the piece moved, negative to the left.
+     * @param dy the number of rows the piece moved, positive down.
+     */
+    default void pieceMoved (int dx, int dy) {
+    }
+
+    /**
+     * Called when the piece in play rotates.
+     * @param rotations the number of clockwise rotations, negative counter-clockwise.
+     * @param orientation the orientation of the piece after the rotation.
+     */
+    default void pieceRotated (int rotations, int orientation) {
+    }
+
+    /**
+     * Called when the piece in play lands and becomes part of the pile, before any full
+     * rows are cleared.
+     * @param type the type of the piece.
+     * @param orientation the orientation of the piece.
+     * @param originX the column of the origin of the piece.
+     * @param originY the row of the origin of the piece.
+     */
+    default void pieceLocked (PieceType type, int orientation, int originX, int originY) {
+    }
+
+    /**
+     * Called when the rows filled by a piece are cleared.
+     * @param count the number of rows cleared.
+     */
+    default void linesCleared (int count) {
+    }
+
+    /**
+     * Called when the game is paused or resumed.
+     * @param paused true if the game is now paused.
+     */
+    default void pauseChanged (boolean paused) {
+    }
+
+    /**
+     * Called once when the game ends.
+     */
+    default void gameOver () {
+    }
+
+}
@@ -0,0 +1,132 @@
+package cgs.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free queue of player actions for exactly one producer thread and one
+ * consumer thread, such as a javaFX key handler and the thread running the game.
+ * Actions are stored as their primitive {@code Action} code together with the
+ * {@code System.nanoTime} at which they were captured, in arrays that are allocated once,
+ * so neither offering nor draining an action creates any objects.
+ */
+public final class InputRing {
+
+    /**
+     * Receives the actions drained from an {@code InputRing}.
+     */
+    public interface Handler {
+
+        /**
+         * Called for each drained action, oldest first.
+         * @param action the code of the action (see {@code Action.code()}).
+         * @param capturedNanos the {@code System.nanoTime} at which the action was captured.
+         */
+        void onInput (int action, long capturedNanos);
+    }
+
+    /* The capacity less one, the capacity is a power of two */
+    private final int mask;
+
+    /* The queued actions and their capture times */
+    private final byte[] actions;
+    private final long[] capturedNanos;
+
+    /* The sequence of the next action to read, only written by the consumer */
+    private final AtomicLong head;
+
+    /* The sequence of the next action to write, only written by the producer */
+    private final AtomicLong tail;
+
+    /* The producer's last view of head, saves reading it on every offer */
+    private long cachedHead;
+
+    /* The number of actions rejected because the queue was full, only written by the producer */
+    private volatile long dropped;
+
+    /**
+     * Creates a new empty queue.
+     * @param capacity the most actions that can be queued, rounded up to a power of two.
+     */
+    public InputRing (int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.actions = new byte[size];
+        this.capturedNanos = new long[size];
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.cachedHead = 0;
+        this.dropped = 0;
+    }
+
+    /**
+     * Queues an action captured now. Must only be called by the producer thread.
+     * @param action the action.
+     * @return true if the action was queued; false if the queue was full.
+     */
+    public boolean offer (Action action) {
+        return this.offer(action.code(), System.nanoTime());
+    }
+
+    /**
+     * Queues an action. Must only be called by the producer thread.
+     * @param action the code of the action.
+     * @param capturedNanos the {@code System.nanoTime} at which the action was captured.
+     * @return true if the action was queued; false if the queue was full.
+     */
+    public boolean offer (int action, long capturedNanos) {
+        long tail = this.tail.get();
+        if (tail - this.cachedHead > this.mask) {
+            this.cachedHead = this.head.get();
+            if (tail - this.cachedHead > this.mask) {
+                this.dropped++;
+                return false;
+            }
+        }
+        int index = (int) tail & this.mask;
+        this.actions[index] = (byte) action;
+        this.capturedNanos[index] = capturedNanos;
+        this.tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Removes queued actions and passes them to a handler, oldest first.
+     * Must only be called by the consumer thread.
+     * @param handler receives each action.
+     * @param max the most actions to remove.
+     * @return the number of actions removed.
+     */
+    public int drain (Handler handler, int max) {
+        long head = this.head.get();
+        int count = (int) Math.min(this.tail.get() - head, max);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (head + i) & this.mask;
+            handler.onInput(this.actions[index], this.capturedNanos[index]);
+        }
+        this.head.lazySet(head + count);
+        return count;
+    }
+
+    /**
+     * Checks if there are no queued actions.
+     * @return true if the queue is empty; false otherwise.
+     */
+    public boolean isEmpty () {
+        return this.head.get() == this.tail.get();
+    }
+
+    /**
+     * Gets the number of actions rejected because the queue was full.
+     * @return the number of dropped actions.
+     */
+    public long getDropped () {
+        return this.dropped;
+    }
+
+}
@@ -0,0 +1,31 @@
+package cgs.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a {@code TetrisEngine} checking the board for full rows after a
+ * piece locks and clearing them. The duration of the event is the time taken.
+ */
+@Name("cgs.LineClear")
+@Label("Line Clear")
+@Category({"Tetris", "Engine"})
+@Description("The board is checked for full rows after a piece locks and they are cleared")
+@StackTrace(false)
+class LineClearEvent extends Event {
+
+    @Label("Rows Cleared")
+    int rows;
+
+    @Label("Line Clear Mode")
+    String mode;
+
+    @Label("Avalanche Started")
+    @Description("Squares above the cleared rows were lifted to fall")
+    boolean falling;
+
+}
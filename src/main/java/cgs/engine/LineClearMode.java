@@ -0,0 +1,23 @@
+package cgs.engine;
+
+/**
+ * How a {@code TetrisEngine} clears full rows.
+ * AVALANCHE lifts the squares above the highest full row and lets them fall as one block, one
+ * row per tick, until any of them lands. The piece is not controlled while they fall.
+ * COMPACT removes the full rows and shifts every row above them down in a single step, so the
+ * next piece is in play on the same tick.
+ */
+public enum LineClearMode {
+    AVALANCHE, COMPACT;
+
+    /**
+     * Clears the full rows of a board the way a game in this mode does once the squares have
+     * settled. Only the {@code Marker.STATIC} squares are used and changed.
+     * @param board the board.
+     * @return the number of rows cleared.
+     */
+    public int clear (BitBoard board) {
+        return (this == COMPACT) ? board.compactFullRows() : board.clearFullRows();
+    }
+
+}
@@ -0,0 +1,11 @@
+package cgs.engine;
+
+/**
+ * Used to mark the {@code board}.
+ * STATIC dennotes a piece at that space that has fallen and no longer moves.
+ * DYNAMIC dennotes a piece at that space that can move and is falling.
+ * EMPTY dennotes that there is no piece at that space.
+ */
+public enum Marker {
+    STATIC, DYNAMIC, EMPTY;
+}
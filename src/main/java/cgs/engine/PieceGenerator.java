@@ -0,0 +1,62 @@
+package cgs.engine;
+
+/**
+ * Picks the types of the pieces of a game.
+ * A {@code TetrisEngine} draws from its generator whenever a type is added to the end of its
+ * preview queue, passing its own random generator, so a game stays a function of its seed.
+ * A generator may keep state between draws, such as the types left in a bag, so every game
+ * needs a generator of its own. The state fits in a {@code long} and is saved with the game.
+ *
+ * Generators that can be recreated from a code, {@code UNIFORM} and {@code BAG}, can be
+ * recorded in a replay log.
+ */
+public interface PieceGenerator {
+
+    /* The codes of the generators that {@code forCode} can create */
+    int UNIFORM = 0;
+    int BAG = 1;
+
+    /**
+     * Draws the type of the next piece.
+     * @param random the game's random generator.
+     * @return the type.
+     */
+    PieceType next (SplitMix64 random);
+
+    /**
+     * Gets everything the generator needs to go on drawing the same types.
+     * @return the state.
+     */
+    long getState ();
+
+    /**
+     * Replaces the state of the generator with one from {@code getState}.
+     * @param state the state.
+     */
+    void setState (long state);
+
+    /**
+     * Gets the code of the generator.
+     * @return {@code UNIFORM}, {@code BAG}, or -1 if the generator cannot be recreated from
+     * a code.
+     */
+    int getCode ();
+
+    /**
+     * Creates a new generator from its code.
+     * @param code the code of the generator.
+     * @return the generator, in its initial state.
+     * @throws IllegalArgumentException if there is no generator with the code.
+     */
+    static PieceGenerator forCode (int code) {
+        switch (code) {
+        case UNIFORM:
+            return new UniformGenerator();
+        case BAG:
+            return new BagGenerator();
+        default:
+            throw new IllegalArgumentException("Unknown piece generator: " + code);
+        } //switch
+    }
+
+}
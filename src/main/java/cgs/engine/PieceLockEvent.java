@@ -0,0 +1,33 @@
+package cgs.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a piece of a {@code TetrisEngine} landing and becoming part of
+ * the board.
+ */
+@Name("cgs.PieceLock")
+@Label("Piece Lock")
+@Category({"Tetris", "Engine"})
+@Description("A piece landed and became part of the board")
+@StackTrace(false)
+class PieceLockEvent extends Event {
+
+    @Label("Piece Type")
+    String type;
+
+    @Label("Orientation")
+    int orientation;
+
+    @Label("Column")
+    int originX;
+
+    @Label("Row")
+    int originY;
+
+}
@@ -0,0 +1,27 @@
+package cgs.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a {@code TetrisEngine} putting a piece in play.
+ */
+@Name("cgs.PieceSpawn")
+@Label("Piece Spawn")
+@Category({"Tetris", "Engine"})
+@Description("A piece was put in play")
+@StackTrace(false)
+class PieceSpawnEvent extends Event {
+
+    @Label("Piece Type")
+    String type;
+
+    @Label("Piece Count")
+    @Description("The number of pieces put in play so far, including this one")
+    long count;
+
+}
@@ -0,0 +1,65 @@
+package cgs.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The options predescribed pieces and contains their inital spaces
+ * and the number of pivots (for rotation).
+ */
+public enum PieceType {
+    OPIECE (new int[][] {{0,0}, {0,1}, {1,0}, {1,1}}, 0),
+    SPIECE (new int[][] {{1,0}, {1,1}, {0,1}, {2,0}}, 1),
+    ZPIECE (new int[][] {{1,0}, {0,0}, {1,1}, {2,1}}, 1),
+    TPIECE (new int[][] {{1,1}, {0,1}, {1,0}, {2,1}}, 1),
+    JPIECE (new int[][] {{1,1}, {0,0}, {0,1}, {2,1}}, 1),
+    LPIECE (new int[][] {{1,1}, {0,1}, {2,0}, {2,1}}, 1),
+    IPIECE (new int[][] {{2,0}, {1,0}, {0,0}, {3,0}}, 2);
+
+    /* A list of all the options in order */
+    public static final List<PieceType> PIECES =
+        Collections.unmodifiableList(Arrays.asList(values()));
+
+    /* The starting spaces of the falling piece */
+    private int[][] spaces;
+
+    /* The number of pivots */
+    private int pivotNum;
+
+    /**
+     * Creates a new instance of enum type with spaces and number of pivots.
+     * @param spaces the inital spaces of the piece
+     * @param pivotNum the number of pivots
+     */
+    private PieceType(int[][] spaces, int pivotNum) {
+        this.spaces = spaces;
+        this.pivotNum = pivotNum;
+    }
+
+    /**
+     * Gets a copy of the array containing the spaces.
+     * @return a copy of the array containg the spaces
+     */
+    public int[][] getSpaces() {
+        return TetrisEngine.copy2D(this.spaces);
+    }
+
+    /**
+     * Gets the number of pivots
+     * @return the number of pivots
+     */
+    public int getPivotNum() {
+        return this.pivotNum;
+    }
+
+    /**
+     * selects a random {@code PieceType}, every type is equally likely.
+     * @param random the generator the type is drawn from.
+     * @return a random {@code PieceType}.
+     */
+    public static PieceType randomPieceType(SplitMix64 random) {
+        return PIECES.get(random.nextInt(PIECES.size()));
+    }
+
+}
@@ -0,0 +1,182 @@
+package cgs.engine;
+
+/**
+ * Precomputed orientations and wall kicks for every {@code PieceType}.
+ * Each piece is rotated inside a square bounding box (2 wide for the O piece, 4 wide for
+ * the I piece and 3 wide for the rest) the same way as the Super Rotation System, so that
+ * rotating a piece at runtime is a table lookup followed by a few collision tests.
+ *
+ * Orientations are numbered 0 (spawn), 1 (clockwise), 2 (upside down) and 3 (counter-clockwise).
+ * All coordinates are relative to the origin of the piece, which starts at (0, 0),
+ * and use the board's convention of y growing downwards.
+ */
+public final class RotationTable {
+
+    /* The number of orientations of every piece */
+    public static final int ORIENTATIONS = 4;
+
+    /*
+     * The SRS wall kick offsets as they are usually published (y grows upwards).
+     * Indexed by [starting orientation][direction (0 clockwise, 1 counter-clockwise)][test].
+     */
+    private static final int[][][][] JLSTZ_KICKS = {
+        {{{0, 0}, {-1, 0}, {-1, 1}, {0, -2}, {-1, -2}},     // 0 -> 1
+         {{0, 0}, {1, 0}, {1, 1}, {0, -2}, {1, -2}}},       // 0 -> 3
+        {{{0, 0}, {1, 0}, {1, -1}, {0, 2}, {1, 2}},         // 1 -> 2
+         {{0, 0}, {1, 0}, {1, -1}, {0, 2}, {1, 2}}},        // 1 -> 0
+        {{{0, 0}, {1, 0}, {1, 1}, {0, -2}, {1, -2}},        // 2 -> 3
+         {{0, 0}, {-1, 0}, {-1, 1}, {0, -2}, {-1, -2}}},    // 2 -> 1
+        {{{0, 0}, {-1, 0}, {-1, -1}, {0, 2}, {-1, 2}},      // 3 -> 0
+         {{0, 0}, {-1, 0}, {-1, -1}, {0, 2}, {-1, 2}}}      // 3 -> 2
+    };
+    private static final int[][][][] I_KICKS = {
+        {{{0, 0}, {-2, 0}, {1, 0}, {-2, -1}, {1, 2}},       // 0 -> 1
+         {{0, 0}, {-1, 0}, {2, 0}, {-1, 2}, {2, -1}}},      // 0 -> 3
+        {{{0, 0}, {-1, 0}, {2, 0}, {-1, 2}, {2, -1}},       // 1 -> 2
+         {{0, 0}, {2, 0}, {-1, 0}, {2, 1}, {-1, -2}}},      // 1 -> 0
+        {{{0, 0}, {2, 0}, {-1, 0}, {2, 1}, {-1, -2}},       // 2 -> 3
+         {{0, 0}, {1, 0}, {-2, 0}, {1, -2}, {-2, 1}}},      // 2 -> 1
+        {{{0, 0}, {1, 0}, {-2, 0}, {1, -2}, {-2, 1}},       // 3 -> 0
+         {{0, 0}, {-2, 0}, {1, 0}, {-2, -1}, {1, 2}}}       // 3 -> 2
+    };
+
+    /* Used for the O piece and for half turns, which are not kicked */
+    private static final int[][] NO_KICKS = {{0, 0}};
+
+    /* The squares of every piece, indexed by [type][orientation][square][x or y] */
+    private static final int[][][][] CELLS;
+
+    /* The kicks of every piece, indexed by [type][orientation][direction][test][x or y] */
+    private static final int[][][][][] KICKS;
+
+    static {
+        int types = PieceType.PIECES.size();
+        CELLS = new int[types][ORIENTATIONS][][];
+        KICKS = new int[types][ORIENTATIONS][2][][];
+        int[][][][] iKicks = flipVertical(I_KICKS);
+        int[][][][] jlstzKicks = flipVertical(JLSTZ_KICKS);
+        for (PieceType type : PieceType.PIECES) {
+            int[][] cells = type.getSpaces();
+            int boxSize = boxSize(type);
+            /* The I piece spawns on the top row of its box instead of the second */
+            int boxY = (type == PieceType.IPIECE) ? -1 : 0;
+            for (int orientation = 0; orientation < ORIENTATIONS; orientation++) {
+                CELLS[type.ordinal()][orientation] = cells;
+                cells = rotateClockwise(cells, boxSize, boxY);
+                for (int direction = 0; direction < 2; direction++) {
+                    switch (type) {
+                    case OPIECE:
+                        KICKS[type.ordinal()][orientation][direction] = NO_KICKS;
+                        break;
+                    case IPIECE:
+                        KICKS[type.ordinal()][orientation][direction] = iKicks[orientation][direction];
+                        break;
+                    default:
+                        KICKS[type.ordinal()][orientation][direction] =
+                            jlstzKicks[orientation][direction];
+                    } //switch
+                } //for
+            } //for
+        } //for
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private RotationTable () {
+    }
+
+    /**
+     * Gets the squares of a piece in an orientation relative to the origin of the piece.
+     * The returned array is shared and must not be modified.
+     * @param type the type of the piece.
+     * @param orientation the orientation, from 0 to {@code ORIENTATIONS - 1}.
+     * @return the coordinates of the squares.
+     */
+    public static int[][] getCells (PieceType type, int orientation) {
+        return CELLS[type.ordinal()][orientation];
+    }
+
+    /**
+     * Gets the offsets that are tried, in order, when a piece is rotated.
+     * Quarter turns use the SRS kicks, any other turn is only tried in place.
+     * The returned array is shared and must not be modified.
+     * @param type the type of the piece.
+     * @param orientation the orientation the piece is rotated from.
+     * @param rotations the number of clockwise rotations. Negative values rotate counter-clockwise.
+     * @return the offsets to try.
+     */
+    public static int[][] getKicks (PieceType type, int orientation, int rotations) {
+        if (rotations == 1) {
+            return KICKS[type.ordinal()][orientation][0];
+        } else if (rotations == -1) {
+            return KICKS[type.ordinal()][orientation][1];
+        } else {
+            return NO_KICKS;
+        }
+    }
+
+    /**
+     * Gets the orientation that a piece ends up in after it is rotated.
+     * @param orientation the starting orientation.
+     * @param rotations the number of clockwise rotations. Negative values rotate counter-clockwise.
+     * @return the final orientation.
+     */
+    public static int rotate (int orientation, int rotations) {
+        return Math.floorMod(orientation + rotations, ORIENTATIONS);
+    }
+
+    /* Static initializer helper methods */
+
+    /**
+     * Gets the size of the square box a piece rotates inside of.
+     * @param type the type of the piece.
+     * @return the width of the box.
+     */
+    private static int boxSize (PieceType type) {
+        switch (type) {
+        case OPIECE:
+            return 2;
+        case IPIECE:
+            return 4;
+        default:
+            return 3;
+        }
+    }
+
+    /**
+     * Rotates squares 90 degrees clockwise inside their bounding box.
+     * @param cells the coordinates of the squares.
+     * @param boxSize the width of the box.
+     * @param boxY the row of the top of the box.
+     * @return the coordinates of the rotated squares.
+     */
+    private static int[][] rotateClockwise (int[][] cells, int boxSize, int boxY) {
+        int[][] rotated = new int[cells.length][2];
+        for (int i = 0; i < cells.length; i++) {
+            rotated[i][0] = boxSize - 1 - (cells[i][1] - boxY);
+            rotated[i][1] = cells[i][0] + boxY;
+        }
+        return rotated;
+    }
+
+    /**
+     * Converts kick offsets from y growing upwards to y growing downwards.
+     * @param kicks the offsets as published.
+     * @return the offsets in the board's coordinates.
+     */
+    private static int[][][][] flipVertical (int[][][][] kicks) {
+        int[][][][] flipped = new int[kicks.length][][][];
+        for (int from = 0; from < kicks.length; from++) {
+            flipped[from] = new int[kicks[from].length][][];
+            for (int direction = 0; direction < kicks[from].length; direction++) {
+                flipped[from][direction] = TetrisEngine.copy2D(kicks[from][direction]);
+                for (int[] kick : flipped[from][direction]) {
+                    kick[1] = -kick[1];
+                }
+            }
+        }
+        return flipped;
+    }
+
+}
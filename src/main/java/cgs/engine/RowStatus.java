@@ -0,0 +1,8 @@
+package cgs.engine;
+
+/**
+ * Used to represent the status of the row and describe if the row is ready to be cleared.
+ */
+public enum RowStatus {
+    FULL, EMPTY, PARTIAL;
+}
@@ -0,0 +1,67 @@
+package cgs.engine;
+
+import java.util.Arrays;
+
+/**
+ * Deals the types of a fixed sequence in order, starting over at its end, such as the pieces
+ * of a recorded game or of a puzzle. The random generator is not used, so a game played from
+ * a sequence only depends on its seed for the colors of its pieces.
+ */
+public class SequenceGenerator implements PieceGenerator {
+
+    /* The types dealt, in order */
+    private final PieceType[] sequence;
+
+    /* The number of types dealt so far */
+    private long dealt;
+
+    /**
+     * Creates a generator for a sequence.
+     * @param sequence the types to deal, in order.
+     * @throws IllegalArgumentException if the sequence is empty.
+     */
+    public SequenceGenerator (PieceType... sequence) {
+        if (sequence.length == 0) {
+            throw new IllegalArgumentException("Empty piece sequence");
+        }
+        this.sequence = Arrays.copyOf(sequence, sequence.length);
+    }
+
+    /**
+     * Deals the next type of the sequence.
+     * @param random not used.
+     * @return the type.
+     */
+    @Override
+    public PieceType next (SplitMix64 random) {
+        return this.sequence[(int) (this.dealt++ % this.sequence.length)];
+    }
+
+    /**
+     * Gets the number of types dealt.
+     * @return the number of types dealt.
+     */
+    @Override
+    public long getState () {
+        return this.dealt;
+    }
+
+    /**
+     * Replaces the number of types dealt.
+     * @param state the number of types dealt.
+     */
+    @Override
+    public void setState (long state) {
+        this.dealt = state;
+    }
+
+    /**
+     * Gets the code of the generator, which cannot be recreated from one.
+     * @return -1.
+     */
+    @Override
+    public int getCode () {
+        return -1;
+    }
+
+}
@@ -0,0 +1,91 @@
+package cgs.engine;
+
+/**
+ * A small, fast pseudo-random generator whose whole state is one {@code long}.
+ * It is the algorithm behind {@code java.util.SplittableRandom}, but the state can be read and
+ * set, so a game's generator can be saved with the rest of the game and restored later.
+ * Not thread safe, every game owns its own generator.
+ */
+public final class SplitMix64 {
+
+    /* The odd increment between states, the fractional part of the golden ratio */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /* The state, advanced by {@code GOLDEN_GAMMA} for every value drawn */
+    private long state;
+
+    /**
+     * Creates a generator.
+     * @param seed the initial state.
+     */
+    public SplitMix64 (long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * Draws a uniformly distributed long.
+     * @return the next value.
+     */
+    public long nextLong () {
+        return mix64(this.state += GOLDEN_GAMMA);
+    }
+
+    /**
+     * Draws a uniformly distributed int between 0 (inclusive) and a bound (exclusive).
+     * Values from the top of the range that would favour small results are rejected.
+     * @param bound the bound, must be positive.
+     * @return the next value.
+     */
+    public int nextInt (int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int r = (int) (this.nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return r & m;
+        }
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (this.nextLong() >>> 33)) {
+            continue;
+        }
+        return r;
+    }
+
+    /**
+     * Draws a uniformly distributed double between 0 (inclusive) and 1 (exclusive).
+     * @return the next value, a multiple of 2 to the power of -53.
+     */
+    public double nextDouble () {
+        return (this.nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Scrambles the bits of a long, the output function of the generator.
+     * @param z the value to scramble.
+     * @return the scrambled value.
+     */
+    public static long mix64 (long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /* Getter and setter methods */
+
+    /**
+     * Gets the state of the generator.
+     * @return the state, a generator created with it draws the same values as this one.
+     */
+    public long getState () {
+        return this.state;
+    }
+
+    /**
+     * Sets the state of the generator.
+     * @param state a state returned by {@code getState()}.
+     */
+    public void setState (long state) {
+        this.state = state;
+    }
+
+}
@@ -0,0 +1,1144 @@
+package cgs.engine;
+
+import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The rules of the game Tetris, without any display or threads.
+ * The game only advances when it is told to: {@code step(Action)} applies a player action and
+ * {@code tick()} advances the game by one unit of game time. Changes to the board are reported
+ * to an {@code EngineListener}, which is how a view such as {@code TetrisBoard} paints the game.
+ *
+ * The methods managing the falling pieces are contained in the inner class {@code Piece}
+ * which handles the operations such as moving/rotating the piece.
+ *
+ * Playing does not allocate: the piece in play is one reused object that only stores its
+ * position and orientation, the squares above cleared rows are kept as row masks, and the
+ * color bank is packed into a single int.
+ *
+ * Between ticks the whole game fits in a fixed-size state of {@code getStateBytes()} bytes,
+ * which {@code writeState} and {@code readState} copy to and from a caller's buffer without
+ * allocating, so a bot can save and restore a game as often as its search needs.
+ *
+ * Every random choice (piece types and colors) is drawn from the engine's own generator, so two
+ * engines created with the same seed and given the same actions on the same ticks play exactly
+ * the same game, and engines on different threads never contend on a shared generator.
+ * The types are picked by the game's {@code PieceGenerator} and kept in a preview queue of up
+ * to {@code MAX_PREVIEW} types, refilled as each piece is put in play, so the types of the
+ * next pieces can be read at any time without drawing them.
+ *
+ * An engine is not thread safe, callers that share one between threads must synchronize on it.
+ */
+public class TetrisEngine {
+
+    /* The default size of the internal game grid (board) */
+    public static final int HORIZONTAL_SPACES = 10;
+    public static final int VERTICAL_SPACES = 20;
+
+    /* The smallest board every piece fits on */
+    public static final int MIN_SPACES = 4;
+
+    /* Controls the the number of ticks required for the piece to fall. */
+    public static final int FALL_SPEED = 10;
+
+    /*
+     * The colors of the squares reported to the listener.
+     * The engine only knows colors by number, the view decides what they look like.
+     */
+    public static final int EMPTY_COLOR = 0;
+    public static final int PILE_COLOR = 1; //After a row is cleared
+    public static final int FIRST_PIECE_COLOR = 2;
+    public static final int PIECE_COLORS = 8;
+    public static final int GHOST_COLOR = FIRST_PIECE_COLOR + PIECE_COLORS; //Where the piece lands
+
+    /* The most piece types the preview queue holds */
+    public static final int MAX_PREVIEW = 8;
+
+    /* The number of bytes {@code writeState} writes before the rows of the board */
+    public static final int STATE_HEADER_BYTES = 3 * Long.BYTES + Integer.BYTES + 1 + MAX_PREVIEW
+        + Long.BYTES + 3 + 2 * Integer.BYTES + Integer.BYTES + 1 + 3 * Integer.BYTES;
+
+    /* The number of bytes {@code writeState} writes for a game on the default board */
+    public static final int STATE_BYTES = stateBytes(VERTICAL_SPACES);
+
+    /* The bits of the flags byte of a saved state */
+    private static final int DROP_FLAG = 1;
+    private static final int PAUSE_FLAG = 2;
+    private static final int GAME_ON_FLAG = 4;
+
+    /* Used while no listener is set */
+    private static final EngineListener NO_LISTENER = new EngineListener() { };
+
+    /* The grid that stores the internal state of the game, and its size */
+    private BitBoard board;
+    private final int width;
+    private final int height;
+
+    /* How full rows are cleared, and the rows from before a compaction */
+    private final LineClearMode lineClearMode;
+    private final long[] compactedRows;
+
+    /* The seed of the game and the generator of its random choices */
+    private final long seed;
+    private final SplitMix64 random;
+
+    /*
+     * The manages possible colors for the pieces.
+     * Every piece color is a nibble of the order, counted from FIRST_PIECE_COLOR. The lowest
+     * bankSize nibbles are the bank, the colors not drawn since it was refilled, in order, and
+     * the nibbles above them are the colors drawn since then, in the order they were drawn.
+     */
+    private int colorOrder;
+    private int bankSize;
+
+    /* Receives the changes made to the board */
+    private EngineListener listener;
+
+    /* The piece that is currently in play */
+    private Piece piece;
+
+    /* Picks the types of the pieces, and the types it picked, next first */
+    private final PieceGenerator generator;
+    private final PieceType[] preview;
+
+    /* The number of pieces that have been put in play and the number of rows cleared */
+    private long pieces;
+    private long lines;
+
+    /*
+     * The squares above cleared rows while they fall: the mask of every row lifted, counted
+     * from the top of the board, the highest row lifted, the number of rows lifted counted
+     * from the top of the board (0 when no rows are falling) and the number of rows they
+     * have fallen.
+     */
+    private final long[] avalancheRows;
+    private int avalancheTop;
+    private int avalancheHeight;
+    private int avalancheDrop;
+
+    /* The number of ticks since the piece last fell */
+    private int fallTicks;
+
+    /* If true then bypasses FALL_SPEED and moves piece down on the next tick. */
+    private boolean drop;
+
+    /* The game ignores ticks and actions (other than PAUSE) while paused. */
+    private boolean pause;
+
+    /* If true the squares the piece would land on are reported with GHOST_COLOR */
+    private boolean ghost;
+
+    /* The state of the game */
+    private boolean gameOn;
+
+    /**
+     * Creates a new game with a random seed on an empty board with the first piece ready
+     * to fall.
+     */
+    public TetrisEngine () {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a new game that clears rows with {@code LineClearMode.AVALANCHE} on an empty
+     * board with the first piece ready to fall.
+     * @param seed the seed of the random piece types and colors.
+     */
+    public TetrisEngine (long seed) {
+        this(seed, LineClearMode.AVALANCHE);
+    }
+
+    /**
+     * Creates a new game on an empty board of the default size with the first piece ready
+     * to fall.
+     * @param seed the seed of the random piece types and colors.
+     * @param lineClearMode how full rows are cleared.
+     */
+    public TetrisEngine (long seed, LineClearMode lineClearMode) {
+        this(seed, lineClearMode, HORIZONTAL_SPACES, VERTICAL_SPACES);
+    }
+
+    /**
+     * Creates a new game on an empty board with the first piece ready to fall.
+     * @param seed the seed of the random piece types and colors.
+     * @param lineClearMode how full rows are cleared.
+     * @param width the number of columns, from {@code MIN_SPACES} to
+     * {@code BitBoard.MAX_WIDTH}.
+     * @param height the number of rows, at least {@code MIN_SPACES}.
+     * @throws IllegalArgumentException if either dimension is out of range.
+     */
+    public TetrisEngine (long seed, LineClearMode lineClearMode, int width, int height) {
+        this(seed, lineClearMode, width, height, new UniformGenerator(), 1);
+    }
+
+    /**
+     * Creates a new game on an empty board with the first piece ready to fall and the preview
+     * queue filled.
+     * @param seed the seed of the random piece types and colors.
+     * @param lineClearMode how full rows are cleared.
+     * @param width the number of columns, from {@code MIN_SPACES} to
+     * {@code BitBoard.MAX_WIDTH}.
+     * @param height the number of rows, at least {@code MIN_SPACES}.
+     * @param generator picks the types of the pieces, owned by this game from now on.
+     * @param previewDepth the number of types in the preview queue, from 1 to
+     * {@code MAX_PREVIEW}.
+     * @throws IllegalArgumentException if a dimension or the preview depth is out of range.
+     */
+    public TetrisEngine (long seed, LineClearMode lineClearMode, int width, int height,
+        PieceGenerator generator, int previewDepth) {
+        if (width < MIN_SPACES || height < MIN_SPACES) {
+            throw new IllegalArgumentException("Invalid board size: " + width + "x" + height);
+        }
+        if (previewDepth < 1 || previewDepth > MAX_PREVIEW) {
+            throw new IllegalArgumentException("Invalid preview depth: " + previewDepth);
+        }
+        this.seed = seed;
+        this.lineClearMode = lineClearMode;
+        this.width = width;
+        this.height = height;
+        this.compactedRows = new long[height];
+        this.random = new SplitMix64(seed);
+        this.board = new BitBoard(width, height);
+        this.listener = NO_LISTENER;
+        this.initPieceColors();
+        this.fallTicks = 0;
+        this.drop = false;
+        this.pause = false;
+        this.ghost = false;
+        this.gameOn = true;
+        this.avalancheRows = new long[height];
+        this.avalancheHeight = 0;
+        this.avalancheDrop = 0;
+        this.pieces = 0;
+        this.lines = 0;
+        this.generator = generator;
+        this.preview = new PieceType[previewDepth];
+        for (int i = 0; i < previewDepth; i++) {
+            this.preview[i] = generator.next(this.random);
+        }
+        this.selectPiece();
+    }
+
+    /* Constructor Helper Methods*/
+
+    /**
+     * Helper Method for constuctor.
+     * Initalizes the color bank to keep track of which colors are aready present on the
+     * board.
+     */
+    private void initPieceColors () {
+        this.colorOrder = 0;
+        for (int i = 0; i < PIECE_COLORS; i++) {
+            this.colorOrder |= i << (4 * i);
+        }
+        this.bankSize = PIECE_COLORS;
+    }
+
+    /* Playing the game */
+
+    /**
+     * Applies a player action to the piece in play.
+     * Actions other than {@code Action.PAUSE} are ignored while the game is paused,
+     * over, or while cleared rows are still falling.
+     * @param action the action taken.
+     * @return true if the action changed the game; false otherwise.
+     */
+    public boolean step (Action action) {
+        if (!this.gameOn) {
+            return false;
+        } else if (action == Action.PAUSE) {
+            this.pause = !this.pause;
+            this.listener.pauseChanged(this.pause);
+            return true;
+        } else if (this.pause || this.avalancheHeight > 0) {
+            return false;
+        }
+        switch (action) {
+        case LEFT:
+            return this.piece.move(-1, 0);
+        case RIGHT:
+            return this.piece.move(1, 0);
+        case DOWN:
+            this.drop = true;
+            return true;
+        case HARD_DROP:
+            this.piece.drop();
+            this.fallTicks = 0;
+            this.drop = false;
+            this.lockPiece();
+            return true;
+        case ROTATE_CW:
+            return this.piece.rotate(1);
+        case ROTATE_CCW:
+            return this.piece.rotate(-1);
+        default:
+            return false;
+        } //switch
+    }
+
+    /**
+     * Advances the game by one tick.
+     * Moves the piece down every {@code FALL_SPEED} ticks (or on the next tick after
+     * {@code Action.DOWN}). When the piece lands full rows are cleared and the squares above
+     * them fall one row per tick before the next piece is selected.
+     * @return true if the game is still on; false if the game is over.
+     */
+    public boolean tick () {
+        if (!this.gameOn || this.pause) {
+            return this.gameOn;
+        }
+        if (this.avalancheHeight > 0) {
+            if (!this.fallAvalanche()) {
+                this.landAvalanche();
+                this.nextPiece();
+            }
+            return this.gameOn;
+        }
+        this.fallTicks++;
+        if (this.drop || this.fallTicks >= FALL_SPEED) {
+            this.fallTicks = 0;
+            this.drop = false;
+            if (!this.piece.move(0, 1)) {
+                this.lockPiece();
+            }
+        }
+        return this.gameOn;
+    }
+
+    /**
+     * Helper method for tick() and step()
+     * Makes the landed piece part of the board and clears any full rows, then selects the
+     * next piece unless squares are left to fall. Reports a {@code PieceLockEvent} and a
+     * {@code LineClearEvent} to Flight Recorder when they are enabled.
+     */
+    private void lockPiece () {
+        this.mark(this.piece.cells, this.piece.originX, this.piece.originY, Marker.STATIC);
+        this.listener.pieceLocked(this.piece.type, this.piece.orientation, this.piece.originX,
+            this.piece.originY);
+        PieceLockEvent lock = new PieceLockEvent();
+        if (lock.shouldCommit()) {
+            lock.type = this.piece.type.name();
+            lock.orientation = this.piece.orientation;
+            lock.originX = this.piece.originX;
+            lock.originY = this.piece.originY;
+            lock.commit();
+        }
+
+        LineClearEvent clear = new LineClearEvent();
+        clear.begin();
+        long lines = this.lines;
+        boolean falling = this.manageBoard();
+        clear.end();
+        if (clear.shouldCommit()) {
+            clear.rows = (int) (this.lines - lines);
+            clear.mode = this.lineClearMode.name();
+            clear.falling = falling;
+            clear.commit();
+        }
+        if (this.lines > lines) {
+            this.listener.linesCleared((int) (this.lines - lines));
+        }
+        if (!falling) {
+            this.nextPiece();
+        }
+    }
+
+    /**
+     * Helper method for tick()
+     * Selects the next piece to fall and ends the game if it has nowhere to go.
+     */
+    private void nextPiece () {
+        this.selectPiece();
+        this.listener.previewChanged();
+        this.gameOn = this.piece.isValidSpaces();
+        if (!this.gameOn) {
+            this.listener.gameOver();
+        } else {
+            this.piece.showGhost();
+        }
+    }
+
+    /**
+     * Puts a piece of the next type in play and adds a type from the generator to the end of
+     * the preview queue.
+     * The piece object is reused for every piece after the first.
+     */
+    private void selectPiece () {
+        PieceType type = this.preview[0];
+        System.arraycopy(this.preview, 1, this.preview, 0, this.preview.length - 1);
+        this.preview[this.preview.length - 1] = this.generator.next(this.random);
+        this.pieces++;
+        this.listener.pieceSpawned(type, this.pieces);
+        if (this.piece == null) {
+            this.piece = new Piece(type);
+        } else {
+            this.piece.spawn(type);
+        }
+        PieceSpawnEvent spawn = new PieceSpawnEvent();
+        if (spawn.shouldCommit()) {
+            spawn.type = type.name();
+            spawn.count = this.pieces;
+            spawn.commit();
+        }
+    }
+
+    /**
+     * Selects a random color from the colorBank without repeating
+     * until all colors have been used.
+     * @return the color.
+     */
+    private int selectColor () {
+        if (this.bankSize == 0) {
+            // the used colors, in the order they were drawn, become the bank
+            this.bankSize = PIECE_COLORS;
+        }
+        int shift = 4 * this.random.nextInt(this.bankSize);
+        int select = (this.colorOrder >>> shift) & 0xF;
+        // move the color from the bank to the end of the used colors
+        long above = (this.colorOrder & 0xFFFFFFFFL) >>> (shift + 4);
+        this.colorOrder = (this.colorOrder & ((1 << shift) - 1)) | (int) (above << shift)
+            | select << (4 * (PIECE_COLORS - 1));
+        this.bankSize--;
+        return FIRST_PIECE_COLOR + select;
+    }
+
+    /* Board Mutators */
+
+    /**
+     * Clears any row that is full.
+     * With {@code LineClearMode.AVALANCHE} the filled in squares above the highest full row
+     * are lifted so they can fall, with {@code LineClearMode.COMPACT} the rows above the full
+     * rows are shifted down at once.
+     * Package-private so the benchmarks can measure it.
+     * @return true if squares are falling; false if no rows were cleared or there are no
+     * squares above them to fall.
+     */
+    boolean manageBoard () {
+        int fullRows = 0;
+        int topRow = this.height;
+        int lowestRow = -1;
+        boolean compact = this.lineClearMode == LineClearMode.COMPACT;
+        RowStatus status = RowStatus.PARTIAL;
+        int top = this.board.getTop();
+        for (int row = this.height - 1; row >= top && status != RowStatus.EMPTY; row--) {
+            status = this.checkRow(row);
+            if (status == RowStatus.FULL) {
+                if (!compact) {
+                    this.clearRow(row);
+                }
+                fullRows++;
+                topRow = row;
+                lowestRow = Math.max(lowestRow, row);
+            }
+        }
+        if (fullRows == 0) {
+            return false;
+        }
+        this.lines += fullRows;
+        if (compact) {
+            this.compactRows(lowestRow, fullRows);
+            return false;
+        }
+        return this.createAvalanche(topRow) > 0;
+    }
+
+    /**
+     * Marks the squares of a piece with a specified marker and reports the new color of the
+     * squares to the listener. Squares above the top of the board are left out.
+     * @param cells the coordinates of the squares relative to the origin of the piece.
+     * @param originX the column of the origin.
+     * @param originY the row of the origin.
+     * @param marker the {@code Marker} that will be places at the squares on {@code board}
+     * @param color the color of the squares
+     */
+    private void markAndPaint (int[][] cells, int originX, int originY, Marker marker,
+        int color) {
+        int x, y;
+        for (int row = 0; row < cells.length; row++) {
+            x = cells[row][0] + originX;
+            y = cells[row][1] + originY;
+            if (y >= 0) {
+                this.board.set(x, y, marker);
+                this.listener.squareChanged(x, y, color);
+            }
+        }
+    }
+
+    /**
+     * Marks the squares of a piece on the {@code board} with the designted {@code Marker}.
+     * @param cells the coordinates of the squares relative to the origin of the piece.
+     * @param originX the column of the origin.
+     * @param originY the row of the origin.
+     * @param marker the {@code Marker} that will be added at the location
+     */
+    private void mark (int[][] cells, int originX, int originY, Marker marker) {
+        int x, y;
+        for (int row = 0; row < cells.length; row++) {
+            x = cells[row][0] + originX;
+            y = cells[row][1] + originY;
+            if (x < this.width && x >= 0 && y < this.height && y >= 0) {
+                this.board.set(x, y, marker);
+            } //if
+        } //for
+    } //mark
+
+    /**
+     * Marks the squares of a row mask with a specified marker and reports the new color of
+     * the squares to the listener.
+     * @param row the row of the squares.
+     * @param mask the squares, bit {@code x} for column {@code x}.
+     * @param marker the {@code Marker} that will be places at the squares on {@code board}
+     * @param color the color of the squares
+     */
+    private void markAndPaintRow (int row, long mask, Marker marker, int color) {
+        this.board.markRow(row, mask, marker);
+        this.paintRow(row, mask, color);
+    }
+
+    /**
+     * Reports the new color of the squares of a row mask to the listener.
+     * @param row the row of the squares.
+     * @param mask the squares, bit {@code x} for column {@code x}.
+     * @param color the color of the squares
+     */
+    private void paintRow (int row, long mask, int color) {
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            this.listener.squareChanged(Long.numberOfTrailingZeros(bits), row, color);
+        }
+    }
+
+    /* ManageBoard() helper methods */
+
+    /**
+     * Helper method for ManageBoard()
+     * Clears the {@code board} at a specified row.
+     * Marks {@code board} with {@code Marker.EMPTY} on this row.
+     * @param row the row that is to be cleared.
+     */
+    private void clearRow (int row) {
+        this.markAndPaintRow(row, this.board.getFullRow(), Marker.EMPTY, EMPTY_COLOR);
+    }
+
+    /**
+     * Helper method for ManageBoard()
+     * Checks if a row is full.
+     * Specifically, checks if a row stored in {@code board} contains no {@code Marker.EMPTY}.
+     * @param row the row that is to be checked.
+     * @return the status of the row (FULL, EMPTY, PARTIAL).
+     */
+    RowStatus checkRow (int row) {
+        return this.board.rowStatus(row);
+    }
+
+    /**
+     * Helper method for ManageBoard()
+     * Lifts all of the spaces marked {@code Marker.STATIC} above the specified row into the
+     * avalanche, changing them to {@code Marker.DYNAMIC} so they can fall.
+     * @param row the row below the lifted squares.
+     * @return the number of squares lifted, no rows are falling if it is 0.
+     */
+    int createAvalanche (int row) {
+        int squares = 0;
+        this.avalancheTop = Math.min(this.board.getTop(), row);
+        for (int y = this.avalancheTop; y < row; y++) {
+            long mask = this.board.getStaticRow(y);
+            this.avalancheRows[y] = mask;
+            squares += Long.bitCount(mask);
+            this.markAndPaintRow(y, mask, Marker.DYNAMIC, EMPTY_COLOR);
+        }
+        this.avalancheHeight = (squares == 0) ? 0 : row; //an empty avalanche would fall forever
+        this.avalancheDrop = 0;
+        return squares;
+    }
+
+    /**
+     * Helper method for ManageBoard()
+     * Removes the full rows and shifts the rows above them down with one row copy each.
+     * Only the squares that changed are reported to the listener, the squares that moved
+     * take the {@code PILE_COLOR} like squares that fell in an avalanche.
+     * @param lowestRow the lowest full row, no row below it changes.
+     * @param count the number of full rows.
+     */
+    private void compactRows (int lowestRow, int count) {
+        int top = this.board.getTop();
+        for (int y = top; y <= lowestRow; y++) {
+            this.compactedRows[y] = this.board.getStaticRow(y);
+        }
+        this.board.compactFullRows();
+        for (int y = top; y <= lowestRow; y++) {
+            long before = this.compactedRows[y];
+            long after = this.board.getStaticRow(y);
+            this.paintRow(y, before & ~after, EMPTY_COLOR);
+            this.paintRow(y, after, PILE_COLOR);
+        }
+        this.listener.rowsCleared(lowestRow, count);
+    }
+
+    /* Avalanche helper methods */
+
+    /**
+     * Helper method for tick()
+     * Moves the squares above the cleared rows down one row if none of them would land on a
+     * {@code Marker.STATIC} square or below the board.
+     * @return true if the squares fell; false if they have landed.
+     */
+    private boolean fallAvalanche () {
+        for (int y = this.avalancheTop; y < this.avalancheHeight; y++) {
+            long mask = this.avalancheRows[y];
+            int below = y + this.avalancheDrop + 1;
+            if (mask != 0 && (below >= this.height
+                || (mask & this.board.getStaticRow(below)) != 0)) {
+                return false;
+            }
+        }
+        for (int y = this.avalancheTop; y < this.avalancheHeight; y++) {
+            this.markAndPaintRow(y + this.avalancheDrop, this.avalancheRows[y], Marker.EMPTY,
+                EMPTY_COLOR);
+        }
+        this.avalancheDrop++;
+        for (int y = this.avalancheTop; y < this.avalancheHeight; y++) {
+            this.markAndPaintRow(y + this.avalancheDrop, this.avalancheRows[y], Marker.DYNAMIC,
+                PILE_COLOR);
+        }
+        return true;
+    }
+
+    /**
+     * Helper method for tick()
+     * Marks the landed squares above the cleared rows with {@code Marker.STATIC}.
+     */
+    private void landAvalanche () {
+        for (int y = this.avalancheTop; y < this.avalancheHeight; y++) {
+            this.board.markRow(y + this.avalancheDrop, this.avalancheRows[y], Marker.STATIC);
+        }
+        this.avalancheHeight = 0;
+    }
+
+    /* Saving the game */
+
+    /**
+     * Writes the state of the game, everything needed to continue it exactly, to a buffer.
+     * The state is always {@code getStateBytes()} bytes: the generator, the counters, the
+     * flags, the preview queue and the state of the piece generator, the piece in play, the
+     * color bank, the extent of the squares falling above cleared rows, and both planes and
+     * the falling squares of every row. A state can only be read by a game with the same
+     * kind of piece generator and the same preview depth.
+     * The state can be saved between any two ticks, including while cleared rows are falling.
+     * @param buffer the buffer, {@code getStateBytes()} bytes are written at its position.
+     */
+    public void writeState (ByteBuffer buffer) {
+        buffer.putLong(this.random.getState());
+        buffer.putLong(this.pieces);
+        buffer.putLong(this.lines);
+        buffer.putInt(this.fallTicks);
+        buffer.put((byte) ((this.drop ? DROP_FLAG : 0) | (this.pause ? PAUSE_FLAG : 0)
+            | (this.gameOn ? GAME_ON_FLAG : 0)));
+        for (int i = 0; i < MAX_PREVIEW; i++) {
+            buffer.put((byte) ((i < this.preview.length) ? this.preview[i].ordinal() : -1));
+        }
+        buffer.putLong(this.generator.getState());
+        buffer.put((byte) this.piece.type.ordinal());
+        buffer.put((byte) this.piece.orientation);
+        buffer.put((byte) this.piece.color);
+        buffer.putInt(this.piece.originX);
+        buffer.putInt(this.piece.originY);
+        buffer.putInt(this.colorOrder);
+        buffer.put((byte) this.bankSize);
+        buffer.putInt(this.avalancheTop);
+        buffer.putInt(this.avalancheHeight);
+        buffer.putInt(this.avalancheDrop);
+        for (int y = 0; y < this.height; y++) {
+            buffer.putLong(this.board.getStaticRow(y));
+            buffer.putLong(this.board.getDynamicRow(y));
+            buffer.putLong(this.avalancheRows[y]);
+        }
+    }
+
+    /**
+     * Replaces the state of the game with one saved by {@code writeState}.
+     * The seed is not part of the state and stays the same. The listener is not told about
+     * the squares that change, a view has to repaint the whole board afterwards.
+     * @param buffer the buffer, {@code getStateBytes()} bytes are read from its position.
+     */
+    public void readState (ByteBuffer buffer) {
+        this.random.setState(buffer.getLong());
+        this.pieces = buffer.getLong();
+        this.lines = buffer.getLong();
+        this.fallTicks = buffer.getInt();
+        int flags = buffer.get();
+        this.drop = (flags & DROP_FLAG) != 0;
+        this.pause = (flags & PAUSE_FLAG) != 0;
+        this.gameOn = (flags & GAME_ON_FLAG) != 0;
+        for (int i = 0; i < MAX_PREVIEW; i++) {
+            int next = buffer.get();
+            if (i < this.preview.length) {
+                this.preview[i] = PieceType.PIECES.get(next);
+            }
+        }
+        this.generator.setState(buffer.getLong());
+        PieceType type = PieceType.PIECES.get(buffer.get());
+        int orientation = buffer.get();
+        int color = buffer.get();
+        int originX = buffer.getInt();
+        int originY = buffer.getInt();
+        this.colorOrder = buffer.getInt();
+        this.bankSize = buffer.get();
+        this.avalancheTop = buffer.getInt();
+        this.avalancheHeight = buffer.getInt();
+        this.avalancheDrop = buffer.getInt();
+        for (int y = 0; y < this.height; y++) {
+            this.board.setRow(y, buffer.getLong(), buffer.getLong());
+            this.avalancheRows[y] = buffer.getLong();
+        }
+        this.piece.set(type, orientation, originX, originY, color);
+    }
+
+    /**
+     * Saves the state of the game to a new array, for callers that keep a few states rather
+     * than reusing a buffer.
+     * @return the state, as written by {@code writeState}.
+     */
+    public byte[] saveState () {
+        byte[] state = new byte[this.getStateBytes()];
+        this.writeState(ByteBuffer.wrap(state));
+        return state;
+    }
+
+    /**
+     * Replaces the state of the game with one saved by {@code saveState}.
+     * @param state the state.
+     * @throws IllegalArgumentException if the state is for a board of another height.
+     */
+    public void restoreState (byte[] state) {
+        if (state.length != this.getStateBytes()) {
+            throw new IllegalArgumentException("State is for another board: " + state.length
+                + " bytes");
+        }
+        this.readState(ByteBuffer.wrap(state));
+    }
+
+    /**
+     * Gets the number of bytes {@code writeState} writes for a game on a board of a height.
+     * @param height the number of rows of the board.
+     * @return the size of the state.
+     */
+    public static int stateBytes (int height) {
+        return STATE_HEADER_BYTES + 3 * height * Long.BYTES;
+    }
+
+    /**
+     * Gets the number of bytes {@code writeState} writes for this game.
+     * @return the size of the state.
+     */
+    public int getStateBytes () {
+        return stateBytes(this.height);
+    }
+
+    /* Getter methods */
+
+    /**
+     * Sets the listener that is told about changes to the game.
+     * @param listener the listener, or null to stop reporting changes.
+     */
+    public void setListener (EngineListener listener) {
+        this.listener = (listener == null) ? NO_LISTENER : listener;
+    }
+
+    /**
+     * Shows or hides the ghost piece: the squares the piece in play would land on if it
+     * dropped straight down, reported to the listener with {@code GHOST_COLOR} whenever the
+     * piece moves sideways or rotates. Off by default.
+     * @param ghost true to show the ghost piece.
+     */
+    public void setGhost (boolean ghost) {
+        boolean showing = this.gameOn && this.avalancheHeight == 0;
+        if (showing && this.ghost && !ghost) {
+            this.piece.hideGhost();
+        }
+        this.ghost = ghost;
+        if (showing && ghost) {
+            this.piece.showGhost();
+        }
+    }
+
+    /**
+     * Gets the grid that stores the internal state of the game.
+     * @return the board.
+     */
+    public BitBoard getBoard () {
+        return this.board;
+    }
+
+    /**
+     * Gets the piece that is currently in play.
+     * @return the piece in play.
+     */
+    public Piece getPiece () {
+        return this.piece;
+    }
+
+    /**
+     * Gets the Zobrist hash of the position: the {@code Marker.STATIC} squares of the board
+     * and the type and orientation of the piece in play.
+     * The board's part is kept up to date by every {@code mark} and {@code markAndPaint} as
+     * squares change, so the grid is never hashed from scratch.
+     * @return the hash.
+     */
+    public long getHash () {
+        return this.board.getHash() ^ Zobrist.piece(this.piece.type, this.piece.orientation);
+    }
+
+    /**
+     * Gets the type of the piece that will be played after the current one.
+     * @return the type of the next piece.
+     */
+    public PieceType getNextType () {
+        return this.preview[0];
+    }
+
+    /**
+     * Gets a type from the preview queue, without drawing anything.
+     * @param index the position in the queue, 0 for the next piece.
+     * @return the type of the piece played {@code index + 1} pieces after the current one.
+     */
+    public PieceType getPreview (int index) {
+        return this.preview[index];
+    }
+
+    /**
+     * Gets the number of types in the preview queue.
+     * @return the preview depth.
+     */
+    public int getPreviewDepth () {
+        return this.preview.length;
+    }
+
+    /**
+     * Gets the generator that picks the types of the pieces.
+     * @return the generator.
+     */
+    public PieceGenerator getGenerator () {
+        return this.generator;
+    }
+
+    /**
+     * Gets the number of pieces that have been put in play, including the current one.
+     * Changes exactly when a new piece is put in play.
+     * @return the number of pieces.
+     */
+    public long getPieceCount () {
+        return this.pieces;
+    }
+
+    /**
+     * Gets the number of rows cleared since the game started.
+     * @return the number of rows.
+     */
+    public long getLineCount () {
+        return this.lines;
+    }
+
+    /**
+     * Gets the seed the random choices of the game are drawn from.
+     * @return the seed.
+     */
+    public long getSeed () {
+        return this.seed;
+    }
+
+    /**
+     * Gets how the game clears full rows.
+     * @return the line clear mode.
+     */
+    public LineClearMode getLineClearMode () {
+        return this.lineClearMode;
+    }
+
+    /**
+     * Checks if cleared rows are still falling, during which there is no piece to control.
+     * @return true if the squares above cleared rows are falling; false otherwise.
+     */
+    public boolean isClearing () {
+        return this.avalancheHeight > 0;
+    }
+
+    /**
+     * Checks if the game is still being played.
+     * @return true if the game is on; false if it is over.
+     */
+    public boolean isGameOn () {
+        return this.gameOn;
+    }
+
+    /**
+     * Checks if the game is paused.
+     * @return true if the game is paused; false otherwise.
+     */
+    public boolean isPaused () {
+        return this.pause;
+    }
+
+    /* Utility methods */
+
+    /**
+     * Copies a 2D int array
+     * @param arr the 2D int array to be copied
+     * @return the copied 2D int array.
+     */
+    public static int[][] copy2D (int[][] arr) {
+        int[][] clone = new int[arr.length][0];
+        for (int row = 0; row < arr.length; row++) {
+            clone[row] = Arrays.copyOf(arr[row], arr[row].length);
+        }
+        return clone;
+    }
+
+    /* Innner Classes */
+
+    /**
+     * An object that represents the chunck of squares
+     * falling on the board. Stores the position, orientation and color of the piece and
+     * performs the actual operations that enable the chucnk of squares to rotate and move.
+     * The squares are never stored: they are the cells of the orientation in the
+     * {@code RotationTable} offset by the origin, so moving and rotating only changes a few
+     * ints and tests the new position against the board before committing to it.
+     */
+    public class Piece {
+
+        /* The cells of the orientation, shared with the {@code RotationTable} */
+        private int[][] cells;
+
+        /* The color of the piece */
+        private int color;
+
+        /* The type of the piece */
+        private PieceType type;
+
+        /* The orientation of the piece (see {@code RotationTable}) */
+        private int orientation;
+
+        /* The position of the origin that the squares of the orientation are relative to */
+        private int originX;
+        private int originY;
+
+        /* The row the origin would land on, where the ghost piece was last shown */
+        private int ghostY;
+
+        /**
+         * Creates a new Piece of a certain type.
+         * @param type the type of piece that is created.
+         */
+        public Piece (PieceType type) {
+            this.spawn(type);
+        }
+
+        /**
+         * Turns the piece into a new piece of a certain type at the top of the board.
+         * @param type the type of the new piece.
+         */
+        void spawn (PieceType type) {
+            this.set(type, 0, 0, 0, selectColor());
+        }
+
+        /**
+         * Places the piece, without checking the position or marking the board.
+         * @param type the type of the piece.
+         * @param orientation the orientation of the piece.
+         * @param originX the column of the origin of the piece.
+         * @param originY the row of the origin of the piece.
+         * @param color the color of the piece.
+         */
+        void set (PieceType type, int orientation, int originX, int originY, int color) {
+            this.type = type;
+            this.orientation = orientation;
+            this.originX = originX;
+            this.originY = originY;
+            this.color = color;
+            this.cells = RotationTable.getCells(type, orientation);
+        }
+
+        /* Controling the piece */
+
+        /**
+         * Rotates the piece 90 degrees clockwise.
+         * Each of the wall kicks for the rotation is tried in order until one of them
+         * puts the piece in a valid location.
+         * @param the number of rotations. Negative values rotate counter-clockwise.
+         * @return true if the rotation is valid (successful); false otherwise.
+         */
+        public boolean rotate(int rotations) {
+            if (this.type.getPivotNum() == 0) {
+                return false;
+            }
+            int to = RotationTable.rotate(this.orientation, rotations);
+            int[][] rotated = RotationTable.getCells(this.type, to);
+            int[][] kicks = RotationTable.getKicks(this.type, this.orientation, rotations);
+            for (int i = 0; i < kicks.length; i++) {
+                int x = this.originX + kicks[i][0];
+                int y = this.originY + kicks[i][1];
+                if (board.fits(rotated, x, y)) {
+                    this.hideGhost();
+                    markAndPaint(this.cells, this.originX, this.originY, Marker.EMPTY,
+                        EMPTY_COLOR);
+                    this.cells = rotated;
+                    this.orientation = to;
+                    this.originX = x;
+                    this.originY = y;
+                    markAndPaint(this.cells, x, y, Marker.DYNAMIC, this.color);
+                    this.showGhost();
+                    listener.pieceRotated(rotations, to);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves the piece linearly (i.e. left, right, down, up, diagonaly)
+         * A piece moving straight down keeps its ghost piece, and never uncovers it.
+         * @param x the amount the piece should move in the x direction.
+         * @param y the amount the piece should move in the y direction.
+         * @return true if the move is valid (successful); false otherwise.
+         */
+        public boolean move (int x, int y) {
+            if (!board.fits(this.cells, this.originX + x, this.originY + y)) {
+                return false;
+            }
+            boolean sideways = x != 0 || y < 0;
+            if (sideways) {
+                this.hideGhost();
+            }
+            markAndPaint(this.cells, this.originX, this.originY, Marker.EMPTY, EMPTY_COLOR);
+            this.originX += x;
+            this.originY += y;
+            markAndPaint(this.cells, this.originX, this.originY, Marker.DYNAMIC, this.color);
+            if (sideways) {
+                this.showGhost();
+            }
+            listener.pieceMoved(x, y);
+            return true;
+        }
+
+        /**
+         * Moves the piece straight down to where it lands in a single move, reading the
+         * landing row from the skyline of the board.
+         * @return the number of rows the piece moved.
+         */
+        public int drop () {
+            int rows = board.dropRow(this.cells, this.originX, this.originY) - this.originY;
+            if (rows > 0) {
+                this.move(0, rows);
+            }
+            return rows;
+        }
+
+        /* Helper methods for the ghost piece */
+
+        /**
+         * Finds where the piece would land and reports those squares with
+         * {@code GHOST_COLOR}, if the ghost piece is shown.
+         */
+        void showGhost () {
+            if (ghost) {
+                this.ghostY = board.dropRow(this.cells, this.originX, this.originY);
+                this.paintGhost(GHOST_COLOR);
+            }
+        }
+
+        /**
+         * Reports the squares of the ghost piece with {@code EMPTY_COLOR}, if the ghost piece
+         * is shown. Must be called before the piece changes its cells or column.
+         */
+        void hideGhost () {
+            if (ghost) {
+                this.paintGhost(EMPTY_COLOR);
+            }
+        }
+
+        /**
+         * Reports the empty squares of the ghost piece to the listener.
+         * Squares taken by the piece itself are left to the piece.
+         * @param color the color reported.
+         */
+        private void paintGhost (int color) {
+            int x, y;
+            for (int i = 0; i < this.cells.length; i++) {
+                x = this.cells[i][0] + this.originX;
+                y = this.cells[i][1] + this.ghostY;
+                if (y >= 0 && board.get(x, y) == Marker.EMPTY) {
+                    listener.squareChanged(x, y, color);
+                }
+            }
+        }
+
+        /* Helper methods for controling the pieces */
+
+        /**
+         * Checks if the spaces of the current piece is a valid location.
+         * If the piece is out of bounds, on a taken space then the location is invalid.
+         * @return true if location is valid; false otherwise.
+         */
+        public boolean isValidSpaces() {
+            return board.fits(this.cells, this.originX, this.originY);
+        }
+
+        /* Getter methods */
+
+        /**
+         * Gets the coordinates of the squares of this piece.
+         * Allocates a new array, the engine itself never calls it.
+         * @return a new array of the spaces of this piece.
+         */
+        public int[][] getSpaces () {
+            int[][] spaces = new int[this.cells.length][2];
+            for (int row = 0; row < this.cells.length; row++) {
+                spaces[row][0] = this.cells[row][0] + this.originX;
+                spaces[row][1] = this.cells[row][1] + this.originY;
+            }
+            return spaces;
+        }
+
+        /**
+         * Gets the color of the piece.
+         * @return the color of the piece
+         */
+        public int getColor () {
+            return this.color;
+        }
+
+        /**
+         * Gets the type of the piece.
+         * @return the type of the piece.
+         */
+        public PieceType getType () {
+            return this.type;
+        }
+
+        /**
+         * Gets the orientation of the piece.
+         * @return the orientation (see {@code RotationTable}).
+         */
+        public int getOrientation () {
+            return this.orientation;
+        }
+
+        /**
+         * Gets the column of the origin the squares of the orientation are relative to.
+         * @return the column of the origin.
+         */
+        public int getOriginX () {
+            return this.originX;
+        }
+
+        /**
+         * Gets the row of the origin the squares of the orientation are relative to.
+         * @return the row of the origin.
+         */
+        public int getOriginY () {
+            return this.originY;
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+package cgs.engine;
+
+/**
+ * Picks every type with the same probability, independently of the types before it, so the
+ * same type can come up many times in a row. It keeps no state.
+ */
+public class UniformGenerator implements PieceGenerator {
+
+    /**
+     * Draws a random type.
+     * @param random the game's random generator.
+     * @return the type.
+     */
+    @Override
+    public PieceType next (SplitMix64 random) {
+        return PieceType.randomPieceType(random);
+    }
+
+    /**
+     * Gets the state of the generator, which has none.
+     * @return 0.
+     */
+    @Override
+    public long getState () {
+        return 0;
+    }
+
+    /**
+     * Does nothing, the generator has no state.
+     * @param state ignored.
+     */
+    @Override
+    public void setState (long state) {
+    }
+
+    /**
+     * Gets the code of the generator.
+     * @return {@code UNIFORM}.
+     */
+    @Override
+    public int getCode () {
+        return UNIFORM;
+    }
+
+}
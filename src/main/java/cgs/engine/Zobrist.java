@@ -0,0 +1,63 @@
+package cgs.engine;
+
+/**
+ * The random keys of Zobrist hashing, which hashes a game position as the exclusive or of one
+ * key per feature of the position: one per taken square of the board and one for the type and
+ * orientation of the piece in play. Adding or removing a feature is a single exclusive or, so
+ * a hash can be kept up to date as the position changes instead of being recomputed.
+ *
+ * The keys are the {@code SplitMix64} scramble of the index of the feature rather than a
+ * stored table, so boards of any size share them and two hashes of the same position always
+ * match, in any game.
+ */
+public final class Zobrist {
+
+    /* Separates the keys of the different kinds of features */
+    private static final long SQUARE_SALT = 0x5A0B21575C0AB1E5L;
+    private static final long PIECE_SALT = 0x3C6EF372FE94F82BL;
+
+    /* The odd step between the indices of neighbouring features */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Not instantiable, only holds the keys.
+     */
+    private Zobrist () {
+    }
+
+    /**
+     * Gets the key of a taken square.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @return the key.
+     */
+    public static long square (int x, int y) {
+        return SplitMix64.mix64(SQUARE_SALT + ((long) y * BitBoard.MAX_WIDTH + x) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Gets the key of the piece in play.
+     * @param type the type of the piece.
+     * @param orientation the orientation of the piece.
+     * @return the key.
+     */
+    public static long piece (PieceType type, int orientation) {
+        return SplitMix64.mix64(PIECE_SALT
+            + ((long) type.ordinal() * RotationTable.ORIENTATIONS + orientation) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Gets the key of a row of taken squares.
+     * @param row the row of the squares.
+     * @param mask the squares, bit {@code x} for column {@code x}.
+     * @return the exclusive or of the keys of the squares.
+     */
+    public static long row (int row, long mask) {
+        long key = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            key ^= square(Long.numberOfTrailingZeros(bits), row);
+        }
+        return key;
+    }
+
+}
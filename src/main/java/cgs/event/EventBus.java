@@ -0,0 +1,314 @@
+package cgs.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A stream of game events from the game thread to any number of consumer threads, such as
+ * scoring, sounds and statistics, that must never hold up a tick.
+ *
+ * Events are written into a ring of slots allocated once, a slot per event holding its kind
+ * and values as longs, so publishing an event creates no objects and never waits: once the
+ * ring is full the oldest events are overwritten. Every consumer reads the ring from its own
+ * position on its own thread, in batches of whatever has been published since its last
+ * read, and a consumer that falls a whole ring behind skips ahead and counts the events it
+ * lost.
+ *
+ * Each slot is guarded like a seqlock: its stamp is odd while the publisher writes it and
+ * even once the event in it is whole, and a consumer only keeps an event if the stamp it
+ * read before the values is the stamp of that event and is unchanged after them. Every
+ * value of a slot is an element of an {@code AtomicLongArray}, written with
+ * {@code lazySet} and read with {@code get}, so the stamps and values are seen in the order
+ * they were written without any fences beyond plain loads and stores on x86.
+ *
+ * Events must be published by one thread at a time, such as the threads holding the lock
+ * that guards the game.
+ */
+public final class EventBus {
+
+    /* The default number of events the ring holds */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /* The longs of a slot, a cache line: stamp, nanos, kind, type, x, y, orientation, count */
+    private static final int SLOT_LONGS = 8;
+    private static final int STAMP = 0;
+    private static final int NANOS = 1;
+    private static final int KIND = 2;
+    private static final int TYPE = 3;
+    private static final int X = 4;
+    private static final int Y = 5;
+    private static final int ORIENTATION = 6;
+    private static final int COUNT = 7;
+
+    /* The most events a consumer delivers before it looks for newer ones */
+    private static final int MAX_BATCH = 256;
+
+    /* How long an idle consumer sleeps before it looks for events again */
+    private static final long IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    /* The capacity less one, the capacity is a power of two */
+    private final int mask;
+
+    /* The slots of the ring */
+    private final AtomicLongArray slots;
+
+    /* The number of events published, only written by the publisher */
+    private final AtomicLong cursor;
+
+    /* The sequence of the next event to publish, only used by the publisher */
+    private long next;
+
+    /* The consumers reading the bus */
+    private final List<Consumer> consumers;
+
+    /**
+     * Creates a bus with {@code DEFAULT_CAPACITY} slots.
+     */
+    public EventBus () {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a bus.
+     * @param capacity the most events a consumer can fall behind without losing any,
+     * rounded up to a power of two.
+     */
+    public EventBus (int capacity) {
+        if (capacity <= 0 || capacity > (1 << 26)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.slots = new AtomicLongArray(size * SLOT_LONGS);
+        this.cursor = new AtomicLong();
+        this.consumers = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Publishes an event. Must only be called by one thread at a time.
+     * @param kind what happened.
+     * @param type the ordinal of the piece type, -1 for none.
+     * @param x the first position value.
+     * @param y the second position value.
+     * @param orientation the orientation value.
+     * @param count the count value.
+     */
+    public void publish (EventKind kind, int type, int x, int y, int orientation, long count) {
+        long sequence = this.next;
+        int base = (int) (sequence & this.mask) * SLOT_LONGS;
+        this.slots.lazySet(base + STAMP, 2 * sequence + 1);
+        this.slots.lazySet(base + NANOS, System.nanoTime());
+        this.slots.lazySet(base + KIND, kind.code());
+        this.slots.lazySet(base + TYPE, type);
+        this.slots.lazySet(base + X, x);
+        this.slots.lazySet(base + Y, y);
+        this.slots.lazySet(base + ORIENTATION, orientation);
+        this.slots.lazySet(base + COUNT, count);
+        this.slots.lazySet(base + STAMP, 2 * sequence + 2);
+        this.next = sequence + 1;
+        this.cursor.lazySet(sequence + 1);
+    }
+
+    /**
+     * Starts a consumer thread that passes the events published from now on to a handler.
+     * @param name the name of the consumer, used for its thread.
+     * @param handler receives the events.
+     * @return the consumer, to be closed once it is no longer needed.
+     */
+    public Consumer addConsumer (String name, EventHandler handler) {
+        Consumer consumer = new Consumer(name, handler);
+        this.consumers.add(consumer);
+        consumer.thread.start();
+        return consumer;
+    }
+
+    /**
+     * Closes every consumer, once each has delivered the events published so far.
+     */
+    public void close () {
+        for (Consumer consumer : this.consumers) {
+            consumer.close();
+        }
+    }
+
+    /**
+     * Reads an event from its slot.
+     * @param sequence the sequence of the event, already published.
+     * @param event the event to fill in.
+     * @return true if the event was read whole, false if it has been overwritten.
+     */
+    private boolean read (long sequence, GameEvent event) {
+        int base = (int) (sequence & this.mask) * SLOT_LONGS;
+        long stamp = 2 * sequence + 2;
+        if (this.slots.get(base + STAMP) != stamp) {
+            return false;
+        }
+        long nanos = this.slots.get(base + NANOS);
+        long kind = this.slots.get(base + KIND);
+        long type = this.slots.get(base + TYPE);
+        long x = this.slots.get(base + X);
+        long y = this.slots.get(base + Y);
+        long orientation = this.slots.get(base + ORIENTATION);
+        long count = this.slots.get(base + COUNT);
+        if (this.slots.get(base + STAMP) != stamp) {
+            return false;
+        }
+        event.set(sequence, nanos, (int) kind, (int) type, (int) x, (int) y, (int) orientation,
+            count);
+        return true;
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of events published so far.
+     * @return the number of events.
+     */
+    public long getPublished () {
+        return this.cursor.get();
+    }
+
+    /**
+     * Gets the number of events the ring holds.
+     * @return the capacity.
+     */
+    public int getCapacity () {
+        return this.mask + 1;
+    }
+
+    /* Innner Classes */
+
+    /**
+     * A thread reading the bus for a handler.
+     */
+    public final class Consumer implements Runnable {
+
+        /* Receives the events */
+        private final EventHandler handler;
+
+        /* The thread reading the bus */
+        private final Thread thread;
+
+        /* The event passed to the handler and the event read ahead of it, swapped in turn */
+        private GameEvent current;
+        private GameEvent ahead;
+
+        /* The sequence of the next event to read */
+        private long position;
+
+        /* The events delivered and lost so far, only written by the consumer thread */
+        private volatile long consumed;
+        private volatile long lost;
+
+        /* Cleared to stop the consumer */
+        private volatile boolean running;
+
+        /**
+         * Creates a consumer that starts at the next event published.
+         * @param name the name of the consumer.
+         * @param handler receives the events.
+         */
+        private Consumer (String name, EventHandler handler) {
+            this.handler = handler;
+            this.current = new GameEvent();
+            this.ahead = new GameEvent();
+            this.position = cursor.get();
+            this.running = true;
+            this.thread = new Thread(this, "events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * To be run in its own thread.
+         * Delivers batches of events until the consumer is closed, sleeping while there are
+         * none, then delivers the events left.
+         */
+        @Override
+        public void run () {
+            while (this.running) {
+                if (this.poll() == 0) {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+            }
+            while (this.poll() > 0) {
+                continue;
+            }
+        }
+
+        /**
+         * Helper method for run()
+         * Delivers the events published since the last poll, at most {@code MAX_BATCH}.
+         * Each event is read before the one ahead of it is delivered, so the last event of
+         * the batch that was read whole is the one marked as the end of the batch.
+         * @return the number of events read, delivered or lost.
+         */
+        private int poll () {
+            long published = cursor.get();
+            if (published - this.position > mask + 1) {
+                this.lost += published - (mask + 1) - this.position;
+                this.position = published - (mask + 1);
+            }
+            int batch = (int) Math.min(published - this.position, MAX_BATCH);
+            boolean pending = false;
+            for (int i = 0; i < batch; i++) {
+                if (!read(this.position + i, this.ahead)) {
+                    this.lost++;
+                    continue;
+                }
+                if (pending) {
+                    this.handler.onEvent(this.current, false);
+                    this.consumed++;
+                }
+                GameEvent read = this.ahead;
+                this.ahead = this.current;
+                this.current = read;
+                pending = true;
+            }
+            if (pending) {
+                this.handler.onEvent(this.current, true);
+                this.consumed++;
+            }
+            this.position += batch;
+            return batch;
+        }
+
+        /**
+         * Stops the consumer once it has delivered the events published so far, and waits
+         * for its thread to end.
+         */
+        public void close () {
+            this.running = false;
+            LockSupport.unpark(this.thread);
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } //try
+        }
+
+        /**
+         * Gets the number of events passed to the handler.
+         * @return the number of events.
+         */
+        public long getConsumed () {
+            return this.consumed;
+        }
+
+        /**
+         * Gets the number of events overwritten before the consumer read them.
+         * @return the number of events.
+         */
+        public long getLost () {
+            return this.lost;
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package cgs.event;
+
+/**
+ * Receives the events of an {@code EventBus} on a consumer thread of its own.
+ * A handler may be as slow as it likes, the game never waits for it, but events it falls
+ * too far behind on are lost (see {@code EventBus.Consumer.getLost()}).
+ */
+public interface EventHandler {
+
+    /**
+     * Called for each event, oldest first.
+     * The event object is reused for the next event, so it must not be kept.
+     * @param event the event.
+     * @param endOfBatch true if this is the last event available for now, a good time to
+     * act on the events of the batch at once.
+     */
+    void onEvent (GameEvent event, boolean endOfBatch);
+
+}
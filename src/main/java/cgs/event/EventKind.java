@@ -0,0 +1,45 @@
+package cgs.event;
+
+/**
+ * The kinds of events a game publishes on an {@code EventBus}.
+ * SPAWNED: a piece was put in play.
+ * MOVED: the piece in play moved, by the player or by falling.
+ * ROTATED: the piece in play rotated.
+ * LOCKED: the piece in play landed and became part of the pile.
+ * LINES_CLEARED: the rows filled by a piece were cleared.
+ * PAUSED and RESUMED: the game was paused or resumed.
+ * GAME_OVER: the game ended.
+ *
+ * Every kind has a small primitive code so it can be stored in the ring without objects.
+ */
+public enum EventKind {
+    SPAWNED, MOVED, ROTATED, LOCKED, LINES_CLEARED, PAUSED, RESUMED, GAME_OVER;
+
+    /* The kinds indexed by their code */
+    private static final EventKind[] CODES = values();
+
+    /**
+     * Gets the primitive code of the kind.
+     * @return the code, from 0 to {@code count() - 1}.
+     */
+    public int code () {
+        return this.ordinal();
+    }
+
+    /**
+     * Gets the kind with a code.
+     * @param code the code of the kind.
+     * @return the kind.
+     */
+    public static EventKind fromCode (int code) {
+        return CODES[code];
+    }
+
+    /**
+     * Gets the number of kinds.
+     * @return the number of kind codes.
+     */
+    public static int count () {
+        return CODES.length;
+    }
+}
@@ -0,0 +1,134 @@
+package cgs.event;
+
+import cgs.engine.EngineListener;
+import cgs.engine.PieceType;
+
+/**
+ * Listens to a {@code TetrisEngine} and publishes what happens to its pieces on an
+ * {@code EventBus}, passing every call on to the listener it stands in front of, so a game
+ * that paints its board can publish its events as well.
+ * Every call runs on the game thread and only writes a slot of the ring.
+ */
+public class EventPublisher implements EngineListener {
+
+    /* The bus the events are published on */
+    private final EventBus bus;
+
+    /* The listener the calls are passed on to */
+    private final EngineListener delegate;
+
+    /**
+     * Creates a publisher.
+     * @param bus the bus the events are published on.
+     * @param delegate the listener the calls are passed on to.
+     */
+    public EventPublisher (EventBus bus, EngineListener delegate) {
+        this.bus = bus;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Passes on a square that changed.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @param color the color of the square.
+     */
+    @Override
+    public void squareChanged (int x, int y, int color) {
+        this.delegate.squareChanged(x, y, color);
+    }
+
+    /**
+     * Passes on rows removed at once.
+     * @param lowestRow the lowest row that was removed.
+     * @param count the number of rows that were removed.
+     */
+    @Override
+    public void rowsCleared (int lowestRow, int count) {
+        this.delegate.rowsCleared(lowestRow, count);
+    }
+
+    /**
+     * Passes on a change of the preview queue.
+     */
+    @Override
+    public void previewChanged () {
+        this.delegate.previewChanged();
+    }
+
+    /**
+     * Publishes a {@code SPAWNED} event.
+     * @param type the type of the piece.
+     * @param count the number of pieces put in play so far.
+     */
+    @Override
+    public void pieceSpawned (PieceType type, long count) {
+        this.bus.publish(EventKind.SPAWNED, type.ordinal(), 0, 0, 0, count);
+        this.delegate.pieceSpawned(type, count);
+    }
+
+    /**
+     * Publishes a {@code MOVED} event.
+     * @param dx the number of columns the piece moved.
+     * @param dy the number of rows the piece moved.
+     */
+    @Override
+    public void pieceMoved (int dx, int dy) {
+        this.bus.publish(EventKind.MOVED, -1, dx, dy, 0, 0);
+        this.delegate.pieceMoved(dx, dy);
+    }
+
+    /**
+     * Publishes a {@code ROTATED} event.
+     * @param rotations the number of clockwise rotations.
+     * @param orientation the orientation of the piece after the rotation.
+     */
+    @Override
+    public void pieceRotated (int rotations, int orientation) {
+        this.bus.publish(EventKind.ROTATED, -1, 0, 0, orientation, rotations);
+        this.delegate.pieceRotated(rotations, orientation);
+    }
+
+    /**
+     * Publishes a {@code LOCKED} event.
+     * @param type the type of the piece.
+     * @param orientation the orientation of the piece.
+     * @param originX the column of the origin of the piece.
+     * @param originY the row of the origin of the piece.
+     */
+    @Override
+    public void pieceLocked (PieceType type, int orientation, int originX, int originY) {
+        this.bus.publish(EventKind.LOCKED, type.ordinal(), originX, originY, orientation, 0);
+        this.delegate.pieceLocked(type, orientation, originX, originY);
+    }
+
+    /**
+     * Publishes a {@code LINES_CLEARED} event.
+     * @param count the number of rows cleared.
+     */
+    @Override
+    public void linesCleared (int count) {
+        this.bus.publish(EventKind.LINES_CLEARED, -1, 0, 0, 0, count);
+        this.delegate.linesCleared(count);
+    }
+
+    /**
+     * Publishes a {@code PAUSED} or {@code RESUMED} event.
+     * @param paused true if the game is now paused.
+     */
+    @Override
+    public void pauseChanged (boolean paused) {
+        this.bus.publish(paused ? EventKind.PAUSED : EventKind.RESUMED, -1, 0, 0, 0, 0);
+        this.delegate.pauseChanged(paused);
+    }
+
+    /**
+     * Publishes a {@code GAME_OVER} event.
+     */
+    @Override
+    public void gameOver () {
+        this.bus.publish(EventKind.GAME_OVER, -1, 0, 0, 0, 0);
+        this.delegate.gameOver();
+    }
+
+}
@@ -0,0 +1,146 @@
+package cgs.event;
+
+import cgs.engine.PieceType;
+
+/**
+ * An event read from an {@code EventBus}, passed to an {@code EventHandler}.
+ * Each consumer reuses a single event object, refilled from the ring for every event, so
+ * reading events creates no objects either.
+ *
+ * The meaning of the values depends on the kind of the event:
+ * <ul>
+ * <li>{@code SPAWNED}: the piece type, and the number of pieces put in play as the count.</li>
+ * <li>{@code MOVED}: the columns and rows moved as x and y.</li>
+ * <li>{@code ROTATED}: the clockwise rotations as the count, and the new orientation.</li>
+ * <li>{@code LOCKED}: the piece type, its orientation, and its origin as x and y.</li>
+ * <li>{@code LINES_CLEARED}: the number of rows cleared as the count.</li>
+ * </ul>
+ * Values an event does not use are 0, and the piece type is null.
+ */
+public final class GameEvent {
+
+    /* The piece types indexed by ordinal, without cloning values() for every event */
+    private static final PieceType[] TYPES = PieceType.values();
+
+    /* The position of the event in the stream, and when it was published */
+    private long sequence;
+    private long nanos;
+
+    /* What happened */
+    private EventKind kind;
+
+    /* The values of the event, see the class comment */
+    private int type;
+    private int x;
+    private int y;
+    private int orientation;
+    private long count;
+
+    /**
+     * Creates an empty event, filled by its consumer.
+     */
+    GameEvent () {
+    }
+
+    /**
+     * Fills in the event from a slot of the ring.
+     * @param sequence the position of the event in the stream.
+     * @param nanos the {@code System.nanoTime} at which the event was published.
+     * @param kind the code of the kind of the event.
+     * @param type the ordinal of the piece type, -1 for none.
+     * @param x the first position value.
+     * @param y the second position value.
+     * @param orientation the orientation value.
+     * @param count the count value.
+     */
+    void set (long sequence, long nanos, int kind, int type, int x, int y, int orientation,
+        long count) {
+        this.sequence = sequence;
+        this.nanos = nanos;
+        this.kind = EventKind.fromCode(kind);
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.orientation = orientation;
+        this.count = count;
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the position of the event in the stream of its bus, counting from 0.
+     * Gaps in the sequence are events the consumer lost.
+     * @return the sequence number.
+     */
+    public long getSequence () {
+        return this.sequence;
+    }
+
+    /**
+     * Gets when the event was published.
+     * @return the {@code System.nanoTime} at publication.
+     */
+    public long getNanos () {
+        return this.nanos;
+    }
+
+    /**
+     * Gets what happened.
+     * @return the kind of the event.
+     */
+    public EventKind getKind () {
+        return this.kind;
+    }
+
+    /**
+     * Gets the type of the piece of a {@code SPAWNED} or {@code LOCKED} event.
+     * @return the type, null for other events.
+     */
+    public PieceType getPieceType () {
+        return (this.type < 0) ? null : TYPES[this.type];
+    }
+
+    /**
+     * Gets the columns moved, or the column of a locked piece.
+     * @return the x value.
+     */
+    public int getX () {
+        return this.x;
+    }
+
+    /**
+     * Gets the rows moved, or the row of a locked piece.
+     * @return the y value.
+     */
+    public int getY () {
+        return this.y;
+    }
+
+    /**
+     * Gets the orientation of a rotated or locked piece.
+     * @return the orientation.
+     */
+    public int getOrientation () {
+        return this.orientation;
+    }
+
+    /**
+     * Gets the pieces put in play, the rotations or the rows cleared.
+     * @return the count value.
+     */
+    public long getCount () {
+        return this.count;
+    }
+
+    /**
+     * Describes the event for logging.
+     * @return the kind and values of the event.
+     */
+    @Override
+    public String toString () {
+        return this.sequence + " " + this.kind + " type=" + this.getPieceType() + " x="
+            + this.x + " y=" + this.y + " orientation=" + this.orientation + " count="
+            + this.count;
+    }
+
+}
@@ -0,0 +1,83 @@
+package cgs.event;
+
+/**
+ * Keeps the score of a game from its events, off the game thread.
+ * Cleared rows score {@code LINE_SCORES} points for one to four rows at once, times the
+ * level, and every {@code LINES_PER_LEVEL} rows go up a level. The score can be read from
+ * any thread, and a callback is run once per batch of events that changed it.
+ */
+public class ScoreKeeper implements EventHandler {
+
+    /* The points for clearing one, two, three and four rows at once on the first level */
+    public static final int[] LINE_SCORES = new int[] {100, 300, 500, 800};
+
+    /* The rows cleared to go up a level */
+    public static final int LINES_PER_LEVEL = 10;
+
+    /* Run after a batch of events that changed the score */
+    private final Runnable onChange;
+
+    /* The score and rows so far, only written by the consumer thread */
+    private volatile long score;
+    private volatile long lines;
+
+    /* Set by an event that changed the score until the end of its batch */
+    private boolean changed;
+
+    /**
+     * Creates a score keeper.
+     * @param onChange run on the consumer thread after a batch of events that changed the
+     * score, null for none.
+     */
+    public ScoreKeeper (Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /**
+     * Adds the points of cleared rows.
+     * @param event the event.
+     * @param endOfBatch true if this is the last event of the batch.
+     */
+    @Override
+    public void onEvent (GameEvent event, boolean endOfBatch) {
+        if (event.getKind() == EventKind.LINES_CLEARED) {
+            int rows = (int) Math.min(event.getCount(), LINE_SCORES.length);
+            this.score += LINE_SCORES[rows - 1] * this.getLevel();
+            this.lines += event.getCount();
+            this.changed = true;
+        }
+        if (endOfBatch && this.changed) {
+            this.changed = false;
+            if (this.onChange != null) {
+                this.onChange.run();
+            }
+        }
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the score.
+     * @return the points scored so far.
+     */
+    public long getScore () {
+        return this.score;
+    }
+
+    /**
+     * Gets the rows cleared.
+     * @return the number of rows cleared so far.
+     */
+    public long getLines () {
+        return this.lines;
+    }
+
+    /**
+     * Gets the level, from the rows cleared.
+     * @return the level, starting at 1.
+     */
+    public long getLevel () {
+        return 1 + this.lines / LINES_PER_LEVEL;
+    }
+
+}
@@ -0,0 +1,571 @@
+package cgs.net;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts many headless games in one process for clients connected over TCP, speaking the
+ * framing described in {@code Protocol}.
+ *
+ * The sessions are split between shards, one per core by default. Each shard is a thread
+ * with its own {@code Selector} that reads, ticks and writes only its own sessions, so games
+ * never migrate between threads and nothing is locked while they play. The first shard also
+ * accepts connections and hands them out to the shards in turn.
+ * Each session gets an id, and a client that sends {@code WATCH} with an id is handed to the
+ * shard of that session and subscribed to its {@code SpectatorFeed}. Ids are dealt out so
+ * that the shard of a session is its id modulo the number of shards.
+ * A shard ticks every game it hosts on a fixed schedule, {@code tickHz} times a second, in the
+ * time between selects. Like a {@code GameLoop} it catches up on a few late ticks and skips
+ * the rest, and it measures how much of each tick period was spent ticking games, which is
+ * how close the shard is to the most sessions it can host at that rate.
+ * A connection that fails to be accepted or registered is closed on its own, and only a
+ * failure of its selector stops a shard.
+ */
+public class GameServer {
+
+    /* The default port, tick rate and number of late ticks caught up */
+    public static final int DEFAULT_PORT = 7777;
+    public static final int DEFAULT_TICK_HZ = 20;
+    public static final int MAX_CATCH_UP = 5;
+
+    /* The socket connections are accepted on */
+    private final ServerSocketChannel acceptor;
+
+    /* The shards and their threads */
+    private final Shard[] shards;
+    private final Thread[] threads;
+
+    /* The length of a tick */
+    private final long tickNanos;
+
+    /* The number of ticks between keyframes of the spectator feeds */
+    private final int keyframeInterval;
+
+    /* Cleared to stop every shard */
+    private volatile boolean running;
+
+    /**
+     * Creates a server, bound but not yet running, whose spectator feeds send a keyframe
+     * every {@code SpectatorFeed.DEFAULT_KEYFRAME_INTERVAL} ticks.
+     * @param address the address to accept connections on.
+     * @param shards the number of shard threads, at least 1.
+     * @param tickHz the number of ticks a second of every game.
+     * @throws IOException if the address cannot be bound.
+     */
+    public GameServer (InetSocketAddress address, int shards, int tickHz) throws IOException {
+        this(address, shards, tickHz, SpectatorFeed.DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Creates a server, bound but not yet running.
+     * @param address the address to accept connections on.
+     * @param shards the number of shard threads, at least 1.
+     * @param tickHz the number of ticks a second of every game.
+     * @param keyframeInterval the number of ticks between keyframes of the spectator feeds.
+     * @throws IOException if the address cannot be bound.
+     */
+    public GameServer (InetSocketAddress address, int shards, int tickHz, int keyframeInterval)
+        throws IOException {
+        if (shards < 1 || tickHz < 1 || keyframeInterval < 1) {
+            throw new IllegalArgumentException("Invalid shards, tick rate or keyframe interval");
+        }
+        this.tickNanos = TimeUnit.SECONDS.toNanos(1) / tickHz;
+        this.keyframeInterval = keyframeInterval;
+        this.acceptor = ServerSocketChannel.open();
+        this.acceptor.bind(address, 1024);
+        this.acceptor.configureBlocking(false);
+        this.shards = new Shard[shards];
+        this.threads = new Thread[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i, Selector.open());
+            this.threads[i] = new Thread(this.shards[i], "tetris-shard-" + i);
+        }
+        this.acceptor.register(this.shards[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Main entry-point into the server.
+     * Arguments: [port [shards [tickHz]]], by default {@code DEFAULT_PORT}, a shard per core
+     * and {@code DEFAULT_TICK_HZ}. The server only listens on the loopback address and prints
+     * its load every 5 seconds until it is killed.
+     * @param args the comand-line arguments.
+     * @throws IOException if the port cannot be bound.
+     * @throws InterruptedException if the main thread is interrupted.
+     */
+    public static void main (String[] args) throws IOException, InterruptedException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int shards = (args.length > 1) ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+        int tickHz = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_TICK_HZ;
+
+        GameServer server = new GameServer(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), shards, tickHz);
+        server.start();
+        System.out.println("Server port=" + server.getPort() + " shards=" + shards
+            + " tickHz=" + tickHz);
+        while (true) {
+            Thread.sleep(5000);
+            System.out.println(server);
+        }
+    }
+
+    /**
+     * Starts the shard threads.
+     */
+    public void start () {
+        this.running = true;
+        for (Thread thread : this.threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the shard threads, closing every session, and waits for them to finish.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void stop () throws InterruptedException {
+        this.running = false;
+        for (Shard shard : this.shards) {
+            shard.selector.wakeup();
+        }
+        for (Thread thread : this.threads) {
+            thread.join();
+        }
+        try {
+            this.acceptor.close();
+        } catch (IOException e) {
+            // nothing is accepted either way
+        } //try
+    }
+
+    /**
+     * Closes a connection that failed before it joined a session.
+     * @param channel the connection.
+     */
+    private static void closeQuietly (SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the connection is dropped either way
+        } //try
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the port connections are accepted on.
+     * @return the port.
+     */
+    public int getPort () {
+        return this.acceptor.socket().getLocalPort();
+    }
+
+    /**
+     * Gets the number of sessions connected.
+     * @return the number of sessions of every shard.
+     */
+    public int getSessions () {
+        int sessions = 0;
+        for (Shard shard : this.shards) {
+            sessions += shard.sessionCount;
+        }
+        return sessions;
+    }
+
+    /**
+     * Gets the number of spectators watching sessions.
+     * @return the number of spectators of every shard.
+     */
+    public int getSpectators () {
+        int spectators = 0;
+        for (Shard shard : this.shards) {
+            spectators += shard.spectatorCount;
+        }
+        return spectators;
+    }
+
+    /**
+     * Describes the load of the server for logging: the sessions and spectators, the share
+     * of the tick periods the busiest shard spent ticking games since the last call, the
+     * longest tick, and the ticks skipped and frames dropped so far.
+     * @return the load of the server.
+     */
+    @Override
+    public String toString () {
+        double load = 0;
+        long maxTick = 0;
+        long skipped = 0;
+        long dropped = 0;
+        for (Shard shard : this.shards) {
+            load = Math.max(load, shard.takeLoad());
+            maxTick = Math.max(maxTick, shard.maxTickNanos);
+            skipped += shard.skippedTicks;
+            dropped += shard.droppedFrames;
+        }
+        int sessions = this.getSessions();
+        return String.format("sessions=%d perShard=%d spectators=%d load=%.1f%% maxTick=%.2fms"
+            + " skipped=%d dropped=%d", sessions, sessions / this.shards.length,
+            this.getSpectators(), 100 * load, maxTick / 1e6, skipped, dropped);
+    }
+
+    /* Inner Classes */
+
+    /**
+     * A thread's share of the sessions, with the selector of their connections.
+     */
+    private class Shard implements Runnable {
+
+        /* The index of the shard */
+        private final int index;
+
+        /* Reports the connections of the shard's sessions, and of the acceptor for shard 0 */
+        private final Selector selector;
+
+        /* The sessions hosted by the shard and their ids, only touched by its thread */
+        private final List<Session> sessions;
+        private final Map<Long, Session> byId;
+
+        /* The number of sessions the shard has started */
+        private long started;
+
+        /* Connections handed over by other shards, waiting to be registered */
+        private final Queue<SocketChannel> pending;
+        private final Queue<Handoff> watchers;
+
+        /* Scratch space for the bytes spectators send, which are ignored */
+        private final ByteBuffer discard;
+
+        /* The shard the next accepted connection goes to, only used by shard 0 */
+        private int nextShard;
+
+        /* The acceptor's key while accepting is paused until the next tick, only for shard 0 */
+        private SelectionKey pausedAcceptor;
+
+        /* Load statistics, only written by the shard's thread */
+        private volatile int sessionCount;
+        private volatile int spectatorCount;
+        private volatile long busyNanos;
+        private volatile long maxTickNanos;
+        private volatile long skippedTicks;
+        private volatile long droppedFrames;
+
+        /* The busy time and clock when the load was last taken, only used by the reader */
+        private long lastBusyNanos;
+        private long lastLoadNanos;
+
+        /**
+         * Creates a shard with no sessions.
+         * @param index the index of the shard.
+         * @param selector the selector of the shard.
+         */
+        Shard (int index, Selector selector) {
+            this.index = index;
+            this.selector = selector;
+            this.sessions = new ArrayList<>();
+            this.byId = new HashMap<>();
+            this.pending = new ConcurrentLinkedQueue<>();
+            this.watchers = new ConcurrentLinkedQueue<>();
+            this.discard = ByteBuffer.allocate(Session.IN_BYTES);
+            this.lastLoadNanos = System.nanoTime();
+        }
+
+        /**
+         * To be run in its own thread.
+         * Handles ready connections until the next tick is due, runs it, and repeats until
+         * the server stops.
+         */
+        @Override
+        public void run () {
+            long deadline = System.nanoTime() + tickNanos;
+            try {
+                while (running) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait > 0) {
+                        this.selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                    } else {
+                        this.selector.selectNow();
+                    }
+                    this.handleReady();
+                    this.registerPending();
+                    long late = System.nanoTime() - deadline;
+                    if (late >= 0) {
+                        if (late > MAX_CATCH_UP * tickNanos) {
+                            this.skippedTicks += late / tickNanos;
+                            deadline += (late / tickNanos) * tickNanos;
+                        }
+                        this.tick();
+                        this.resumeAccepting();
+                        deadline += tickNanos;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                for (Session session : this.sessions) {
+                    session.close();
+                }
+                try {
+                    this.selector.close();
+                } catch (IOException e) {
+                    // the shard is stopping either way
+                } //try
+            } //try
+        }
+
+        /**
+         * Helper method for run()
+         * Accepts, reads or writes every connection the selector reported ready.
+         */
+        private void handleReady () {
+            Iterator<SelectionKey> ready = this.selector.selectedKeys().iterator();
+            while (ready.hasNext()) {
+                SelectionKey key = ready.next();
+                ready.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    this.accept(key);
+                    continue;
+                }
+                if (key.attachment() instanceof SpectatorFeed.Subscriber) {
+                    SpectatorFeed.Subscriber subscriber =
+                        (SpectatorFeed.Subscriber) key.attachment();
+                    if (key.isReadable()) {
+                        subscriber.read(this.discard);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        subscriber.flush();
+                    }
+                    continue;
+                }
+                Session session = (Session) key.attachment();
+                if (key.isReadable()) {
+                    session.read();
+                    if (session.getWatchId() >= 0) {
+                        this.handOff(session);
+                        continue;
+                    }
+                }
+                if (key.isValid() && key.isWritable()) {
+                    session.flush();
+                }
+            }
+        }
+
+        /**
+         * Helper method for handleReady()
+         * Accepts every waiting connection and hands each one to the next shard in turn.
+         * A connection that cannot be set up is closed. If the acceptor fails, such as when
+         * the process runs out of file descriptors, accepting is paused until the next tick
+         * so the shard does not spin on a connection it cannot take yet.
+         * @param key the acceptor's key.
+         */
+        private void accept (SelectionKey key) {
+            while (true) {
+                SocketChannel channel;
+                try {
+                    channel = acceptor.accept();
+                } catch (IOException e) {
+                    key.interestOps(0);
+                    this.pausedAcceptor = key;
+                    return;
+                } //try
+                if (channel == null) {
+                    return;
+                }
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                    continue;
+                } //try
+                Shard shard = shards[this.nextShard];
+                this.nextShard = (this.nextShard + 1) % shards.length;
+                if (shard == this) {
+                    this.register(channel);
+                } else {
+                    shard.pending.offer(channel);
+                    shard.selector.wakeup();
+                }
+            }
+        }
+
+        /**
+         * Helper method for run()
+         * Accepts connections again if the acceptor failed since the last tick.
+         */
+        private void resumeAccepting () {
+            if (this.pausedAcceptor != null) {
+                this.pausedAcceptor.interestOps(SelectionKey.OP_ACCEPT);
+                this.pausedAcceptor = null;
+            }
+        }
+
+        /**
+         * Helper method for handleReady()
+         * Ends a session whose client asked to watch another session and hands its
+         * connection to the shard of that session.
+         * @param session the session.
+         */
+        private void handOff (Session session) {
+            this.byId.remove(session.getId());
+            Handoff handoff = new Handoff(session.detach(), session.getWatchId());
+            Shard shard = shards[(int) (handoff.watchId % shards.length)];
+            shard.watchers.offer(handoff);
+            if (shard != this) {
+                shard.selector.wakeup();
+            }
+        }
+
+        /**
+         * Helper method for run()
+         * Registers the connections handed over by other shards.
+         * @throws IOException if the selector fails.
+         */
+        private void registerPending () throws IOException {
+            SocketChannel channel;
+            while ((channel = this.pending.poll()) != null) {
+                this.register(channel);
+            }
+            if (this.watchers.isEmpty()) {
+                return;
+            }
+            // deregisters the keys of handed off connections that were cancelled on this shard
+            this.selector.selectNow();
+            Handoff handoff;
+            while ((handoff = this.watchers.poll()) != null) {
+                this.subscribe(handoff);
+            }
+        }
+
+        /**
+         * Starts a session for a connection on this shard, or closes the connection if it
+         * cannot be registered.
+         * @param channel the connection, in non-blocking mode.
+         */
+        private void register (SocketChannel channel) {
+            SelectionKey key;
+            try {
+                key = channel.register(this.selector, SelectionKey.OP_READ);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                return;
+            } //try
+            long id = this.started++ * shards.length + this.index;
+            Session session = new Session(id, channel, key, keyframeInterval);
+            this.sessions.add(session);
+            this.byId.put(id, session);
+            this.sessionCount = this.sessions.size();
+        }
+
+        /**
+         * Subscribes a spectator to the feed of a session of this shard, or closes its
+         * connection if the session is gone or the connection cannot be registered.
+         * @param handoff the spectator's connection and the id of the session.
+         */
+        private void subscribe (Handoff handoff) {
+            Session session = this.byId.get(handoff.watchId);
+            if (session == null) {
+                closeQuietly(handoff.channel);
+                return;
+            }
+            SelectionKey key;
+            try {
+                key = handoff.channel.register(this.selector, SelectionKey.OP_READ);
+            } catch (IOException e) {
+                closeQuietly(handoff.channel);
+                return;
+            } //try
+            session.getFeed().subscribe(handoff.channel, key);
+        }
+
+        /**
+         * Helper method for run()
+         * Ticks every game of the shard and drops the sessions that closed.
+         */
+        private void tick () {
+            long start = System.nanoTime();
+            long dropped = 0;
+            int spectators = 0;
+            boolean closed = false;
+            for (int i = 0; i < this.sessions.size(); i++) {
+                Session session = this.sessions.get(i);
+                if (!session.tick()) {
+                    dropped++;
+                }
+                spectators += session.getFeed().getSubscriberCount();
+                closed |= session.isClosed();
+            }
+            if (closed) {
+                this.sessions.removeIf(Session::isClosed);
+                this.byId.values().removeIf(Session::isClosed);
+                this.sessionCount = this.sessions.size();
+            }
+            this.spectatorCount = spectators;
+            long elapsed = System.nanoTime() - start;
+            this.busyNanos += elapsed;
+            this.droppedFrames += dropped;
+            if (elapsed > this.maxTickNanos) {
+                this.maxTickNanos = elapsed;
+            }
+        }
+
+        /**
+         * Gets the share of the time since the last call spent ticking games.
+         * Only called by the thread that logs the load.
+         * @return the load, from 0 to 1.
+         */
+        private double takeLoad () {
+            long now = System.nanoTime();
+            long busy = this.busyNanos;
+            double load = (now == this.lastLoadNanos) ? 0
+                : (double) (busy - this.lastBusyNanos) / (now - this.lastLoadNanos);
+            this.lastBusyNanos = busy;
+            this.lastLoadNanos = now;
+            return load;
+        }
+
+    }
+
+    /**
+     * A spectator's connection on its way to the shard of the session it watches.
+     */
+    private static class Handoff {
+
+        /* The spectator's connection */
+        private final SocketChannel channel;
+
+        /* The id of the session it watches */
+        private final long watchId;
+
+        /**
+         * Creates a handoff.
+         * @param channel the spectator's connection.
+         * @param watchId the id of the session it watches.
+         */
+        Handoff (SocketChannel channel, long watchId) {
+            this.channel = channel;
+            this.watchId = watchId;
+        }
+
+    }
+
+}
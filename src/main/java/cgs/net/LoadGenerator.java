@@ -0,0 +1,402 @@
+package cgs.net;
+
+import cgs.engine.Action;
+import cgs.engine.LineClearMode;
+import cgs.engine.SplitMix64;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens many client connections to a {@code GameServer} from a single thread and plays a game
+ * on each with random actions, restarting games as they end, to measure how many sessions the
+ * server keeps at its tick rate.
+ * Spectators can be added once every player has its session id: each watches a player in
+ * turn and decodes the frames of its feed onto a copy of the board.
+ * Every second it prints the number of connected clients and the {@code STATE} frames and
+ * bytes they received per second; a server keeping up sends each client one frame per tick.
+ */
+public class LoadGenerator {
+
+    /* The default number of actions each client sends a second */
+    public static final int DEFAULT_ACTIONS_PER_SECOND = 4;
+
+    /* The actions clients send, everything but PAUSE */
+    private static final Action[] ACTIONS = {Action.LEFT, Action.RIGHT, Action.DOWN,
+        Action.ROTATE_CW, Action.ROTATE_CCW, Action.HARD_DROP};
+
+    /* The size of the buffers of each client */
+    private static final int BUFFER_BYTES = 16 * 1024;
+
+    /* Reports the connections of every client */
+    private final Selector selector;
+
+    /* The players and the spectators, which are connected once every player has an id */
+    private final Client[] clients;
+    private final Client[] spectators;
+
+    /* The address of the server */
+    private final InetSocketAddress address;
+
+    /* The time between the actions of a client */
+    private final long actionNanos;
+
+    /* Picks the actions and seeds */
+    private final SplitMix64 random;
+
+    /* Totals since the last report, and since the start */
+    private long states;
+    private long bytes;
+    private long feedFrames;
+    private long feedBytes;
+    private long games;
+
+    /**
+     * Connects the players.
+     * @param address the address of the server.
+     * @param clients the number of players.
+     * @param actionsPerSecond the number of actions each player sends a second.
+     * @param spectators the number of spectators.
+     * @throws IOException if a connection cannot be opened.
+     */
+    public LoadGenerator (InetSocketAddress address, int clients, int actionsPerSecond,
+        int spectators) throws IOException {
+        this.selector = Selector.open();
+        this.address = address;
+        this.clients = new Client[clients];
+        this.spectators = new Client[spectators];
+        this.actionNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, actionsPerSecond);
+        this.random = new SplitMix64(System.nanoTime());
+        long now = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            // spread the actions of the players over the interval
+            this.clients[i] = this.connect(now + this.random.nextInt(
+                (int) Math.min(Integer.MAX_VALUE, this.actionNanos)), -1);
+        }
+    }
+
+    /**
+     * Helper method for the constructor and run()
+     * Opens a connection to the server.
+     * @param nextAction the time the first action is due.
+     * @param watchId the id of the session to watch, -1 to play.
+     * @return the client of the connection.
+     * @throws IOException if the connection cannot be opened.
+     */
+    private Client connect (long nextAction, long watchId) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.connect(this.address);
+        SelectionKey key = channel.register(this.selector, SelectionKey.OP_CONNECT);
+        Client client = new Client(channel, key, nextAction, watchId);
+        key.attach(client);
+        return client;
+    }
+
+    /**
+     * Main entry-point into the load generator.
+     * Arguments: port clients [seconds [actionsPerSecond [spectators]]], by default running
+     * until killed with {@code DEFAULT_ACTIONS_PER_SECOND} and no spectators. The server must
+     * be on the loopback address.
+     * @param args the comand-line arguments.
+     * @throws IOException if a connection fails.
+     */
+    public static void main (String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LoadGenerator port clients "
+                + "[seconds [actionsPerSecond [spectators]]]");
+            System.exit(1);
+        }
+        int port = Integer.parseInt(args[0]);
+        int clients = Integer.parseInt(args[1]);
+        long seconds = (args.length > 2) ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+        int actionsPerSecond = (args.length > 3) ? Integer.parseInt(args[3])
+            : DEFAULT_ACTIONS_PER_SECOND;
+        int spectators = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+
+        LoadGenerator generator = new LoadGenerator(new InetSocketAddress("localhost", port),
+            clients, actionsPerSecond, spectators);
+        generator.run(seconds);
+    }
+
+    /**
+     * Plays until a number of seconds have passed, reporting every second.
+     * @param seconds the number of seconds to play.
+     * @throws IOException if a connection fails.
+     */
+    public void run (long seconds) throws IOException {
+        long start = System.nanoTime();
+        long report = start + TimeUnit.SECONDS.toNanos(1);
+        boolean watching = this.spectators.length == 0;
+        for (long elapsed = 0; elapsed < seconds; ) {
+            this.selector.select(10);
+            this.handleReady();
+            long now = System.nanoTime();
+            if (!watching && this.clients.length > 0) {
+                watching = true;
+                for (Client client : this.clients) {
+                    watching &= client.id >= 0;
+                }
+                for (int i = 0; watching && i < this.spectators.length; i++) {
+                    this.spectators[i] = this.connect(0,
+                        this.clients[i % this.clients.length].id);
+                }
+            }
+            for (Client client : this.clients) {
+                if (client.joined && now >= client.nextAction) {
+                    client.nextAction += this.actionNanos;
+                    client.send(Protocol.INPUT,
+                        (byte) ACTIONS[this.random.nextInt(ACTIONS.length)].code());
+                }
+            }
+            if (now >= report) {
+                double interval = (now - report) / 1e9 + 1;
+                int connected = 0;
+                for (Client client : this.clients) {
+                    connected += client.joined ? 1 : 0;
+                }
+                int watchers = 0;
+                for (Client spectator : this.spectators) {
+                    watchers += (spectator != null && spectator.joined) ? 1 : 0;
+                }
+                System.out.println(String.format("clients=%d states/s=%.0f perClient=%.1f"
+                    + " KB/s=%.0f games=%d spectators=%d feedFrames/s=%.0f feedKB/s=%.1f",
+                    connected, this.states / interval,
+                    (connected == 0) ? 0 : this.states / interval / connected,
+                    this.bytes / interval / 1024, this.games, watchers,
+                    this.feedFrames / interval, this.feedBytes / interval / 1024));
+                this.states = 0;
+                this.bytes = 0;
+                this.feedFrames = 0;
+                this.feedBytes = 0;
+                report = now + TimeUnit.SECONDS.toNanos(1);
+                elapsed = TimeUnit.NANOSECONDS.toSeconds(now - start);
+            }
+        }
+        this.selector.close();
+    }
+
+    /**
+     * Helper method for run()
+     * Finishes connecting, reads or writes every connection the selector reported ready.
+     * @throws IOException if a connection fails.
+     */
+    private void handleReady () throws IOException {
+        Iterator<SelectionKey> ready = this.selector.selectedKeys().iterator();
+        while (ready.hasNext()) {
+            SelectionKey key = ready.next();
+            ready.remove();
+            Client client = (Client) key.attachment();
+            if (key.isConnectable()) {
+                client.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                if (client.watchId >= 0) {
+                    client.watch();
+                } else {
+                    client.join(this.random.nextLong());
+                }
+            }
+            if (key.isReadable()) {
+                client.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                client.flush();
+            }
+        }
+    }
+
+    /* Inner Classes */
+
+    /**
+     * One connection to the server and the game played or watched on it.
+     */
+    private class Client {
+
+        /* The connection and its registration with the selector */
+        private final SocketChannel channel;
+        private final SelectionKey key;
+
+        /* Bytes read but not yet parsed, and frames waiting to be written, in write mode */
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+
+        /* The time the next action is due */
+        private long nextAction;
+
+        /* Set once the client has joined or is watching a game */
+        private boolean joined;
+
+        /* The id of the player's session, -1 until the server sends it */
+        private long id;
+
+        /* The id of the session a spectator watches, -1 for a player */
+        private final long watchId;
+
+        /* The colors and width of the board a spectator watches, null for a player */
+        private byte[] colors;
+        private int width;
+
+        /**
+         * Creates a client for a connection.
+         * @param channel the connection, connecting in non-blocking mode.
+         * @param key the registration of the connection.
+         * @param nextAction the time the first action is due.
+         * @param watchId the id of the session to watch, -1 to play.
+         */
+        Client (SocketChannel channel, SelectionKey key, long nextAction, long watchId) {
+            this.channel = channel;
+            this.key = key;
+            this.in = ByteBuffer.allocate(BUFFER_BYTES);
+            this.out = ByteBuffer.allocate(BUFFER_BYTES);
+            this.nextAction = nextAction;
+            this.id = -1;
+            this.watchId = watchId;
+        }
+
+        /**
+         * Starts watching a session.
+         * @throws IOException if the connection fails.
+         */
+        void watch () throws IOException {
+            int at = Protocol.beginFrame(this.out, Protocol.WATCH);
+            Protocol.putVarint(this.out, this.watchId);
+            Protocol.endFrame(this.out, at);
+            this.joined = true;
+            this.flush();
+        }
+
+        /**
+         * Starts a new game on the server.
+         * @param seed the seed of the game.
+         * @throws IOException if the connection fails.
+         */
+        void join (long seed) throws IOException {
+            int at = Protocol.beginFrame(this.out, Protocol.JOIN);
+            this.out.putLong(seed);
+            this.out.put((byte) LineClearMode.AVALANCHE.ordinal());
+            Protocol.endFrame(this.out, at);
+            this.joined = true;
+            this.flush();
+        }
+
+        /**
+         * Sends a one byte frame.
+         * @param type the type of the frame.
+         * @param payload the payload.
+         * @throws IOException if the connection fails.
+         */
+        void send (byte type, byte payload) throws IOException {
+            if (this.out.remaining() < Protocol.HEADER_BYTES + 1) {
+                return;
+            }
+            int at = Protocol.beginFrame(this.out, type);
+            this.out.put(payload);
+            Protocol.endFrame(this.out, at);
+            this.flush();
+        }
+
+        /**
+         * Reads what the server sent, counting the states, starting a new game whenever one
+         * ends and decoding the frames of a watched game.
+         * @throws IOException if the connection fails or the server closed it.
+         */
+        void read () throws IOException {
+            int read = this.channel.read(this.in);
+            if (read < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            if (this.watchId >= 0) {
+                feedBytes += read;
+            } else {
+                bytes += read;
+            }
+            this.in.flip();
+            int length;
+            while ((length = Protocol.completeFrame(this.in)) >= 0) {
+                byte type = this.in.get();
+                this.in.getShort();
+                int end = this.in.position() + length;
+                int limit = this.in.limit();
+                this.in.limit(end);
+                this.handle(type);
+                this.in.limit(limit);
+                this.in.position(end);
+            }
+            this.in.compact();
+        }
+
+        /**
+         * Helper method for read()
+         * Handles one frame from the server.
+         * @param type the type of the frame, whose payload is the rest of {@code in}.
+         * @throws IOException if the frame is unexpected.
+         */
+        private void handle (byte type) throws IOException {
+            switch (type) {
+            case Protocol.STATE:
+                states++;
+                break;
+            case Protocol.WELCOME:
+                this.id = Protocol.getVarint(this.in);
+                break;
+            case Protocol.OVER:
+                games++;
+                this.join(random.nextLong());
+                break;
+            case Protocol.KEYFRAME:
+                ByteBuffer header = this.in.duplicate();
+                Protocol.getVarint(header);
+                this.width = (int) Protocol.getVarint(header);
+                int squares = this.width * (int) Protocol.getVarint(header);
+                if (this.colors == null || this.colors.length != squares) {
+                    this.colors = new byte[squares];
+                }
+                this.applyFeed(type);
+                break;
+            case Protocol.DELTA:
+                this.applyFeed(type);
+                break;
+            default:
+                throw new IOException("Unexpected frame type " + type);
+            } //switch
+        }
+
+        /**
+         * Helper method for handle()
+         * Applies a keyframe or delta of the spectator feed to the colors of the board.
+         * @param type the type of the frame, whose payload is the rest of {@code in}.
+         * @throws IOException if a delta comes before the first keyframe.
+         */
+        private void applyFeed (byte type) throws IOException {
+            if (this.colors == null) {
+                throw new IOException("Delta before the first keyframe");
+            }
+            SpectatorFeed.apply(type, this.in, this.colors, this.width);
+            feedFrames++;
+        }
+
+        /**
+         * Writes as many waiting frames as the socket takes.
+         * @throws IOException if the connection fails.
+         */
+        void flush () throws IOException {
+            this.out.flip();
+            this.channel.write(this.out);
+            this.out.compact();
+            int ops = (this.out.position() > 0)
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (this.joined && this.key.interestOps() != ops) {
+                this.key.interestOps(ops);
+            }
+        }
+
+    }
+
+}
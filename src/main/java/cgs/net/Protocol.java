@@ -0,0 +1,221 @@
+package cgs.net;
+
+import cgs.engine.BitBoard;
+import cgs.engine.TetrisEngine;
+import java.nio.ByteBuffer;
+
+/**
+ * The frames a {@code GameServer} and its clients exchange.
+ *
+ * Every frame starts with a header: a type byte and the length of the payload as an unsigned
+ * short. Clients send:
+ * <ul>
+ * <li>{@code JOIN}: the seed of a new game as a long and the ordinal of its
+ * {@code LineClearMode} as a byte. Starts a new game in the session, replacing any game
+ * already in it.</li>
+ * <li>{@code INPUT}: one byte per action, the {@code Action} codes applied to the game before
+ * its next tick.</li>
+ * <li>{@code WATCH}: the varint id of a session, sent instead of {@code JOIN} to turn the
+ * connection into a spectator of that session's games.</li>
+ * </ul>
+ * The server sends players:
+ * <ul>
+ * <li>{@code WELCOME}: after every {@code JOIN}, the varint id of the session.</li>
+ * <li>{@code STATE}: after every tick of the session's game, varints of the tick, piece and
+ * line counts, a flags byte, the type, orientation, zigzag varint origin, color and next type
+ * of the piece in play, the varint width, height and watermark of the board, then a varint
+ * static mask and a varint dynamic mask for every row from the watermark down.</li>
+ * <li>{@code OVER}: once the game is over, the varint piece and line counts.</li>
+ * </ul>
+ * The server sends spectators (see {@code SpectatorFeed}):
+ * <ul>
+ * <li>{@code KEYFRAME}: varints of the tick, the width and height of the board and its
+ * highest row with a colored square, then the color of every square from that row down,
+ * two to a byte.</li>
+ * <li>{@code DELTA}: the varint tick, then for every row with squares changed by the tick, a
+ * varint of the rows since the previous changed row shifted left once, with the low bit set
+ * if every changed square has the same color, the varint mask of the changed squares, and
+ * either that color as a byte or the color of each changed square, two to a byte.</li>
+ * </ul>
+ * Colors are the engine's color numbers, which all fit in a nibble.
+ * Unsigned varints use 7 bits per byte, low bits first, the same as replay logs.
+ */
+final class Protocol {
+
+    /* The size of a frame header and the longest payload */
+    static final int HEADER_BYTES = 1 + Short.BYTES;
+    static final int MAX_PAYLOAD = 0xFFFF;
+
+    /* The types of frames */
+    static final byte JOIN = 1;
+    static final byte INPUT = 2;
+    static final byte STATE = 3;
+    static final byte OVER = 4;
+    static final byte WATCH = 5;
+    static final byte WELCOME = 6;
+    static final byte KEYFRAME = 7;
+    static final byte DELTA = 8;
+
+    /* The size of a JOIN payload */
+    static final int JOIN_BYTES = Long.BYTES + 1;
+
+    /* The bits of the flags byte of a STATE frame */
+    static final int GAME_ON_FLAG = 1;
+    static final int PAUSE_FLAG = 2;
+    static final int CLEARING_FLAG = 4;
+
+    /* The most bytes a varint takes */
+    static final int MAX_VARINT_BYTES = 10;
+
+    /**
+     * Not instantiable.
+     */
+    private Protocol () {
+    }
+
+    /* Framing */
+
+    /**
+     * Writes the header of a frame whose length is filled in by {@code endFrame}.
+     * @param buffer the buffer to write to.
+     * @param type the type of the frame.
+     * @return the position of the length, to pass to {@code endFrame}.
+     */
+    static int beginFrame (ByteBuffer buffer, byte type) {
+        buffer.put(type);
+        int at = buffer.position();
+        buffer.putShort((short) 0);
+        return at;
+    }
+
+    /**
+     * Fills in the length of a frame once its payload has been written.
+     * @param buffer the buffer the frame was written to.
+     * @param at the position returned by {@code beginFrame}.
+     */
+    static void endFrame (ByteBuffer buffer, int at) {
+        buffer.putShort(at, (short) (buffer.position() - at - Short.BYTES));
+    }
+
+    /**
+     * Gets the length of the payload of the frame at the position of a buffer, if the whole
+     * frame is in the buffer.
+     * @param buffer the buffer, with the frame at its position.
+     * @return the length of the payload, or -1 if the frame is not complete yet.
+     */
+    static int completeFrame (ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES) {
+            return -1;
+        }
+        int length = buffer.getShort(buffer.position() + 1) & MAX_PAYLOAD;
+        return (buffer.remaining() < HEADER_BYTES + length) ? -1 : length;
+    }
+
+    /* Payloads */
+
+    /**
+     * Gets the most bytes a {@code STATE} frame of a game takes, header included.
+     * @param height the number of rows of the board.
+     * @return the size of the largest frame.
+     */
+    static int stateFrameBytes (int height) {
+        return HEADER_BYTES + 8 * MAX_VARINT_BYTES + 5 + 2 * height * MAX_VARINT_BYTES;
+    }
+
+    /**
+     * Writes a {@code STATE} frame.
+     * @param buffer the buffer to write to, with room for {@code stateFrameBytes}.
+     * @param engine the game.
+     * @param tick the number of ticks the game has run.
+     */
+    static void putState (ByteBuffer buffer, TetrisEngine engine, long tick) {
+        int at = beginFrame(buffer, STATE);
+        putVarint(buffer, tick);
+        putVarint(buffer, engine.getPieceCount());
+        putVarint(buffer, engine.getLineCount());
+        buffer.put((byte) ((engine.isGameOn() ? GAME_ON_FLAG : 0)
+            | (engine.isPaused() ? PAUSE_FLAG : 0) | (engine.isClearing() ? CLEARING_FLAG : 0)));
+        TetrisEngine.Piece piece = engine.getPiece();
+        buffer.put((byte) piece.getType().ordinal());
+        buffer.put((byte) piece.getOrientation());
+        putVarint(buffer, zigzag(piece.getOriginX()));
+        putVarint(buffer, zigzag(piece.getOriginY()));
+        buffer.put((byte) piece.getColor());
+        buffer.put((byte) engine.getNextType().ordinal());
+        BitBoard board = engine.getBoard();
+        putVarint(buffer, board.getWidth());
+        putVarint(buffer, board.getHeight());
+        putVarint(buffer, board.getTop());
+        for (int y = board.getTop(); y < board.getHeight(); y++) {
+            putVarint(buffer, board.getStaticRow(y));
+            putVarint(buffer, board.getDynamicRow(y));
+        }
+        endFrame(buffer, at);
+    }
+
+    /**
+     * Writes an {@code OVER} frame.
+     * @param buffer the buffer to write to.
+     * @param engine the game that is over.
+     */
+    static void putOver (ByteBuffer buffer, TetrisEngine engine) {
+        int at = beginFrame(buffer, OVER);
+        putVarint(buffer, engine.getPieceCount());
+        putVarint(buffer, engine.getLineCount());
+        endFrame(buffer, at);
+    }
+
+    /**
+     * Writes a {@code WELCOME} frame.
+     * @param buffer the buffer to write to.
+     * @param id the id of the session.
+     */
+    static void putWelcome (ByteBuffer buffer, long id) {
+        int at = beginFrame(buffer, WELCOME);
+        putVarint(buffer, id);
+        endFrame(buffer, at);
+    }
+
+    /* Varints */
+
+    /**
+     * Writes an unsigned varint.
+     * @param buffer the buffer to write to.
+     * @param value the value, treated as unsigned.
+     */
+    static void putVarint (ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint written by {@code putVarint}.
+     * @param buffer the buffer to read from.
+     * @return the value.
+     * @throws IllegalStateException if the varint is longer than a long.
+     */
+    static long getVarint (ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * Maps a signed int to an unsigned one with small magnitudes staying small.
+     * @param value the value.
+     * @return the zigzag encoding of the value.
+     */
+    static long zigzag (int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+}
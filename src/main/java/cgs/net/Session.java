@@ -0,0 +1,287 @@
+package cgs.net;
+
+import cgs.engine.Action;
+import cgs.engine.LineClearMode;
+import cgs.engine.TetrisEngine;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One client of a {@code GameServer} and the game it plays.
+ * A session belongs to a single shard of the server, and only that shard's thread reads its
+ * socket, applies its input, ticks its game and writes its frames, so a session needs no
+ * locks. Its buffers are allocated once when the client connects.
+ * Every game of the session is streamed to the spectators of its {@code SpectatorFeed}. A
+ * client that asks to watch another session instead of joining is handed over to the shard
+ * of that session by the server.
+ *
+ * Frames the client is too slow to take are dropped rather than queued: a {@code STATE}
+ * frame that does not fit in the outgoing buffer is skipped, the next one replaces it.
+ */
+class Session {
+
+    /* The number of STATE frames the outgoing buffer holds */
+    public static final int BUFFERED_STATES = 4;
+
+    /* The size of the incoming buffer, the longest frame a client may send */
+    public static final int IN_BYTES = 1024;
+
+    /* The id of the session, unique within the server */
+    private final long id;
+
+    /* The connection to the client and its registration with the shard's selector */
+    private final SocketChannel channel;
+    private final SelectionKey key;
+
+    /* Streams the games of the session to its spectators */
+    private final SpectatorFeed feed;
+
+    /* The id of the session the client asked to watch, -1 if it did not */
+    private long watchId;
+
+    /* Bytes read but not yet parsed, and frames waiting to be written, both in write mode */
+    private final ByteBuffer in;
+    private final ByteBuffer out;
+
+    /* The game, null until the client joins */
+    private TetrisEngine engine;
+
+    /* The number of ticks the game has run */
+    private long ticks;
+
+    /* Set once the OVER frame of the game is written */
+    private boolean overSent;
+
+    /* Set once the connection is closed */
+    private boolean closed;
+
+    /**
+     * Creates a session for a connection.
+     * @param id the id of the session.
+     * @param channel the connection, in non-blocking mode.
+     * @param key the registration of the connection for reads.
+     * @param keyframeInterval the number of ticks between keyframes of the spectator feed.
+     */
+    Session (long id, SocketChannel channel, SelectionKey key, int keyframeInterval) {
+        this.id = id;
+        this.channel = channel;
+        this.key = key;
+        this.feed = new SpectatorFeed(keyframeInterval);
+        this.watchId = -1;
+        this.in = ByteBuffer.allocate(IN_BYTES);
+        this.out = ByteBuffer.allocate(BUFFERED_STATES
+            * Protocol.stateFrameBytes(TetrisEngine.VERTICAL_SPACES));
+        key.attach(this);
+    }
+
+    /**
+     * Reads what the client sent and handles every complete frame, stopping at a
+     * {@code WATCH} frame. Closes the session if the client disconnected or broke the
+     * protocol.
+     */
+    void read () {
+        try {
+            if (this.channel.read(this.in) < 0) {
+                this.close();
+                return;
+            }
+        } catch (IOException e) {
+            this.close();
+            return;
+        } //try
+        this.in.flip();
+        int length;
+        while (!this.closed && this.watchId < 0
+            && (length = Protocol.completeFrame(this.in)) >= 0) {
+            byte type = this.in.get();
+            this.in.getShort();
+            int end = this.in.position() + length;
+            this.handle(type, length);
+            this.in.position(end);
+        }
+        this.in.compact();
+        if (!this.in.hasRemaining()) {
+            this.close();
+        }
+        this.flush();
+    }
+
+    /**
+     * Helper method for read()
+     * Handles one frame from the client.
+     * @param type the type of the frame.
+     * @param length the length of its payload, which starts at the position of {@code in}.
+     */
+    private void handle (byte type, int length) {
+        switch (type) {
+        case Protocol.JOIN:
+            if (length != Protocol.JOIN_BYTES) {
+                this.close();
+                return;
+            }
+            long seed = this.in.getLong();
+            int mode = this.in.get();
+            if (mode < 0 || mode >= LineClearMode.values().length) {
+                this.close();
+                return;
+            }
+            this.engine = new TetrisEngine(seed, LineClearMode.values()[mode]);
+            this.engine.setListener(this.feed);
+            this.feed.reset();
+            this.ticks = 0;
+            this.overSent = false;
+            if (this.out.remaining() >= Protocol.HEADER_BYTES + Protocol.MAX_VARINT_BYTES) {
+                Protocol.putWelcome(this.out, this.id);
+            }
+            break;
+        case Protocol.INPUT:
+            for (int i = 0; i < length; i++) {
+                int code = this.in.get();
+                if (code < 0 || code >= Action.count()) {
+                    this.close();
+                    return;
+                }
+                if (this.engine != null) {
+                    this.engine.step(Action.fromCode(code));
+                }
+            }
+            break;
+        case Protocol.WATCH:
+            int limit = this.in.limit();
+            this.in.limit(this.in.position() + length);
+            try {
+                this.watchId = (this.engine == null) ? Protocol.getVarint(this.in) : -1;
+            } catch (RuntimeException e) {
+                this.watchId = -1;
+            } finally {
+                this.in.limit(limit);
+            } //try
+            if (this.watchId < 0) {
+                this.close();
+            }
+            break;
+        default:
+            this.close();
+        } //switch
+    }
+
+    /**
+     * Advances the game by one tick and sends its state, followed by the final counts once
+     * the game has ended and there is room for them. Sessions whose client has not joined,
+     * or whose game is over and reported, do nothing.
+     * @return false if the state was dropped because the client is behind; true otherwise.
+     */
+    boolean tick () {
+        if (this.closed || this.engine == null || this.overSent) {
+            return true;
+        }
+        boolean sent = true;
+        if (this.engine.isGameOn()) {
+            this.engine.tick();
+            this.ticks++;
+            this.feed.publish();
+            sent = this.out.remaining()
+                >= Protocol.stateFrameBytes(this.engine.getBoard().getHeight());
+            if (sent) {
+                Protocol.putState(this.out, this.engine, this.ticks);
+            }
+        }
+        if (!this.engine.isGameOn()
+            && this.out.remaining() >= Protocol.HEADER_BYTES + 2 * Protocol.MAX_VARINT_BYTES) {
+            Protocol.putOver(this.out, this.engine);
+            this.overSent = true;
+        }
+        this.flush();
+        return sent;
+    }
+
+    /**
+     * Writes as many waiting frames as the socket takes, and asks the selector to report
+     * when the socket can take more if any are left.
+     */
+    void flush () {
+        if (this.closed) {
+            return;
+        }
+        this.out.flip();
+        try {
+            this.channel.write(this.out);
+        } catch (IOException e) {
+            this.close();
+            return;
+        } finally {
+            this.out.compact();
+        } //try
+        int ops = (this.out.position() > 0)
+            ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (this.key.interestOps() != ops) {
+            this.key.interestOps(ops);
+        }
+    }
+
+    /**
+     * Closes the connection. The game and its spectators are dropped with it.
+     */
+    void close () {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.feed.close();
+        this.key.cancel();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // the session is gone either way
+        } //try
+    }
+
+    /**
+     * Ends the session without closing its connection, so the connection can be handed to
+     * another shard.
+     * @return the connection.
+     */
+    SocketChannel detach () {
+        this.closed = true;
+        this.feed.close();
+        this.key.cancel();
+        return this.channel;
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the id of the session.
+     * @return the id.
+     */
+    long getId () {
+        return this.id;
+    }
+
+    /**
+     * Gets the id of the session the client asked to watch.
+     * @return the id, or -1 if the client did not ask to watch a session.
+     */
+    long getWatchId () {
+        return this.watchId;
+    }
+
+    /**
+     * Gets the feed that streams the games of the session to its spectators.
+     * @return the feed.
+     */
+    SpectatorFeed getFeed () {
+        return this.feed;
+    }
+
+    /**
+     * Checks if the connection is closed.
+     * @return true if the session is closed; false otherwise.
+     */
+    boolean isClosed () {
+        return this.closed;
+    }
+
+}
@@ -0,0 +1,504 @@
+package cgs.net;
+
+import cgs.engine.EngineListener;
+import cgs.engine.TetrisEngine;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams one game to any number of spectators as the squares that changed on each tick.
+ *
+ * The feed listens to the game's {@code TetrisEngine}, keeping the color of every square and a
+ * mask per row of the squares changed since the last tick. After each tick {@code publish}
+ * encodes the changed rows into a {@code DELTA} frame, or the whole board into a
+ * {@code KEYFRAME} frame every {@code keyframeInterval} ticks (see {@code Protocol}).
+ *
+ * Frames are encoded once into a direct byte ring shared by every subscriber. A subscriber
+ * only keeps the position in the ring it has sent up to and its own view of the ring, and
+ * writes the bytes straight from the ring to its socket, so a frame is never copied per
+ * subscriber. New subscribers start at the latest keyframe, and a subscriber so far behind
+ * that the ring would overwrite bytes it has not sent is disconnected.
+ * The ring is allocated when the first spectator subscribes, and nothing is encoded while
+ * no one is watching.
+ *
+ * A feed belongs to the thread that ticks its game.
+ */
+class SpectatorFeed implements EngineListener {
+
+    /* The default number of ticks between keyframes */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+    /* The size of the byte ring */
+    public static final int RING_BYTES = 64 * 1024;
+
+    /* The size of the board and the ticks between keyframes */
+    private final int width;
+    private final int height;
+    private final int keyframeInterval;
+
+    /* The color of every square, row by row, and the squares changed since the last tick */
+    private final byte[] colors;
+    private final long[] changed;
+    private int lowestChanged;
+    private int highestChanged;
+
+    /* Holds a frame while it is encoded, and the ring it is published to */
+    private ByteBuffer frame;
+    private ByteBuffer ring;
+
+    /*
+     * The positions in the ring, counted from the first byte ever written, of the end of the
+     * last frame and of the start of the last keyframe.
+     */
+    private long written;
+    private long keyframeAt;
+
+    /* The number of ticks since the last keyframe, forces a keyframe when negative */
+    private int sinceKeyframe;
+
+    /* The ticks the game has run */
+    private long ticks;
+
+    /* The spectators */
+    private final List<Subscriber> subscribers;
+
+    /**
+     * Creates a feed for a game of the default size.
+     * @param keyframeInterval the number of ticks between keyframes.
+     */
+    SpectatorFeed (int keyframeInterval) {
+        this(TetrisEngine.HORIZONTAL_SPACES, TetrisEngine.VERTICAL_SPACES, keyframeInterval);
+    }
+
+    /**
+     * Creates a feed.
+     * @param width the number of columns of the game.
+     * @param height the number of rows of the game.
+     * @param keyframeInterval the number of ticks between keyframes.
+     * @throws IllegalArgumentException if a frame of the board could outgrow the ring.
+     */
+    SpectatorFeed (int width, int height, int keyframeInterval) {
+        if (Math.max(keyframeBytes(width, height), deltaBytes(width, height))
+            > Math.min(Protocol.MAX_PAYLOAD, RING_BYTES / 4)) {
+            throw new IllegalArgumentException("Board too large for a spectator feed");
+        }
+        this.width = width;
+        this.height = height;
+        this.keyframeInterval = keyframeInterval;
+        this.colors = new byte[width * height];
+        this.changed = new long[height];
+        this.subscribers = new ArrayList<>();
+        this.reset();
+    }
+
+    /**
+     * Starts the feed over for a new game, on an empty board. The next frame is a keyframe.
+     */
+    void reset () {
+        Arrays.fill(this.colors, (byte) TetrisEngine.EMPTY_COLOR);
+        Arrays.fill(this.changed, 0);
+        this.lowestChanged = -1;
+        this.highestChanged = this.height;
+        this.ticks = 0;
+        this.sinceKeyframe = -1;
+    }
+
+    /* Listening to the game */
+
+    /**
+     * Records the new color of a square.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @param color the color of the square.
+     */
+    @Override
+    public void squareChanged (int x, int y, int color) {
+        this.colors[y * this.width + x] = (byte) color;
+        this.changed[y] |= 1L << x;
+        this.lowestChanged = Math.max(this.lowestChanged, y);
+        this.highestChanged = Math.min(this.highestChanged, y);
+    }
+
+    /* Publishing */
+
+    /**
+     * Ends a tick: encodes the squares changed during it, or the whole board when a keyframe
+     * is due, and sends what it can to every subscriber.
+     */
+    void publish () {
+        this.ticks++;
+        if (this.subscribers.isEmpty()) {
+            this.clearChanged();
+            this.sinceKeyframe = -1;
+            return;
+        }
+        this.frame.clear();
+        if (this.sinceKeyframe < 0 || this.sinceKeyframe >= this.keyframeInterval
+            || this.written - this.keyframeAt > RING_BYTES / 2) {
+            this.keyframeAt = this.written;
+            this.sinceKeyframe = 0;
+            this.putKeyframe();
+        } else {
+            this.sinceKeyframe++;
+            this.putDelta();
+        }
+        this.clearChanged();
+        this.frame.flip();
+        this.append(this.frame);
+        this.flush();
+    }
+
+    /**
+     * Helper method for publish()
+     * Encodes the whole board from the highest row with a colored square down.
+     */
+    private void putKeyframe () {
+        int first = 0;
+        while (first < this.colors.length && this.colors[first] == TetrisEngine.EMPTY_COLOR) {
+            first++;
+        }
+        int firstRow = first / this.width;
+        int at = Protocol.beginFrame(this.frame, Protocol.KEYFRAME);
+        Protocol.putVarint(this.frame, this.ticks);
+        Protocol.putVarint(this.frame, this.width);
+        Protocol.putVarint(this.frame, this.height);
+        Protocol.putVarint(this.frame, firstRow);
+        putNibbles(this.frame, this.colors, firstRow * this.width,
+            (this.height - firstRow) * this.width);
+        Protocol.endFrame(this.frame, at);
+    }
+
+    /**
+     * Helper method for publish()
+     * Encodes the rows with changed squares: the distance from the previous changed row
+     * and a flag set if every changed square has the same color, the mask of the changed
+     * squares, then either that color or the color of every changed square as nibbles.
+     */
+    private void putDelta () {
+        int at = Protocol.beginFrame(this.frame, Protocol.DELTA);
+        Protocol.putVarint(this.frame, this.ticks);
+        int previous = 0;
+        for (int y = this.highestChanged; y <= this.lowestChanged; y++) {
+            long mask = this.changed[y];
+            if (mask == 0) {
+                continue;
+            }
+            int first = y * this.width + Long.numberOfTrailingZeros(mask);
+            boolean uniform = true;
+            for (long bits = mask; bits != 0 && uniform; bits &= bits - 1) {
+                uniform = this.colors[y * this.width + Long.numberOfTrailingZeros(bits)]
+                    == this.colors[first];
+            }
+            Protocol.putVarint(this.frame, (long) (y - previous) << 1 | (uniform ? 1 : 0));
+            Protocol.putVarint(this.frame, mask);
+            if (uniform) {
+                this.frame.put(this.colors[first]);
+            } else {
+                int nibbles = 0;
+                int pair = 0;
+                for (long bits = mask; bits != 0; bits &= bits - 1) {
+                    int color = this.colors[y * this.width + Long.numberOfTrailingZeros(bits)];
+                    pair |= color << (4 * (nibbles & 1));
+                    if ((++nibbles & 1) == 0) {
+                        this.frame.put((byte) pair);
+                        pair = 0;
+                    }
+                }
+                if ((nibbles & 1) != 0) {
+                    this.frame.put((byte) pair);
+                }
+            }
+            previous = y;
+        }
+        Protocol.endFrame(this.frame, at);
+    }
+
+    /**
+     * Helper method for publish()
+     * Forgets the squares changed during the tick.
+     */
+    private void clearChanged () {
+        for (int y = this.highestChanged; y <= this.lowestChanged; y++) {
+            this.changed[y] = 0;
+        }
+        this.lowestChanged = -1;
+        this.highestChanged = this.height;
+    }
+
+    /**
+     * Helper method for publish()
+     * Copies a frame into the ring, wrapping around its end, and disconnects the subscribers
+     * whose unsent bytes it overwrites.
+     * @param source the frame, between its position and limit.
+     */
+    private void append (ByteBuffer source) {
+        int length = source.remaining();
+        long overwritten = this.written + length - RING_BYTES;
+        for (Subscriber subscriber : this.subscribers) {
+            if (subscriber.sent < overwritten) {
+                subscriber.close();
+            }
+        }
+        int offset = (int) (this.written & (RING_BYTES - 1));
+        int first = Math.min(length, RING_BYTES - offset);
+        ByteBuffer target = this.ring.duplicate();
+        target.position(offset);
+        source.limit(source.position() + first);
+        target.put(source);
+        source.limit(source.position() + length - first);
+        target.position(0);
+        target.put(source);
+        this.written += length;
+    }
+
+    /**
+     * Sends what each subscriber can take and drops the subscribers that closed.
+     */
+    void flush () {
+        for (int i = 0; i < this.subscribers.size(); i++) {
+            this.subscribers.get(i).flush();
+        }
+        this.subscribers.removeIf(Subscriber::isClosed);
+    }
+
+    /* Subscribers */
+
+    /**
+     * Adds a spectator, starting from the latest keyframe, or from the next frame if no one
+     * was watching.
+     * @param channel the spectator's connection, in non-blocking mode.
+     * @param key the registration of the connection.
+     * @return the subscriber, attached to the key.
+     */
+    Subscriber subscribe (SocketChannel channel, SelectionKey key) {
+        if (this.ring == null) {
+            this.ring = ByteBuffer.allocateDirect(RING_BYTES);
+            this.frame = ByteBuffer.allocateDirect(RING_BYTES / 4);
+        }
+        long start = (this.subscribers.isEmpty() || this.sinceKeyframe < 0)
+            ? this.written : this.keyframeAt;
+        if (this.subscribers.isEmpty()) {
+            this.sinceKeyframe = -1;
+        }
+        Subscriber subscriber = new Subscriber(channel, key, start);
+        this.subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Disconnects every spectator.
+     */
+    void close () {
+        for (Subscriber subscriber : this.subscribers) {
+            subscriber.close();
+        }
+        this.subscribers.clear();
+    }
+
+    /**
+     * Gets the number of spectators.
+     * @return the number of subscribers.
+     */
+    int getSubscriberCount () {
+        return this.subscribers.size();
+    }
+
+    /* Encoding helpers */
+
+    /**
+     * Applies a frame of a feed to the colors of a board, the way a spectator follows the
+     * game.
+     * @param type the type of the frame, {@code Protocol.KEYFRAME} or {@code Protocol.DELTA}.
+     * @param payload the payload of the frame, between its position and limit.
+     * @param colors the color of every square, row by row.
+     * @param width the number of columns of the board.
+     * @return the tick of the frame.
+     */
+    static long apply (byte type, ByteBuffer payload, byte[] colors, int width) {
+        long tick = Protocol.getVarint(payload);
+        if (type == Protocol.KEYFRAME) {
+            Protocol.getVarint(payload);
+            Protocol.getVarint(payload);
+            int first = (int) Protocol.getVarint(payload) * width;
+            Arrays.fill(colors, 0, first, (byte) TetrisEngine.EMPTY_COLOR);
+            for (int i = first; i < colors.length; i += 2) {
+                int pair = payload.get();
+                colors[i] = (byte) (pair & 0xF);
+                if (i + 1 < colors.length) {
+                    colors[i + 1] = (byte) ((pair >> 4) & 0xF);
+                }
+            }
+            return tick;
+        }
+        int row = 0;
+        while (payload.hasRemaining()) {
+            long header = Protocol.getVarint(payload);
+            row += (int) (header >>> 1);
+            long mask = Protocol.getVarint(payload);
+            if ((header & 1) != 0) {
+                byte color = payload.get();
+                for (long bits = mask; bits != 0; bits &= bits - 1) {
+                    colors[row * width + Long.numberOfTrailingZeros(bits)] = color;
+                }
+            } else {
+                int nibbles = 0;
+                int pair = 0;
+                for (long bits = mask; bits != 0; bits &= bits - 1) {
+                    if ((nibbles & 1) == 0) {
+                        pair = payload.get();
+                    }
+                    colors[row * width + Long.numberOfTrailingZeros(bits)] =
+                        (byte) ((pair >> (4 * (nibbles++ & 1))) & 0xF);
+                }
+            }
+        }
+        return tick;
+    }
+
+    /**
+     * Packs colors two to a byte, the first in the low nibble.
+     * @param buffer the buffer to write to.
+     * @param colors the colors, each less than 16.
+     * @param from the index of the first color.
+     * @param count the number of colors.
+     */
+    static void putNibbles (ByteBuffer buffer, byte[] colors, int from, int count) {
+        for (int i = 0; i < count; i += 2) {
+            int high = (i + 1 < count) ? colors[from + i + 1] << 4 : 0;
+            buffer.put((byte) (colors[from + i] | high));
+        }
+    }
+
+    /**
+     * Gets the most bytes a {@code KEYFRAME} frame of a board takes.
+     * @param width the number of columns.
+     * @param height the number of rows.
+     * @return the size of the largest frame.
+     */
+    static int keyframeBytes (int width, int height) {
+        return Protocol.HEADER_BYTES + 4 * Protocol.MAX_VARINT_BYTES + (width * height + 1) / 2;
+    }
+
+    /**
+     * Gets the most bytes a {@code DELTA} frame of a board takes.
+     * @param width the number of columns.
+     * @param height the number of rows.
+     * @return the size of the largest frame.
+     */
+    static int deltaBytes (int width, int height) {
+        return Protocol.HEADER_BYTES + Protocol.MAX_VARINT_BYTES
+            + height * (2 * Protocol.MAX_VARINT_BYTES + (width + 1) / 2);
+    }
+
+    /* Inner Classes */
+
+    /**
+     * A spectator's connection and how far into the ring it has been sent.
+     */
+    class Subscriber {
+
+        /* The connection and its registration with the selector */
+        private final SocketChannel channel;
+        private final SelectionKey key;
+
+        /* The subscriber's own views of the ring, for the bytes before and after it wraps */
+        private final ByteBuffer head;
+        private final ByteBuffer tail;
+        private final ByteBuffer[] views;
+
+        /* The ring position sent up to */
+        private long sent;
+
+        /* Set once the connection is closed */
+        private boolean closed;
+
+        /**
+         * Creates a subscriber.
+         * @param channel the connection, in non-blocking mode.
+         * @param key the registration of the connection.
+         * @param sent the ring position to start sending from.
+         */
+        Subscriber (SocketChannel channel, SelectionKey key, long sent) {
+            this.channel = channel;
+            this.key = key;
+            this.head = ring.duplicate();
+            this.tail = ring.duplicate();
+            this.views = new ByteBuffer[] {this.head, this.tail};
+            this.sent = sent;
+            key.attach(this);
+        }
+
+        /**
+         * Writes as many published bytes as the socket takes, straight from the ring, and
+         * asks the selector to report when the socket can take more if any are left.
+         */
+        void flush () {
+            long pending = written - this.sent;
+            if (this.closed || pending == 0) {
+                return;
+            }
+            int offset = (int) (this.sent & (RING_BYTES - 1));
+            int first = (int) Math.min(pending, RING_BYTES - offset);
+            this.head.limit(offset + first).position(offset);
+            this.tail.limit((int) pending - first).position(0);
+            try {
+                this.sent += this.channel.write(this.views);
+            } catch (IOException e) {
+                this.close();
+                return;
+            } //try
+            int ops = (this.sent < written)
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (this.key.interestOps() != ops) {
+                this.key.interestOps(ops);
+            }
+        }
+
+        /**
+         * Reads and ignores whatever the spectator sent, closing the subscriber if the
+         * spectator disconnected.
+         * @param scratch a buffer to read into.
+         */
+        void read (ByteBuffer scratch) {
+            try {
+                scratch.clear();
+                if (this.channel.read(scratch) < 0) {
+                    this.close();
+                }
+            } catch (IOException e) {
+                this.close();
+            } //try
+        }
+
+        /**
+         * Closes the connection.
+         */
+        void close () {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.key.cancel();
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                // the spectator is gone either way
+            } //try
+        }
+
+        /**
+         * Checks if the connection is closed.
+         * @return true if the subscriber is closed; false otherwise.
+         */
+        boolean isClosed () {
+            return this.closed;
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package cgs.render;
+
+import cgs.engine.BitBoard;
+import cgs.engine.EngineListener;
+import cgs.engine.TetrisEngine;
+import java.util.Arrays;
+
+/**
+ * The color of every square of a game, kept up to date by listening to its engine.
+ * The engine only stores which squares are taken, so a renderer that is not on screen follows
+ * the game through the squares it reports, the same way {@code TetrisBoard} paints it.
+ */
+public class ColorGrid implements EngineListener {
+
+    /* The size of the board */
+    private final int width;
+    private final int height;
+
+    /* The color of every square, row by row */
+    private final byte[] colors;
+
+    /**
+     * Creates the grid of a game and starts listening to it.
+     * The game's colors are only known from the squares reported from then on, so squares
+     * already on the board are taken to be the piece in play when they are
+     * {@code Marker.DYNAMIC} and the pile when they are {@code Marker.STATIC}.
+     * @param engine the game, whose listener is replaced.
+     */
+    public ColorGrid (TetrisEngine engine) {
+        BitBoard board = engine.getBoard();
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        this.colors = new byte[this.width * this.height];
+        Arrays.fill(this.colors, (byte) TetrisEngine.EMPTY_COLOR);
+        for (int y = board.getTop(); y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                if (board.isStatic(x, y)) {
+                    this.colors[y * this.width + x] = (byte) TetrisEngine.PILE_COLOR;
+                } else if (((board.getDynamicRow(y) >>> x) & 1) != 0) {
+                    this.colors[y * this.width + x] = (byte) engine.getPiece().getColor();
+                }
+            }
+        }
+        engine.setListener(this);
+    }
+
+    /**
+     * Records the new color of a square.
+     * @param x the column of the square.
+     * @param y the row of the square.
+     * @param color the color of the square.
+     */
+    @Override
+    public void squareChanged (int x, int y, int color) {
+        this.colors[y * this.width + x] = (byte) color;
+    }
+
+    /**
+     * Copies the color of every square into an array.
+     * @param target the array, {@code getWidth() * getHeight()} colors are written row by row
+     * starting at the offset.
+     * @param offset the index of the first color.
+     */
+    public void copyTo (byte[] target, int offset) {
+        System.arraycopy(this.colors, 0, target, offset, this.colors.length);
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of columns.
+     * @return the number of columns.
+     */
+    public int getWidth () {
+        return this.width;
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return the number of rows.
+     */
+    public int getHeight () {
+        return this.height;
+    }
+
+}
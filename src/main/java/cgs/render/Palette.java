@@ -0,0 +1,98 @@
+package cgs.render;
+
+import cgs.engine.TetrisEngine;
+import java.awt.Color;
+
+/**
+ * The look of a board: the colors the engine's color numbers are painted with and the default
+ * size of a square. Shared by the on-screen {@code TetrisBoard} and the offline
+ * {@code ReplayExporter}, so exported frames look the same as the game on screen.
+ *
+ * Every square is painted with a fill color and a one pixel outline: empty squares are
+ * outlined in their fill, the ghost piece is the background outlined in {@code GHOST_COLOR}
+ * and every other square is outlined in {@code OUTLINE_COLOR}.
+ */
+public final class Palette {
+
+    /* The default width of a square in pixels */
+    public static final int DEFAULT_SCALE = 25;
+
+    /* The default colors */
+    public static final Color BACKGROUND_COLOR = Color.DARK_GRAY;
+    public static final Color OUTLINE_COLOR = Color.BLACK;
+    public static final Color PILE_COLOR = Color.YELLOW; //After a row is cleared
+    public static final Color GHOST_COLOR = Color.LIGHT_GRAY; //Outline of where the piece lands
+
+    /* The colors of the pieces, in the order of the engine's piece colors */
+    public static final Color[] PIECE_COLORS = new Color[] {
+        Color.BLUE, Color.CYAN, Color.GREEN,
+        Color.MAGENTA, Color.ORANGE, Color.PINK, Color.RED, Color.WHITE
+    };
+
+    /* The number of colors the engine can report */
+    public static final int COLORS = TetrisEngine.GHOST_COLOR + 1;
+
+    /* The ARGB fill and outline of every color, indexed by the engine's color */
+    private static final int[] FILLS = initFills();
+    private static final int[] BORDERS = initBorders();
+
+    /**
+     * Not instantiable.
+     */
+    private Palette () {
+    }
+
+    /* Initialization Helper Methods */
+
+    /**
+     * Helper Method for the fills.
+     * Lists the fill colors in the order of the engine's color numbers.
+     * @return the ARGB value of each color.
+     */
+    private static int[] initFills () {
+        int[] fills = new int[COLORS];
+        fills[TetrisEngine.EMPTY_COLOR] = BACKGROUND_COLOR.getRGB();
+        fills[TetrisEngine.GHOST_COLOR] = BACKGROUND_COLOR.getRGB();
+        fills[TetrisEngine.PILE_COLOR] = PILE_COLOR.getRGB();
+        for (int i = 0; i < TetrisEngine.PIECE_COLORS; i++) {
+            fills[TetrisEngine.FIRST_PIECE_COLOR + i] = PIECE_COLORS[i].getRGB();
+        }
+        return fills;
+    }
+
+    /**
+     * Helper Method for the borders.
+     * Lists the outline colors in the order of the engine's color numbers.
+     * @return the ARGB value of each outline.
+     */
+    private static int[] initBorders () {
+        int[] borders = new int[COLORS];
+        for (int i = 0; i < COLORS; i++) {
+            borders[i] = OUTLINE_COLOR.getRGB();
+        }
+        borders[TetrisEngine.EMPTY_COLOR] = BACKGROUND_COLOR.getRGB();
+        borders[TetrisEngine.GHOST_COLOR] = GHOST_COLOR.getRGB();
+        return borders;
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the color a square is filled with.
+     * @param color the engine's color of the square.
+     * @return the ARGB fill color.
+     */
+    public static int fill (int color) {
+        return FILLS[color];
+    }
+
+    /**
+     * Gets the color a square is outlined with.
+     * @param color the engine's color of the square.
+     * @return the ARGB outline color.
+     */
+    public static int border (int color) {
+        return BORDERS[color];
+    }
+
+}
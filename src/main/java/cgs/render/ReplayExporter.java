@@ -0,0 +1,240 @@
+package cgs.render;
+
+import cgs.replay.ReplayReader;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+/**
+ * Turns a replay log into a numbered sequence of PNG images, one per frame, without a display.
+ * Frames use the colors and square size of the game on screen (see {@code Palette}), so a
+ * sequence can be assembled into a video for highlights by any external tool.
+ *
+ * Playing a log is far cheaper than painting and encoding its frames, so the game is played
+ * on the calling thread, which only copies the colors of the board at every frame into a
+ * chunk of frames. Full chunks are painted by a {@code TileRenderer} and encoded on a pool of
+ * threads, each painting into an image of its own allocated once, while the calling thread
+ * writes the encoded chunks to disk in the order they were played. At most two chunks per
+ * thread are in flight, and their buffers are reused once they are written.
+ */
+public class ReplayExporter {
+
+    /* The default number of frames in a chunk */
+    public static final int DEFAULT_CHUNK_FRAMES = 64;
+
+    /* The format and names of the images */
+    private static final String FORMAT = "png";
+    private static final String NAME = "frame-%06d.png";
+
+    /* The game being exported and the colors of its board */
+    private final ReplayReader reader;
+    private final ColorGrid grid;
+
+    /* Paints the frames */
+    private final TileRenderer renderer;
+
+    /* The directory the images are written to */
+    private final Path directory;
+
+    /* The number of painting threads, frames per chunk and ticks per frame */
+    private final int threads;
+    private final int chunkFrames;
+    private final int ticksPerFrame;
+
+    /* The image each painting thread paints into */
+    private final ThreadLocal<BufferedImage> images;
+
+    /**
+     * Opens a log to export.
+     * @param log the replay log.
+     * @param directory the directory the images are written to, created if it is missing.
+     * @param scale the width of a square in pixels.
+     * @param threads the number of threads that paint and encode frames.
+     * @param chunkFrames the number of frames painted together by one thread.
+     * @param ticksPerFrame the number of ticks between frames.
+     * @param ghost true to show the ghost piece as the game on screen does.
+     * @throws IOException if the log cannot be read or the directory created.
+     */
+    public ReplayExporter (Path log, Path directory, int scale, int threads, int chunkFrames,
+        int ticksPerFrame, boolean ghost) throws IOException {
+        this.reader = new ReplayReader(log);
+        this.reader.getEngine().setGhost(ghost);
+        this.grid = new ColorGrid(this.reader.getEngine());
+        this.renderer = new TileRenderer(this.grid.getWidth(), this.grid.getHeight(), scale);
+        this.directory = Files.createDirectories(directory);
+        this.threads = Math.max(1, threads);
+        this.chunkFrames = Math.max(1, chunkFrames);
+        this.ticksPerFrame = Math.max(1, ticksPerFrame);
+        this.images = ThreadLocal.withInitial(() -> new BufferedImage(this.renderer.getWidth(),
+            this.renderer.getHeight(), BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Main entry-point into the exporter.
+     * Arguments: log directory [threads [framesPerChunk [ticksPerFrame]]], by default a
+     * thread per core, {@code DEFAULT_CHUNK_FRAMES} and a frame every tick. The square size
+     * and ghost piece follow {@code tetris.scale} and {@code tetris.ghost} like the game.
+     * @param args the comand-line arguments.
+     * @throws Exception if the log cannot be read or the images written.
+     */
+    public static void main (String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplayExporter log directory "
+                + "[threads [framesPerChunk [ticksPerFrame]]]");
+            System.exit(1);
+        }
+        System.setProperty("java.awt.headless", "true");
+        int threads = (args.length > 2) ? Integer.parseInt(args[2])
+            : Runtime.getRuntime().availableProcessors();
+        int chunkFrames = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_CHUNK_FRAMES;
+        int ticksPerFrame = (args.length > 4) ? Integer.parseInt(args[4]) : 1;
+        int scale = Integer.getInteger("tetris.scale", Palette.DEFAULT_SCALE);
+        boolean ghost = Boolean.parseBoolean(System.getProperty("tetris.ghost", "true"));
+
+        ReplayExporter exporter = new ReplayExporter(Paths.get(args[0]), Paths.get(args[1]),
+            scale, threads, chunkFrames, ticksPerFrame, ghost);
+        long start = System.nanoTime();
+        long frames = exporter.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("frames=%d threads=%d seconds=%.2f frames/s=%.0f",
+            frames, threads, seconds, frames / seconds));
+    }
+
+    /**
+     * Plays the log from its first tick to its end and writes a frame every
+     * {@code ticksPerFrame} ticks, and of the last tick.
+     * @return the number of frames written.
+     * @throws IOException if a frame cannot be encoded or written.
+     * @throws InterruptedException if the thread is interrupted while waiting for a chunk.
+     */
+    public long run () throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        ArrayDeque<Chunk> pending = new ArrayDeque<>();
+        ArrayDeque<Chunk> free = new ArrayDeque<>();
+        int squares = this.grid.getWidth() * this.grid.getHeight();
+        long frames = 0;
+        try {
+            Chunk chunk = null;
+            for (long tick = 0; ; ) {
+                if (chunk == null) {
+                    if (free.isEmpty() && pending.size() >= 2 * this.threads) {
+                        free.add(this.write(pending.poll()));
+                    }
+                    chunk = free.isEmpty() ? new Chunk(squares) : free.poll();
+                    chunk.first = frames;
+                    chunk.frames = 0;
+                }
+                this.grid.copyTo(chunk.colors, chunk.frames++ * squares);
+                frames++;
+                if (chunk.frames == this.chunkFrames) {
+                    chunk.submit(pool);
+                    pending.add(chunk);
+                    chunk = null;
+                }
+                long reached = this.reader.advanceTo(tick + this.ticksPerFrame);
+                if (reached == tick) {
+                    break;
+                }
+                tick = reached;
+            }
+            if (chunk != null) {
+                chunk.submit(pool);
+                pending.add(chunk);
+            }
+            while (!pending.isEmpty()) {
+                this.write(pending.poll());
+            }
+        } finally {
+            pool.shutdownNow();
+        } //try
+        return frames;
+    }
+
+    /**
+     * Helper method for run()
+     * Waits for a chunk to be encoded and writes its images.
+     * @param chunk the oldest chunk that was submitted.
+     * @return the chunk, free to be reused.
+     * @throws IOException if the chunk could not be encoded or written.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private Chunk write (Chunk chunk) throws IOException, InterruptedException {
+        byte[][] encoded;
+        try {
+            encoded = chunk.encoded.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Could not encode frame " + chunk.first, e.getCause());
+        } //try
+        for (int i = 0; i < encoded.length; i++) {
+            Files.write(this.directory.resolve(String.format(NAME, chunk.first + i)),
+                encoded[i]);
+        }
+        chunk.encoded = null;
+        return chunk;
+    }
+
+    /**
+     * A run of consecutive frames, painted and encoded together by one thread.
+     */
+    private class Chunk {
+
+        /* The colors of the board at every frame, one board after the other */
+        private final byte[] colors;
+
+        /* The number of the first frame and the number of frames in the chunk */
+        private long first;
+        private int frames;
+
+        /* The images of the frames once they are encoded */
+        private Future<byte[][]> encoded;
+
+        /**
+         * Creates an empty chunk.
+         * @param squares the number of squares of the board.
+         */
+        Chunk (int squares) {
+            this.colors = new byte[chunkFrames * squares];
+        }
+
+        /**
+         * Starts painting and encoding the frames on a pool.
+         * @param pool the pool of painting threads.
+         */
+        void submit (ExecutorService pool) {
+            this.encoded = pool.submit(this::encode);
+        }
+
+        /**
+         * Helper method for submit()
+         * Paints every frame into the thread's image and encodes it.
+         * @return the encoded images, in order.
+         * @throws IOException if an image cannot be encoded.
+         */
+        private byte[][] encode () throws IOException {
+            BufferedImage image = images.get();
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            int squares = this.colors.length / chunkFrames;
+            byte[][] encoded = new byte[this.frames][];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (int i = 0; i < this.frames; i++) {
+                renderer.render(this.colors, i * squares, pixels);
+                out.reset();
+                ImageIO.write(image, FORMAT, out);
+                encoded[i] = out.toByteArray();
+            }
+            return encoded;
+        }
+
+    }
+
+}
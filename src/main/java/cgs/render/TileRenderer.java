@@ -0,0 +1,109 @@
+package cgs.render;
+
+/**
+ * Paints whole frames of a board into arrays of ARGB pixels without a display.
+ * Each of the engine's colors is drawn once into a tile sprite when the renderer is created,
+ * and a frame is painted by copying the sprite of every square into the pixels a row of the
+ * sprite at a time, instead of filling and outlining every square pixel by pixel.
+ *
+ * A sprite is one pixel larger than a square both ways, so like {@code Graphics2D.drawRect}
+ * its outline covers the first pixels of the squares to its right and below. Squares are
+ * painted left to right and top to bottom and sprites are cut off at the edges of the image,
+ * the same as {@code TetrisBoard} painting every square in that order.
+ *
+ * A renderer only reads its sprites, so it can be shared by threads painting into their own
+ * pixels.
+ */
+public class TileRenderer {
+
+    /* The number of squares across and down, and the width of a square in pixels */
+    private final int columns;
+    private final int rows;
+    private final int scale;
+
+    /* The size of a frame in pixels */
+    private final int width;
+    private final int height;
+
+    /* The pixels of every color's square and outline, indexed by the engine's color */
+    private final int[][] sprites;
+
+    /**
+     * Creates a renderer and draws its sprites.
+     * @param columns the number of squares across.
+     * @param rows the number of squares down.
+     * @param scale the width of a square in pixels.
+     */
+    public TileRenderer (int columns, int rows, int scale) {
+        this.columns = columns;
+        this.rows = rows;
+        this.scale = scale;
+        this.width = columns * scale;
+        this.height = rows * scale;
+        this.sprites = new int[Palette.COLORS][];
+        for (int color = 0; color < Palette.COLORS; color++) {
+            this.sprites[color] = this.drawSprite(Palette.fill(color), Palette.border(color));
+        }
+    }
+
+    /**
+     * Helper method for constructor
+     * Draws a square with its outline.
+     * @param fill the ARGB color of the square.
+     * @param border the ARGB color of the outline.
+     * @return the pixels of the sprite, {@code scale + 1} pixels square.
+     */
+    private int[] drawSprite (int fill, int border) {
+        int size = this.scale + 1;
+        int[] sprite = new int[size * size];
+        for (int py = 0; py < size; py++) {
+            for (int px = 0; px < size; px++) {
+                boolean edge = py == 0 || py == this.scale || px == 0 || px == this.scale;
+                sprite[py * size + px] = edge ? border : fill;
+            }
+        }
+        return sprite;
+    }
+
+    /**
+     * Paints a frame.
+     * @param colors the engine's color of every square, row by row.
+     * @param offset the index of the color of the top left square.
+     * @param pixels the pixels to paint, {@code getWidth() * getHeight()} of them row by row.
+     */
+    public void render (byte[] colors, int offset, int[] pixels) {
+        int size = this.scale + 1;
+        for (int y = 0; y < this.rows; y++) {
+            int top = y * this.scale;
+            int spriteRows = Math.min(size, this.height - top);
+            for (int x = 0; x < this.columns; x++) {
+                int[] sprite = this.sprites[colors[offset + y * this.columns + x]];
+                int left = x * this.scale;
+                int spriteColumns = Math.min(size, this.width - left);
+                for (int py = 0; py < spriteRows; py++) {
+                    System.arraycopy(sprite, py * size, pixels, (top + py) * this.width + left,
+                        spriteColumns);
+                }
+            }
+        }
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the width of a frame.
+     * @return the width in pixels.
+     */
+    public int getWidth () {
+        return this.width;
+    }
+
+    /**
+     * Gets the height of a frame.
+     * @return the height in pixels.
+     */
+    public int getHeight () {
+        return this.height;
+    }
+
+}
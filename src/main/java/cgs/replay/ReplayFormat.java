@@ -0,0 +1,88 @@
+package cgs.replay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of a replay log and the variable-length integers it is made of.
+ *
+ * A log starts with a header: {@code MAGIC}, {@code VERSION}, the seed of the game as a long,
+ * the ordinal of its {@code LineClearMode} as a byte, the width and height of its board as
+ * ints, the keyframe interval as an int, and the code of its {@code PieceGenerator} and the
+ * depth of its preview queue as bytes. It is followed by records, each starting with a varint
+ * tag whose low {@code KIND_BITS} bits are the kind of the record and whose other bits are the
+ * number of ticks since the previous record (or since the start of the game):
+ * <ul>
+ * <li>{@code ACTIONS}: a varint count and that many action codes, the actions the game
+ * accepted on the tick before it ran.</li>
+ * <li>{@code KEYFRAME}: {@code TetrisEngine.stateBytes(height)} bytes of the state of the game at
+ * the start of the tick, before its actions.</li>
+ * <li>{@code END}: the game was closed at the start of the tick, followed by the varint
+ * piece and line counts of the game.</li>
+ * </ul>
+ * A log that was closed properly ends with an index of its keyframes: a varint count and a
+ * varint tick delta and byte offset delta per keyframe, followed by the offset of the index
+ * as a long and {@code INDEX_MAGIC}. A log cut short by a crash has no index and can still be
+ * played up to its last complete record.
+ */
+final class ReplayFormat {
+
+    /* Identifies a replay log and its layout */
+    static final int MAGIC = 0x5452504C; //"TRPL"
+    static final byte VERSION = 6;
+
+    /* Identifies the index at the end of a complete log */
+    static final int INDEX_MAGIC = 0x54494458; //"TIDX"
+
+    /* The size of the header and of the footer after the index */
+    static final int HEADER_BYTES = Integer.BYTES + 1 + Long.BYTES + 1 + 3 * Integer.BYTES + 2;
+    static final int FOOTER_BYTES = Long.BYTES + Integer.BYTES;
+
+    /* The kinds of records */
+    static final int ACTIONS = 0;
+    static final int KEYFRAME = 1;
+    static final int END = 2;
+    static final int KIND_BITS = 2;
+    static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    /* The most bytes a varint takes */
+    static final int MAX_VARINT_BYTES = 10;
+
+    /**
+     * Not instantiable.
+     */
+    private ReplayFormat () {
+    }
+
+    /**
+     * Writes an unsigned varint: 7 bits per byte, low bits first, with the high bit of every
+     * byte but the last set.
+     * @param buffer the buffer to write to.
+     * @param value the value, treated as unsigned.
+     */
+    static void putVarint (ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint written by {@code putVarint}.
+     * @param buffer the buffer to read from.
+     * @return the value.
+     * @throws IllegalStateException if the varint is longer than a long.
+     */
+    static long getVarint (ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+}
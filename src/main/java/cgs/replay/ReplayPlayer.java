@@ -0,0 +1,59 @@
+package cgs.replay;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Plays replay logs from the command line as fast as the CPU allows and reports the outcome
+ * of each game, checking it against the outcome that was recorded.
+ */
+public class ReplayPlayer {
+
+    /**
+     * Main entry-point into the replay player.
+     * Arguments: one or more replay log files.
+     * @param args the comand-line arguments.
+     */
+    public static void main (String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayPlayer log...");
+            System.exit(1);
+        }
+        boolean matched = true;
+        for (String file : args) {
+            try {
+                matched &= play(file);
+            } catch (IOException e) {
+                System.err.println(e);
+                matched = false;
+            } //try
+        }
+        System.exit(matched ? 0 : 2);
+    }
+
+    /**
+     * Helper method for main()
+     * Plays one log to its end and prints the result.
+     * @param file the path of the log.
+     * @return true if the game ended as recorded or the log has no end; false otherwise.
+     * @throws IOException if the log cannot be read.
+     */
+    private static boolean play (String file) throws IOException {
+        ReplayReader reader = new ReplayReader(Paths.get(file));
+        long start = System.nanoTime();
+        long ticks = reader.playToEnd();
+        long elapsed = System.nanoTime() - start;
+        long pieces = reader.getEngine().getPieceCount();
+        long lines = reader.getEngine().getLineCount();
+        boolean matched = reader.getRecordedPieces() < 0
+            || (reader.getRecordedPieces() == pieces && reader.getRecordedLines() == lines);
+        System.out.println(String.format("%s seed=%d mode=%s ticks=%d pieces=%d"
+            + " lines=%d keyframes=%d ticks/s=%.0f %s", file, reader.getSeed(),
+            reader.getLineClearMode(), ticks, pieces, lines,
+            reader.getKeyframeCount(), (elapsed == 0) ? 0 : ticks * 1e9 / elapsed,
+            (reader.getRecordedPieces() < 0) ? "(no end recorded)"
+                : matched ? "matches" : "MISMATCH"));
+        return matched;
+    }
+
+}
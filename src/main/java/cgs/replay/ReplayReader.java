@@ -0,0 +1,359 @@
+package cgs.replay;
+
+import cgs.engine.Action;
+import cgs.engine.BitBoard;
+import cgs.engine.LineClearMode;
+import cgs.engine.PieceGenerator;
+import cgs.engine.TetrisEngine;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Plays a game recorded by a {@code ReplayWriter} again, without rendering and as fast as the
+ * engine can run. The log is mapped into memory and decoded record by record while a headless
+ * {@code TetrisEngine} created from the recorded seed runs every tick, so the game is rebuilt
+ * exactly as it was played.
+ *
+ * {@code seek} jumps to any tick by restoring the closest keyframe before it, found in the
+ * index at the end of the log, and only runs the ticks after the keyframe. Logs without an
+ * index, such as the log of a game that crashed, are scanned for their keyframes instead,
+ * and are played up to their last complete record.
+ */
+public class ReplayReader {
+
+    /* The mapped log */
+    private final ByteBuffer log;
+
+    /* The seed of the game, how it clears rows and the ticks between its keyframes */
+    private final long seed;
+    private final LineClearMode mode;
+
+    /* The code of the game's piece generator and the depth of its preview queue */
+    private final int generator;
+    private final int previewDepth;
+
+    /* The size of the game's board and of a keyframe */
+    private final int width;
+    private final int height;
+    private final int stateBytes;
+    private final int keyframeInterval;
+
+    /* The tick and offset of every keyframe, in order */
+    private long[] keyframeTicks;
+    private long[] keyframeOffsets;
+    private int keyframes;
+
+    /* The offset at which the records stop */
+    private int recordsEnd;
+
+    /* The game being played and the tick it is at */
+    private TetrisEngine engine;
+    private long tick;
+
+    /* The next record: its tick and kind, or ended once the end of the log is reached */
+    private long recordTick;
+    private int recordKind;
+    private boolean ended;
+
+    /* The piece and line counts written at the end of the log, -1 if it has no end */
+    private long recordedPieces;
+    private long recordedLines;
+
+    /**
+     * Opens a log and starts its game at the first tick.
+     * @param path the file of the log.
+     * @throws IOException if the file cannot be read or is not a replay log.
+     */
+    public ReplayReader (Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (this.log.remaining() < ReplayFormat.HEADER_BYTES
+            || this.log.getInt() != ReplayFormat.MAGIC) {
+            throw new IOException("Not a replay log: " + path);
+        }
+        if (this.log.get() != ReplayFormat.VERSION) {
+            throw new IOException("Unsupported replay version: " + path);
+        }
+        this.seed = this.log.getLong();
+        int mode = this.log.get();
+        if (mode < 0 || mode >= LineClearMode.values().length) {
+            throw new IOException("Unknown line clear mode: " + path);
+        }
+        this.mode = LineClearMode.values()[mode];
+        this.width = this.log.getInt();
+        this.height = this.log.getInt();
+        if (this.width < TetrisEngine.MIN_SPACES || this.width > BitBoard.MAX_WIDTH
+            || this.height < TetrisEngine.MIN_SPACES) {
+            throw new IOException("Invalid board size: " + path);
+        }
+        this.stateBytes = TetrisEngine.stateBytes(this.height);
+        this.keyframeInterval = this.log.getInt();
+        this.generator = this.log.get();
+        this.previewDepth = this.log.get();
+        if (this.generator != PieceGenerator.UNIFORM && this.generator != PieceGenerator.BAG
+            || this.previewDepth < 1 || this.previewDepth > TetrisEngine.MAX_PREVIEW) {
+            throw new IOException("Unknown piece generator: " + path);
+        }
+        this.recordedPieces = -1;
+        this.recordedLines = -1;
+        if (!this.readIndex()) {
+            this.scanIndex();
+        }
+        this.restart();
+    }
+
+    /* Constructor Helper Methods*/
+
+    /**
+     * Helper method for constructor
+     * Reads the keyframe index at the end of a complete log.
+     * @return true if the log has an index; false otherwise.
+     */
+    private boolean readIndex () {
+        int limit = this.log.limit();
+        if (limit < ReplayFormat.HEADER_BYTES + ReplayFormat.FOOTER_BYTES
+            || this.log.getInt(limit - Integer.BYTES) != ReplayFormat.INDEX_MAGIC) {
+            return false;
+        }
+        ByteBuffer index = this.log.duplicate();
+        index.position((int) this.log.getLong(limit - ReplayFormat.FOOTER_BYTES));
+        this.recordsEnd = index.position();
+        this.keyframes = (int) ReplayFormat.getVarint(index);
+        this.keyframeTicks = new long[this.keyframes];
+        this.keyframeOffsets = new long[this.keyframes];
+        long tick = 0;
+        long offset = 0;
+        for (int i = 0; i < this.keyframes; i++) {
+            tick += ReplayFormat.getVarint(index);
+            offset += ReplayFormat.getVarint(index);
+            this.keyframeTicks[i] = tick;
+            this.keyframeOffsets[i] = offset;
+        }
+        return true;
+    }
+
+    /**
+     * Helper method for constructor
+     * Finds the keyframes and the last complete record of a log without an index.
+     */
+    private void scanIndex () {
+        this.keyframeTicks = new long[16];
+        this.keyframeOffsets = new long[16];
+        ByteBuffer records = this.log.duplicate();
+        long tick = 0;
+        this.recordsEnd = records.position();
+        try {
+            while (records.hasRemaining()) {
+                int offset = records.position();
+                long tag = ReplayFormat.getVarint(records);
+                tick += tag >>> ReplayFormat.KIND_BITS;
+                int kind = (int) (tag & ReplayFormat.KIND_MASK);
+                if (kind == ReplayFormat.ACTIONS) {
+                    int count = (int) ReplayFormat.getVarint(records);
+                    records.position(records.position() + count);
+                } else if (kind == ReplayFormat.KEYFRAME) {
+                    records.position(records.position() + this.stateBytes);
+                    if (this.keyframes == this.keyframeTicks.length) {
+                        this.keyframeTicks = Arrays.copyOf(this.keyframeTicks, this.keyframes * 2);
+                        this.keyframeOffsets =
+                            Arrays.copyOf(this.keyframeOffsets, this.keyframes * 2);
+                    }
+                    this.keyframeTicks[this.keyframes] = tick;
+                    this.keyframeOffsets[this.keyframes] = offset;
+                    this.keyframes++;
+                } else {
+                    ReplayFormat.getVarint(records);
+                    ReplayFormat.getVarint(records);
+                }
+                this.recordsEnd = records.position();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IllegalStateException e) {
+            return; //the last record was cut short, play up to the one before it
+        }
+    }
+
+    /* Playing the game */
+
+    /**
+     * Starts the game again from its first tick.
+     */
+    public void restart () {
+        this.engine = new TetrisEngine(this.seed, this.mode, this.width, this.height,
+            PieceGenerator.forCode(this.generator), this.previewDepth);
+        this.tick = 0;
+        this.recordTick = 0;
+        this.ended = false;
+        this.log.position(ReplayFormat.HEADER_BYTES);
+        this.readTag();
+    }
+
+    /**
+     * Moves the game to the start of a tick, before its actions are applied.
+     * Restores the latest keyframe at or before the tick if that skips ticks, then runs the
+     * rest of the ticks.
+     * @param target the tick to move to.
+     * @return the tick the game is at, earlier than the target if the log ends first.
+     */
+    public long seek (long target) {
+        int i = Arrays.binarySearch(this.keyframeTicks, 0, this.keyframes, target);
+        i = (i >= 0) ? i : -i - 2;
+        if (target < this.tick) {
+            this.restart();
+        }
+        if (i >= 0 && this.keyframeTicks[i] > this.tick) {
+            this.log.position((int) this.keyframeOffsets[i]);
+            ReplayFormat.getVarint(this.log);
+            this.tick = this.keyframeTicks[i];
+            this.recordTick = this.tick;
+            this.engine.readState(this.log);
+            this.readTag();
+        }
+        return this.advanceTo(target);
+    }
+
+    /**
+     * Runs the game forward to the start of a tick, applying the recorded actions.
+     * @param target the tick to run to.
+     * @return the tick the game is at, earlier than the target if the log ends first.
+     */
+    public long advanceTo (long target) {
+        while (this.tick < target && !this.ended) {
+            while (!this.ended && this.recordTick == this.tick) {
+                this.applyRecord();
+            }
+            if (this.ended) {
+                break;
+            }
+            this.engine.tick();
+            this.tick++;
+        }
+        return this.tick;
+    }
+
+    /**
+     * Runs the game until the log ends.
+     * @return the number of ticks in the game.
+     */
+    public long playToEnd () {
+        return this.advanceTo(Long.MAX_VALUE);
+    }
+
+    /* Helper methods for reading records */
+
+    /**
+     * Applies the next record, which is on the current tick, and reads the tag of the one
+     * after it.
+     */
+    private void applyRecord () {
+        switch (this.recordKind) {
+        case ReplayFormat.ACTIONS:
+            for (int count = (int) ReplayFormat.getVarint(this.log); count > 0; count--) {
+                this.engine.step(Action.fromCode(this.log.get()));
+            }
+            break;
+        case ReplayFormat.KEYFRAME:
+            this.log.position(this.log.position() + this.stateBytes);
+            break;
+        default:
+            this.recordedPieces = ReplayFormat.getVarint(this.log);
+            this.recordedLines = ReplayFormat.getVarint(this.log);
+            this.ended = true;
+            return;
+        } //switch
+        this.readTag();
+    }
+
+    /**
+     * Reads the tag of the next record, or marks the log ended if there are no more records.
+     */
+    private void readTag () {
+        if (this.log.position() >= this.recordsEnd) {
+            this.ended = true;
+            return;
+        }
+        long tag = ReplayFormat.getVarint(this.log);
+        this.recordTick += tag >>> ReplayFormat.KIND_BITS;
+        this.recordKind = (int) (tag & ReplayFormat.KIND_MASK);
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the game being played. It must not be changed while the reader plays it.
+     * @return the game.
+     */
+    public TetrisEngine getEngine () {
+        return this.engine;
+    }
+
+    /**
+     * Gets the tick the game is at.
+     * @return the tick.
+     */
+    public long getTick () {
+        return this.tick;
+    }
+
+    /**
+     * Gets the seed of the recorded game.
+     * @return the seed.
+     */
+    public long getSeed () {
+        return this.seed;
+    }
+
+    /**
+     * Gets how the recorded game clears full rows.
+     * @return the line clear mode.
+     */
+    public LineClearMode getLineClearMode () {
+        return this.mode;
+    }
+
+    /**
+     * Gets the ticks between the keyframes of the log.
+     * @return the keyframe interval.
+     */
+    public int getKeyframeInterval () {
+        return this.keyframeInterval;
+    }
+
+    /**
+     * Gets the number of keyframes in the log.
+     * @return the number of keyframes.
+     */
+    public int getKeyframeCount () {
+        return this.keyframes;
+    }
+
+    /**
+     * Checks if the end of the log has been reached.
+     * @return true if there is nothing left to play; false otherwise.
+     */
+    public boolean isEnded () {
+        return this.ended;
+    }
+
+    /**
+     * Gets the number of pieces the game had when it was recorded.
+     * @return the piece count, -1 until the end of the log is played or if it has no end.
+     */
+    public long getRecordedPieces () {
+        return this.recordedPieces;
+    }
+
+    /**
+     * Gets the number of rows the game cleared when it was recorded.
+     * @return the line count, -1 until the end of the log is played or if it has no end.
+     */
+    public long getRecordedLines () {
+        return this.recordedLines;
+    }
+
+}
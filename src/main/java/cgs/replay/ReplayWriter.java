@@ -0,0 +1,304 @@
+package cgs.replay;
+
+import cgs.engine.Action;
+import cgs.engine.LineClearMode;
+import cgs.engine.PieceGenerator;
+import cgs.engine.TetrisEngine;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records a game into a replay log (see {@code ReplayFormat}) as it is played.
+ * Only the seed and the actions the game accepted are needed to play a game again, so a tick
+ * without actions costs nothing and a tick with actions costs a few bytes. Every
+ * {@code keyframeInterval} ticks the whole state of the game is saved as well, so a reader can
+ * jump into the middle of a long game without playing it from the start.
+ *
+ * Records are gathered in a direct buffer and written to the file channel when it fills up.
+ * A writer is not thread safe, it must be called with the same lock that guards the engine.
+ */
+public class ReplayWriter implements Closeable {
+
+    /* The default ticks between keyframes, a minute of game time */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 1200;
+
+    /* The size of the write buffer */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /* The log file and the records waiting to be written to it */
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+
+    /* The number of bytes already written to the file */
+    private long written;
+
+    /* The ticks between keyframes */
+    private final int keyframeInterval;
+
+    /* The current tick, the tick of the last record and the tick of the last keyframe */
+    private long tick;
+    private long recordTick;
+    private long keyframeTick;
+
+    /* The actions accepted on the current tick */
+    private byte[] actions;
+    private int actionCount;
+
+    /* The tick and file offset of every keyframe, for the index */
+    private long[] keyframeTicks;
+    private long[] keyframeOffsets;
+    private int keyframes;
+
+    /* Set once the end of the game has been written */
+    private boolean finished;
+
+    /**
+     * Creates a log of a game on the default board that clears rows with
+     * {@code LineClearMode.AVALANCHE}, replacing any file at the path, and writes its header.
+     * @param path the file of the log.
+     * @param seed the seed of the game.
+     * @param keyframeInterval the ticks between keyframes.
+     * @throws IOException if the file cannot be written.
+     */
+    public ReplayWriter (Path path, long seed, int keyframeInterval) throws IOException {
+        this(path, seed, LineClearMode.AVALANCHE, TetrisEngine.HORIZONTAL_SPACES,
+            TetrisEngine.VERTICAL_SPACES, keyframeInterval);
+    }
+
+    /**
+     * Creates a log of a new game, replacing any file at the path, and writes its header.
+     * @param path the file of the log.
+     * @param engine the game, before its first tick.
+     * @param keyframeInterval the ticks between keyframes.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if the game's piece generator has no code.
+     */
+    public ReplayWriter (Path path, TetrisEngine engine, int keyframeInterval)
+        throws IOException {
+        this(path, engine.getSeed(), engine.getLineClearMode(), engine.getBoard().getWidth(),
+            engine.getBoard().getHeight(), keyframeInterval, engine.getGenerator().getCode(),
+            engine.getPreviewDepth());
+    }
+
+    /**
+     * Creates a log of a game with a {@code UniformGenerator} and a single preview, replacing
+     * any file at the path, and writes its header.
+     * @param path the file of the log.
+     * @param seed the seed of the game.
+     * @param mode how the game clears full rows.
+     * @param width the number of columns of the game's board.
+     * @param height the number of rows of the game's board.
+     * @param keyframeInterval the ticks between keyframes.
+     * @throws IOException if the file cannot be written.
+     */
+    public ReplayWriter (Path path, long seed, LineClearMode mode, int width, int height,
+        int keyframeInterval) throws IOException {
+        this(path, seed, mode, width, height, keyframeInterval, PieceGenerator.UNIFORM, 1);
+    }
+
+    /**
+     * Creates a log, replacing any file at the path, and writes its header.
+     * @param path the file of the log.
+     * @param seed the seed of the game.
+     * @param mode how the game clears full rows.
+     * @param width the number of columns of the game's board.
+     * @param height the number of rows of the game's board.
+     * @param keyframeInterval the ticks between keyframes.
+     * @param generator the code of the game's {@code PieceGenerator}.
+     * @param previewDepth the number of types in the game's preview queue.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if the generator has no code.
+     */
+    public ReplayWriter (Path path, long seed, LineClearMode mode, int width, int height,
+        int keyframeInterval, int generator, int previewDepth) throws IOException {
+        if (generator < 0) {
+            throw new IllegalArgumentException("Cannot record a game from a piece sequence");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        this.keyframeInterval = keyframeInterval;
+        this.actions = new byte[16];
+        this.keyframeTicks = new long[16];
+        this.keyframeOffsets = new long[16];
+
+        this.buffer.putInt(ReplayFormat.MAGIC);
+        this.buffer.put(ReplayFormat.VERSION);
+        this.buffer.putLong(seed);
+        this.buffer.put((byte) mode.ordinal());
+        this.buffer.putInt(width);
+        this.buffer.putInt(height);
+        this.buffer.putInt(keyframeInterval);
+        this.buffer.put((byte) generator);
+        this.buffer.put((byte) previewDepth);
+    }
+
+    /**
+     * Records an action the game accepted on the current tick.
+     * @param action the action.
+     */
+    public void action (Action action) {
+        if (this.actionCount == this.actions.length) {
+            this.actions = Arrays.copyOf(this.actions, this.actionCount * 2);
+        }
+        this.actions[this.actionCount++] = (byte) action.code();
+    }
+
+    /**
+     * Ends the current tick after the engine ran it, writing the actions accepted on it and,
+     * if one is due, a keyframe of the state the next tick starts from.
+     * @param engine the game being recorded.
+     * @throws IOException if the file cannot be written.
+     */
+    public void endTick (TetrisEngine engine) throws IOException {
+        this.writeActions();
+        this.tick++;
+        if (this.tick - this.keyframeTick >= this.keyframeInterval) {
+            this.writeKeyframe(engine);
+        }
+    }
+
+    /**
+     * Writes the end of the game and the keyframe index, then closes the file.
+     * @param engine the game being recorded.
+     * @throws IOException if the file cannot be written.
+     */
+    public void finish (TetrisEngine engine) throws IOException {
+        if (this.finished) {
+            return;
+        }
+        this.writeActions();
+        this.ensure(1 + 3 * ReplayFormat.MAX_VARINT_BYTES);
+        this.putTag(ReplayFormat.END);
+        ReplayFormat.putVarint(this.buffer, engine.getPieceCount());
+        ReplayFormat.putVarint(this.buffer, engine.getLineCount());
+
+        long indexOffset = this.position();
+        this.ensure(ReplayFormat.MAX_VARINT_BYTES);
+        ReplayFormat.putVarint(this.buffer, this.keyframes);
+        long lastTick = 0;
+        long lastOffset = 0;
+        for (int i = 0; i < this.keyframes; i++) {
+            this.ensure(2 * ReplayFormat.MAX_VARINT_BYTES);
+            ReplayFormat.putVarint(this.buffer, this.keyframeTicks[i] - lastTick);
+            ReplayFormat.putVarint(this.buffer, this.keyframeOffsets[i] - lastOffset);
+            lastTick = this.keyframeTicks[i];
+            lastOffset = this.keyframeOffsets[i];
+        }
+        this.ensure(ReplayFormat.FOOTER_BYTES);
+        this.buffer.putLong(indexOffset);
+        this.buffer.putInt(ReplayFormat.INDEX_MAGIC);
+        this.finished = true;
+        this.close();
+    }
+
+    /**
+     * Writes the buffered records and closes the file. A log closed without {@code finish}
+     * has no end or index, like the log of a game that crashed.
+     * @throws IOException if the file cannot be written.
+     */
+    @Override
+    public void close () throws IOException {
+        if (this.channel.isOpen()) {
+            this.flush();
+            this.channel.close();
+        }
+    }
+
+    /* Helper methods for writing records */
+
+    /**
+     * Writes the actions of the current tick, if there are any.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeActions () throws IOException {
+        if (this.actionCount == 0) {
+            return;
+        }
+        this.ensure(2 * ReplayFormat.MAX_VARINT_BYTES + this.actionCount);
+        this.putTag(ReplayFormat.ACTIONS);
+        ReplayFormat.putVarint(this.buffer, this.actionCount);
+        this.buffer.put(this.actions, 0, this.actionCount);
+        this.actionCount = 0;
+    }
+
+    /**
+     * Writes the state of a game as a keyframe and adds it to the index.
+     * @param engine the game being recorded.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeKeyframe (TetrisEngine engine) throws IOException {
+        this.ensure(ReplayFormat.MAX_VARINT_BYTES + engine.getStateBytes());
+        if (this.keyframes == this.keyframeTicks.length) {
+            this.keyframeTicks = Arrays.copyOf(this.keyframeTicks, this.keyframes * 2);
+            this.keyframeOffsets = Arrays.copyOf(this.keyframeOffsets, this.keyframes * 2);
+        }
+        this.keyframeTicks[this.keyframes] = this.tick;
+        this.keyframeOffsets[this.keyframes] = this.position();
+        this.keyframes++;
+        this.keyframeTick = this.tick;
+        this.putTag(ReplayFormat.KEYFRAME);
+        engine.writeState(this.buffer);
+    }
+
+    /**
+     * Writes the tag of a record on the current tick.
+     * @param kind the kind of the record.
+     */
+    private void putTag (int kind) {
+        ReplayFormat.putVarint(this.buffer,
+            ((this.tick - this.recordTick) << ReplayFormat.KIND_BITS) | kind);
+        this.recordTick = this.tick;
+    }
+
+    /**
+     * Makes room in the buffer, writing it to the file if it is too full, and growing it if
+     * the record is larger than the whole buffer, such as the keyframe of a tall board.
+     * @param bytes the number of bytes that are about to be put in the buffer.
+     * @throws IOException if the file cannot be written.
+     */
+    private void ensure (int bytes) throws IOException {
+        if (this.buffer.remaining() < bytes) {
+            this.flush();
+            if (this.buffer.capacity() < bytes) {
+                this.buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(bytes - 1) << 1);
+            }
+        }
+    }
+
+    /**
+     * Writes the buffer to the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private void flush () throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.written += this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Gets the offset in the file of the next byte put in the buffer.
+     * @return the offset.
+     */
+    private long position () {
+        return this.written + this.buffer.position();
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of ticks recorded.
+     * @return the current tick.
+     */
+    public long getTick () {
+        return this.tick;
+    }
+
+}
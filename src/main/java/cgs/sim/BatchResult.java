@@ -0,0 +1,102 @@
+package cgs.sim;
+
+/**
+ * The totals of a batch of headless games played by a {@code BatchRunner}.
+ */
+public class BatchResult {
+
+    /* The totals over every game of the batch */
+    private final long games;
+    private final long lines;
+    private final long pieces;
+    private final long ticks;
+
+    /* The wall clock time the batch took */
+    private final long elapsedNanos;
+
+    /**
+     * Creates the result of a batch.
+     * @param games the number of games played.
+     * @param lines the number of rows cleared in all games.
+     * @param pieces the number of pieces put in play in all games.
+     * @param ticks the number of ticks run in all games.
+     * @param elapsedNanos the wall clock time the batch took.
+     */
+    public BatchResult (long games, long lines, long pieces, long ticks, long elapsedNanos) {
+        this.games = games;
+        this.lines = lines;
+        this.pieces = pieces;
+        this.ticks = ticks;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of games played.
+     * @return the number of games.
+     */
+    public long getGames () {
+        return this.games;
+    }
+
+    /**
+     * Gets the number of rows cleared in all games.
+     * @return the number of rows.
+     */
+    public long getLines () {
+        return this.lines;
+    }
+
+    /**
+     * Gets the number of pieces put in play in all games.
+     * @return the number of pieces.
+     */
+    public long getPieces () {
+        return this.pieces;
+    }
+
+    /**
+     * Gets the number of ticks run in all games.
+     * @return the number of ticks.
+     */
+    public long getTicks () {
+        return this.ticks;
+    }
+
+    /**
+     * Gets the wall clock time the batch took.
+     * @return the time in nanoseconds.
+     */
+    public long getElapsedNanos () {
+        return this.elapsedNanos;
+    }
+
+    /**
+     * Gets the average number of rows cleared per game.
+     * @return the mean lines per game, 0 if no game was played.
+     */
+    public double getMeanLines () {
+        return (this.games == 0) ? 0 : (double) this.lines / this.games;
+    }
+
+    /**
+     * Gets the number of ticks run per second of wall clock time, over all threads.
+     * @return the tick rate.
+     */
+    public double getTicksPerSecond () {
+        return (this.elapsedNanos == 0) ? 0 : this.ticks * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * Describes the batch for logging.
+     * @return the totals and rates of the batch.
+     */
+    @Override
+    public String toString () {
+        return String.format("games=%d lines=%d (%.1f/game) pieces=%d ticks=%d"
+            + " elapsed=%.3fs ticks/s=%.0f", this.games, this.lines, this.getMeanLines(),
+            this.pieces, this.ticks, this.elapsedNanos / 1e9, this.getTicksPerSecond());
+    }
+
+}
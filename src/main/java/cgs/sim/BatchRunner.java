@@ -0,0 +1,253 @@
+package cgs.sim;
+
+import cgs.bot.Bot;
+import cgs.bot.Placement;
+import cgs.bot.WeightedHeuristic;
+import cgs.engine.Action;
+import cgs.engine.LineClearMode;
+import cgs.engine.PieceGenerator;
+import cgs.engine.SplitMix64;
+import cgs.engine.TetrisEngine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Plays batches of headless games with a {@code Bot} as fast as the CPU allows.
+ * Every game gets its own {@code TetrisEngine} seeded from the batch seed and the index of the
+ * game, so a batch plays the same games no matter how many threads it runs on, and any single
+ * game can be replayed from its seed. Worker threads take games from a shared counter and add
+ * their totals to striped counters, so they share nothing else while they play.
+ *
+ * Games can deal their pieces from a bag instead of uniformly, and show the bot more than one
+ * piece ahead. Each game creates its own {@code PieceGenerator}, so the bot reads the
+ * preview queue of a game without touching anything another thread uses.
+ *
+ * The bot places each piece as soon as it is put in play and hard drops it, holding
+ * {@code Action.DOWN} only while it has no placement, so a piece takes a single tick.
+ */
+public class BatchRunner {
+
+    /* The default most pieces per game, so a bot that never loses still finishes */
+    public static final int DEFAULT_MAX_PIECES = 10000;
+
+    /* Used to spread the seeds of neighbouring games */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /* The size of the batch and the seed the games' seeds are made from */
+    private final long games;
+    private final long seed;
+
+    /* The number of threads that play games */
+    private final int threads;
+
+    /* The most pieces put in play in one game */
+    private final int maxPieces;
+
+    /* How the games clear full rows */
+    private final LineClearMode mode;
+
+    /* The code of the games' piece generators and the depth of their preview queues */
+    private final int generator;
+    private final int previewDepth;
+
+    /* Picks where the pieces go, shared by every thread */
+    private final Bot bot;
+
+    /* The index of the next game to play */
+    private final AtomicLong nextGame;
+
+    /* The totals of the games played so far */
+    private final LongAdder lines;
+    private final LongAdder pieces;
+    private final LongAdder ticks;
+
+    /**
+     * Creates a batch of games that clear rows with {@code LineClearMode.AVALANCHE}.
+     * @param games the number of games to play.
+     * @param seed the seed the seed of every game is made from.
+     * @param threads the number of threads that play games.
+     * @param depth the number of pieces the bot searches for each placement.
+     * @param maxPieces the most pieces put in play in one game.
+     */
+    public BatchRunner (long games, long seed, int threads, int depth, int maxPieces) {
+        this(games, seed, threads, depth, maxPieces, LineClearMode.AVALANCHE);
+    }
+
+    /**
+     * Creates a batch.
+     * @param games the number of games to play.
+     * @param seed the seed the seed of every game is made from.
+     * @param threads the number of threads that play games.
+     * @param depth the number of pieces the bot searches for each placement.
+     * @param maxPieces the most pieces put in play in one game.
+     * @param mode how the games clear full rows.
+     */
+    public BatchRunner (long games, long seed, int threads, int depth, int maxPieces,
+        LineClearMode mode) {
+        this(games, seed, threads, depth, maxPieces, mode, PieceGenerator.UNIFORM, 1);
+    }
+
+    /**
+     * Creates a batch.
+     * @param games the number of games to play.
+     * @param seed the seed the seed of every game is made from.
+     * @param threads the number of threads that play games.
+     * @param depth the number of pieces the bot searches for each placement.
+     * @param maxPieces the most pieces put in play in one game.
+     * @param mode how the games clear full rows.
+     * @param generator the code of the {@code PieceGenerator} of every game.
+     * @param previewDepth the number of types in the preview queue of every game.
+     */
+    public BatchRunner (long games, long seed, int threads, int depth, int maxPieces,
+        LineClearMode mode, int generator, int previewDepth) {
+        this.games = games;
+        this.seed = seed;
+        this.threads = threads;
+        this.maxPieces = maxPieces;
+        this.mode = mode;
+        this.generator = generator;
+        this.previewDepth = previewDepth;
+        this.bot = new Bot(new WeightedHeuristic(), depth, 1, mode);
+        this.nextGame = new AtomicLong();
+        this.lines = new LongAdder();
+        this.pieces = new LongAdder();
+        this.ticks = new LongAdder();
+    }
+
+    /**
+     * Main entry-point into the batch runner.
+     * Arguments: games [seed [threads [depth [maxPieces [avalanche|compact [preview
+     * [uniform|bag]]]]]]], by default a random seed, a thread per core, a depth of 1,
+     * {@code DEFAULT_MAX_PIECES}, {@code LineClearMode.AVALANCHE} and a single preview of
+     * uniformly drawn pieces.
+     * @param args the comand-line arguments.
+     */
+    public static void main (String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: BatchRunner games [seed [threads [depth [maxPieces "
+                + "[avalanche|compact [preview [uniform|bag]]]]]]]");
+            System.exit(1);
+        }
+        long games = Long.parseLong(args[0]);
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+        int threads = (args.length > 2) ? Integer.parseInt(args[2])
+            : Runtime.getRuntime().availableProcessors();
+        int depth = (args.length > 3) ? Integer.parseInt(args[3]) : 1;
+        int maxPieces = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_MAX_PIECES;
+        LineClearMode mode = (args.length > 5) ? LineClearMode.valueOf(args[5].toUpperCase())
+            : LineClearMode.AVALANCHE;
+        int preview = (args.length > 6) ? Integer.parseInt(args[6]) : 1;
+        int generator = (args.length > 7 && "bag".equals(args[7])) ? PieceGenerator.BAG
+            : PieceGenerator.UNIFORM;
+
+        System.out.println("Batch seed=" + seed + " threads=" + threads + " depth=" + depth
+            + " mode=" + mode + " preview=" + preview
+            + ((generator == PieceGenerator.BAG) ? " bag" : ""));
+        BatchResult result = new BatchRunner(games, seed, threads, depth, maxPieces, mode,
+            generator, preview).run();
+        System.out.println(result);
+    }
+
+    /**
+     * Plays every game of the batch and waits for them to finish.
+     * @return the totals of the batch.
+     */
+    public BatchResult run () {
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(this.threads);
+            for (int i = 0; i < this.threads; i++) {
+                futures.add(workers.submit(this::work));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Batch failed", e);
+        } finally {
+            workers.shutdown();
+        }
+        return new BatchResult(Math.min(this.nextGame.get(), this.games), this.lines.sum(),
+            this.pieces.sum(), this.ticks.sum(), System.nanoTime() - start);
+    }
+
+    /**
+     * To be run in its own thread.
+     * Plays games until every game of the batch has been taken.
+     */
+    private void work () {
+        for (long game = this.nextGame.getAndIncrement(); game < this.games;
+            game = this.nextGame.getAndIncrement()) {
+            TetrisEngine engine = new TetrisEngine(gameSeed(this.seed, game), this.mode,
+                TetrisEngine.HORIZONTAL_SPACES, TetrisEngine.VERTICAL_SPACES,
+                PieceGenerator.forCode(this.generator), this.previewDepth);
+            this.ticks.add(play(engine, this.bot, this.maxPieces));
+            this.lines.add(engine.getLineCount());
+            this.pieces.add(engine.getPieceCount());
+        }
+    }
+
+    /**
+     * Plays a game with a bot until it is over or a number of pieces have been put in play.
+     * @param engine the game.
+     * @param bot picks where the pieces go.
+     * @param maxPieces the most pieces put in play.
+     * @return the number of ticks run.
+     */
+    public static long play (TetrisEngine engine, Bot bot, int maxPieces) {
+        return play(engine, bot, maxPieces, null);
+    }
+
+    /**
+     * Plays a game with a bot until it is over or a number of pieces have been put in play,
+     * showing each placement the bot makes to a callback before the piece is moved.
+     * @param engine the game.
+     * @param bot picks where the pieces go.
+     * @param maxPieces the most pieces put in play.
+     * @param placed receives the game and each placement while the piece is still where it
+     * was put in play, null for none.
+     * @return the number of ticks run.
+     */
+    public static long play (TetrisEngine engine, Bot bot, int maxPieces,
+        BiConsumer<TetrisEngine, Placement> placed) {
+        long ticks = 0;
+        long planned = 0;
+        while (engine.isGameOn() && engine.getPieceCount() <= maxPieces) {
+            if (!engine.isClearing() && engine.getPieceCount() != planned) {
+                planned = engine.getPieceCount();
+                Placement placement = bot.choose(engine);
+                if (placement != null) {
+                    if (placed != null) {
+                        placed.accept(engine, placement);
+                    }
+                    for (Action action : placement.toActions()) {
+                        engine.step(action);
+                    }
+                }
+            }
+            engine.step(Action.DOWN);
+            engine.tick();
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /**
+     * Gets the seed of a game of a batch.
+     * Seeds of neighbouring games are mixed so their piece sequences are unrelated.
+     * @param seed the seed of the batch.
+     * @param game the index of the game in the batch.
+     * @return the seed of the game's {@code TetrisEngine}.
+     */
+    public static long gameSeed (long seed, long game) {
+        return SplitMix64.mix64(seed + (game + 1) * GOLDEN_GAMMA);
+    }
+
+}
@@ -0,0 +1,444 @@
+package cgs.sim;
+
+import cgs.bot.Bot;
+import cgs.bot.WeightedHeuristic;
+import cgs.engine.LineClearMode;
+import cgs.engine.SplitMix64;
+import cgs.engine.TetrisEngine;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evolves the weights of a {@code WeightedHeuristic} by playing headless games.
+ * Every generation, each weight vector of the population plays the same seeded games with a
+ * single piece {@code Bot}, and its fitness is the mean number of lines it clears. The games
+ * of the whole generation are spread over a pool of threads, one game per task, so every core
+ * stays busy until the last few games. The seeds change every generation, so the weights are
+ * not tuned to a fixed set of piece sequences.
+ *
+ * The best weight vectors are kept as they are, and the rest of the next generation is bred
+ * from parents picked by tournament: a child is the sum of its parents weighted by their
+ * fitness, with an occasional random nudge of one weight. A heuristic only ranks placements,
+ * so weight vectors are kept at unit length.
+ *
+ * After every generation the settings, the population, the state of the random generator and
+ * the best weights so far are written to a checkpoint file, replacing the previous one in a
+ * single move, and a tuner started on an existing checkpoint carries on where it stopped.
+ */
+public class GeneticTuner {
+
+    /* The default size of a run */
+    public static final int DEFAULT_GENERATIONS = 100;
+    public static final int DEFAULT_POPULATION = 32;
+    public static final int DEFAULT_GAMES = 8;
+    public static final int DEFAULT_MAX_PIECES = 500;
+
+    /* The number of contenders picked at random in a tournament for a parent */
+    public static final int TOURNAMENT_SIZE = 4;
+
+    /* The chance a child has a weight nudged, and the largest nudge */
+    public static final double MUTATION_RATE = 0.2;
+    public static final double MUTATION_SIZE = 0.2;
+
+    /* The keys of the checkpoint file */
+    private static final String SEED = "seed";
+    private static final String POPULATION = "population";
+    private static final String GAMES = "games";
+    private static final String MAX_PIECES = "maxPieces";
+    private static final String GENERATION = "generation";
+    private static final String RANDOM = "random";
+    private static final String WEIGHTS = "weights.";
+    private static final String BEST = "best";
+    private static final String BEST_FITNESS = "bestFitness";
+
+    /* The file the tuner is saved to after every generation */
+    private final Path checkpoint;
+
+    /* The number of threads that play games */
+    private final int threads;
+
+    /* The seed every game's seed is made from */
+    private final long seed;
+
+    /* The number of weight vectors, the games each plays per generation and their length */
+    private final int populationSize;
+    private final int games;
+    private final int maxPieces;
+
+    /* The number of generations evaluated so far */
+    private int generation;
+
+    /* Picks parents and mutations */
+    private final SplitMix64 random;
+
+    /* The weight vectors of the generation to evaluate next */
+    private double[][] population;
+
+    /* The best weights of every generation evaluated so far and their fitness */
+    private double[] best;
+    private double bestFitness;
+
+    /**
+     * Creates a tuner with a new random population, seeded with the default weights.
+     * @param checkpoint the file the tuner is saved to.
+     * @param threads the number of threads that play games.
+     * @param seed the seed of the games and of the evolution.
+     * @param populationSize the number of weight vectors.
+     * @param games the number of games each weight vector plays per generation.
+     * @param maxPieces the most pieces put in play in one game.
+     */
+    public GeneticTuner (Path checkpoint, int threads, long seed, int populationSize, int games,
+        int maxPieces) {
+        if (populationSize < 2 || games < 1 || maxPieces < 1) {
+            throw new IllegalArgumentException("Invalid population, games or pieces");
+        }
+        this.checkpoint = checkpoint;
+        this.threads = threads;
+        this.seed = seed;
+        this.populationSize = populationSize;
+        this.games = games;
+        this.maxPieces = maxPieces;
+        this.random = new SplitMix64(seed);
+        this.population = new double[populationSize][];
+        this.population[0] = normalize(new double[] {
+            WeightedHeuristic.DEFAULT_HEIGHT_WEIGHT, WeightedHeuristic.DEFAULT_LINES_WEIGHT,
+            WeightedHeuristic.DEFAULT_HOLES_WEIGHT, WeightedHeuristic.DEFAULT_BUMPINESS_WEIGHT,
+            0, 0, 0});
+        for (int i = 1; i < populationSize; i++) {
+            double[] weights = new double[WeightedHeuristic.FEATURES];
+            for (int f = 0; f < weights.length; f++) {
+                weights[f] = 2 * this.random.nextDouble() - 1;
+            }
+            this.population[i] = normalize(weights);
+        }
+        this.bestFitness = -1;
+    }
+
+    /**
+     * Resumes a tuner from its checkpoint.
+     * @param checkpoint the file the tuner was saved to, and is saved to from now on.
+     * @param threads the number of threads that play games.
+     * @throws IOException if the checkpoint cannot be read or is not a tuner's checkpoint.
+     */
+    public GeneticTuner (Path checkpoint, int threads) throws IOException {
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            saved.load(in);
+        } //try
+        try {
+            this.checkpoint = checkpoint;
+            this.threads = threads;
+            this.seed = Long.parseLong(saved.getProperty(SEED));
+            this.populationSize = Integer.parseInt(saved.getProperty(POPULATION));
+            this.games = Integer.parseInt(saved.getProperty(GAMES));
+            this.maxPieces = Integer.parseInt(saved.getProperty(MAX_PIECES));
+            this.generation = Integer.parseInt(saved.getProperty(GENERATION));
+            this.random = new SplitMix64(Long.parseLong(saved.getProperty(RANDOM)));
+            this.population = new double[this.populationSize][];
+            for (int i = 0; i < this.populationSize; i++) {
+                this.population[i] = parseWeights(saved.getProperty(WEIGHTS + i));
+            }
+            this.best = (saved.getProperty(BEST) == null) ? null
+                : parseWeights(saved.getProperty(BEST));
+            this.bestFitness = Double.parseDouble(saved.getProperty(BEST_FITNESS, "-1"));
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IOException("Invalid checkpoint " + checkpoint, e);
+        } //try
+    }
+
+    /**
+     * Main entry-point into the tuner.
+     * Arguments: checkpoint [generations [population [games [maxPieces [seed [threads]]]]]],
+     * by default {@code DEFAULT_GENERATIONS}, {@code DEFAULT_POPULATION},
+     * {@code DEFAULT_GAMES}, {@code DEFAULT_MAX_PIECES}, a random seed and a thread per core.
+     * If the checkpoint exists the run resumes from it with its own settings, and stops once
+     * it reaches the number of generations in total.
+     * @param args the comand-line arguments.
+     * @throws Exception if the checkpoint cannot be read or written.
+     */
+    public static void main (String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: GeneticTuner checkpoint [generations [population "
+                + "[games [maxPieces [seed [threads]]]]]]");
+            System.exit(1);
+        }
+        Path checkpoint = Paths.get(args[0]);
+        int generations = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_GENERATIONS;
+        int population = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_POPULATION;
+        int games = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_GAMES;
+        int maxPieces = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_MAX_PIECES;
+        long seed = (args.length > 5) ? Long.parseLong(args[5]) : System.nanoTime();
+        int threads = (args.length > 6) ? Integer.parseInt(args[6])
+            : Runtime.getRuntime().availableProcessors();
+
+        GeneticTuner tuner = Files.exists(checkpoint) ? new GeneticTuner(checkpoint, threads)
+            : new GeneticTuner(checkpoint, threads, seed, population, games, maxPieces);
+        System.out.println("Tuning from generation " + tuner.getGeneration() + " seed="
+            + tuner.seed + " population=" + tuner.populationSize + " games=" + tuner.games
+            + " maxPieces=" + tuner.maxPieces + " threads=" + threads);
+        while (tuner.getGeneration() < generations) {
+            long start = System.nanoTime();
+            double[] fitness = tuner.step();
+            double mean = 0;
+            double top = 0;
+            for (double f : fitness) {
+                mean += f / fitness.length;
+                top = Math.max(top, f);
+            }
+            System.out.println(String.format("generation=%d best=%.1f mean=%.1f elapsed=%.1fs",
+                tuner.getGeneration(), top, mean, (System.nanoTime() - start) / 1e9));
+        }
+        if (tuner.getBest() != null) {
+            System.out.println("best=" + tuner.getBestFitness() + " weights="
+                + formatWeights(tuner.getBest()));
+        }
+    }
+
+    /**
+     * Evaluates the current generation, breeds the next one and saves the checkpoint.
+     * @return the fitness of every weight vector of the evaluated generation.
+     * @throws IOException if the checkpoint cannot be written.
+     * @throws InterruptedException if the thread is interrupted while games are played.
+     */
+    public double[] step () throws IOException, InterruptedException {
+        double[] fitness = this.evaluate();
+        Integer[] ranking = new Integer[this.populationSize];
+        for (int i = 0; i < ranking.length; i++) {
+            ranking[i] = i;
+        }
+        Arrays.sort(ranking, (a, b) -> Double.compare(fitness[b], fitness[a]));
+        if (fitness[ranking[0]] > this.bestFitness) {
+            this.bestFitness = fitness[ranking[0]];
+            this.best = this.population[ranking[0]].clone();
+        }
+
+        double[][] next = new double[this.populationSize][];
+        int elite = Math.max(1, this.populationSize / 8);
+        for (int i = 0; i < elite; i++) {
+            next[i] = this.population[ranking[i]];
+        }
+        for (int i = elite; i < this.populationSize; i++) {
+            int first = this.tournament(fitness);
+            int second = this.tournament(fitness);
+            next[i] = this.breed(this.population[first], fitness[first],
+                this.population[second], fitness[second]);
+        }
+        this.population = next;
+        this.generation++;
+        this.save();
+        return fitness;
+    }
+
+    /**
+     * Helper method for step()
+     * Plays the games of every weight vector of the generation on a pool of threads.
+     * @return the mean lines cleared by each weight vector.
+     * @throws InterruptedException if the thread is interrupted while games are played.
+     */
+    private double[] evaluate () throws InterruptedException {
+        Bot[] bots = new Bot[this.populationSize];
+        for (int i = 0; i < bots.length; i++) {
+            bots[i] = new Bot(new WeightedHeuristic(this.population[i]), 1, 1,
+                LineClearMode.AVALANCHE);
+        }
+        long generationSeed = SplitMix64.mix64(this.seed + this.generation);
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        try {
+            List<Future<Long>> lines = new ArrayList<>(this.populationSize * this.games);
+            for (int i = 0; i < this.populationSize; i++) {
+                Bot bot = bots[i];
+                for (int game = 0; game < this.games; game++) {
+                    long gameSeed = BatchRunner.gameSeed(generationSeed, game);
+                    lines.add(workers.submit(() -> this.play(bot, gameSeed)));
+                }
+            }
+            double[] fitness = new double[this.populationSize];
+            for (int i = 0; i < lines.size(); i++) {
+                fitness[i / this.games] += lines.get(i).get() / (double) this.games;
+            }
+            return fitness;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        } //try
+    }
+
+    /**
+     * Helper method for evaluate()
+     * Plays a game with a bot.
+     * @param bot picks where the pieces go.
+     * @param gameSeed the seed of the game.
+     * @return the number of lines cleared.
+     */
+    private long play (Bot bot, long gameSeed) {
+        TetrisEngine engine = new TetrisEngine(gameSeed, LineClearMode.AVALANCHE,
+            TetrisEngine.HORIZONTAL_SPACES, TetrisEngine.VERTICAL_SPACES);
+        BatchRunner.play(engine, bot, this.maxPieces);
+        return engine.getLineCount();
+    }
+
+    /**
+     * Helper method for step()
+     * Picks a parent as the fittest of a few weight vectors drawn at random.
+     * @param fitness the fitness of every weight vector.
+     * @return the index of the parent.
+     */
+    private int tournament (double[] fitness) {
+        int winner = this.random.nextInt(this.populationSize);
+        for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+            int contender = this.random.nextInt(this.populationSize);
+            if (fitness[contender] > fitness[winner]) {
+                winner = contender;
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Helper method for step()
+     * Crosses two parents in proportion to their fitness and nudges a weight now and then.
+     * @param first the weights of the first parent.
+     * @param firstFitness the fitness of the first parent.
+     * @param second the weights of the second parent.
+     * @param secondFitness the fitness of the second parent.
+     * @return the weights of the child, of unit length.
+     */
+    private double[] breed (double[] first, double firstFitness, double[] second,
+        double secondFitness) {
+        double total = firstFitness + secondFitness;
+        double share = (total > 0) ? firstFitness / total : 0.5;
+        double[] child = new double[WeightedHeuristic.FEATURES];
+        for (int f = 0; f < child.length; f++) {
+            child[f] = share * first[f] + (1 - share) * second[f];
+        }
+        if (this.random.nextDouble() < MUTATION_RATE) {
+            child[this.random.nextInt(child.length)]
+                += (2 * this.random.nextDouble() - 1) * MUTATION_SIZE;
+        }
+        return normalize(child);
+    }
+
+    /**
+     * Helper method for step()
+     * Writes the tuner to a temporary file next to the checkpoint and moves it over the
+     * checkpoint, so a run stopped at any time leaves a whole checkpoint behind.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    private void save () throws IOException {
+        Properties saved = new Properties();
+        saved.setProperty(SEED, Long.toString(this.seed));
+        saved.setProperty(POPULATION, Integer.toString(this.populationSize));
+        saved.setProperty(GAMES, Integer.toString(this.games));
+        saved.setProperty(MAX_PIECES, Integer.toString(this.maxPieces));
+        saved.setProperty(GENERATION, Integer.toString(this.generation));
+        saved.setProperty(RANDOM, Long.toString(this.random.getState()));
+        for (int i = 0; i < this.populationSize; i++) {
+            saved.setProperty(WEIGHTS + i, formatWeights(this.population[i]));
+        }
+        if (this.best != null) {
+            saved.setProperty(BEST, formatWeights(this.best));
+            saved.setProperty(BEST_FITNESS, Double.toString(this.bestFitness));
+        }
+        Path temporary = this.checkpoint.resolveSibling(this.checkpoint.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            saved.store(out, "GeneticTuner checkpoint");
+        } //try
+        Files.move(temporary, this.checkpoint, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* Weight Helper Methods */
+
+    /**
+     * Scales weights to unit length.
+     * @param weights the weights, scaled in place.
+     * @return the weights.
+     */
+    private static double[] normalize (double[] weights) {
+        double length = 0;
+        for (double w : weights) {
+            length += w * w;
+        }
+        length = Math.sqrt(length);
+        if (length > 0) {
+            for (int f = 0; f < weights.length; f++) {
+                weights[f] /= length;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Writes weights as a comma separated list, in the order of their feature indices.
+     * @param weights the weights.
+     * @return the list.
+     */
+    public static String formatWeights (double[] weights) {
+        StringBuilder list = new StringBuilder();
+        for (int f = 0; f < weights.length; f++) {
+            list.append((f == 0) ? "" : ",").append(weights[f]);
+        }
+        return list.toString();
+    }
+
+    /**
+     * Reads weights written by {@code formatWeights}.
+     * @param list the comma separated list.
+     * @return the weights.
+     * @throws NumberFormatException if the list does not hold {@code FEATURES} numbers.
+     */
+    public static double[] parseWeights (String list) {
+        String[] values = list.split(",");
+        if (values.length != WeightedHeuristic.FEATURES) {
+            throw new NumberFormatException("Expected " + WeightedHeuristic.FEATURES
+                + " weights: " + list);
+        }
+        double[] weights = new double[values.length];
+        for (int f = 0; f < weights.length; f++) {
+            weights[f] = Double.parseDouble(values[f].trim());
+        }
+        return weights;
+    }
+
+    /* Getter methods */
+
+    /**
+     * Gets the number of generations evaluated so far.
+     * @return the number of generations.
+     */
+    public int getGeneration () {
+        return this.generation;
+    }
+
+    /**
+     * Gets the best weights of every generation evaluated so far.
+     * @return a copy of the weights, indexed like {@code WeightedHeuristic}'s, or null if no
+     * generation was evaluated.
+     */
+    public double[] getBest () {
+        return (this.best == null) ? null : this.best.clone();
+    }
+
+    /**
+     * Gets the fitness of the best weights.
+     * @return the mean lines cleared by the best weights, -1 if no generation was evaluated.
+     */
+    public double getBestFitness () {
+        return this.bestFitness;
+    }
+
+}